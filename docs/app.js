@@ -112,6 +112,54 @@ class DataManager {
     generateId() {
         return Date.now().toString(36) + Math.random().toString(36).substr(2);
     }
+
+    // When served by the desktop app's live score server, its data is merged into the local copy by id
+    async syncFromServer() {
+        if (!location.protocol.startsWith('http')) return false;
+        try {
+            const [players, matches, tournaments] = await Promise.all([
+                this.fetchJson('api/players'),
+                this.fetchAllMatches(),
+                this.fetchJson('api/tournaments')
+            ]);
+            this.players = this.mergeById(players, this.players);
+            this.matches = this.mergeById(matches, this.matches);
+            this.tournaments = this.mergeById(tournaments, this.tournaments);
+            this.saveData('players', this.players);
+            this.saveData('matches', this.matches);
+            this.saveData('tournaments', this.tournaments);
+            return true;
+        } catch (e) {
+            return false;
+        }
+    }
+
+    async fetchJson(url) {
+        const response = await fetch(url);
+        if (!response.ok) throw new Error(`${url}: ${response.status}`);
+        return response.json();
+    }
+
+    // The server pages matches back from the newest, so pages are read until one comes back short
+    async fetchAllMatches() {
+        const pageSize = 5000;
+        const pages = [];
+        for (let offset = 0; ; offset += pageSize) {
+            const page = await this.fetchJson(`api/matches?limit=${pageSize}&offset=${offset}`);
+            pages.unshift(page);
+            if (page.length < pageSize) break;
+        }
+        return [].concat(...pages);
+    }
+
+    // The server's records replace local ones with the same id; records only kept locally stay
+    mergeById(remote, local) {
+        const merged = new Map();
+        for (const item of remote.concat(local)) {
+            if (!merged.has(item.id)) merged.set(item.id, item);
+        }
+        return [...merged.values()];
+    }
 }
 
 // Tournament Logic
@@ -809,3 +857,9 @@ document.querySelectorAll('.modal').forEach(modal => {
 // Initialize app
 renderPlayers();
 updatePlayerSelects();
+dataManager.syncFromServer().then(synced => {
+    if (synced) {
+        renderPlayers();
+        updatePlayerSelects();
+    }
+});
@@ -0,0 +1,549 @@
+package com.tabletennispro;
+
+import java.util.*;
+
+/**
+ * A single or double elimination draw held in flat arrays indexed by node.
+ *
+ * The draw has a power of two of slots, the empty ones standing for byes.
+ * The winners bracket is a binary tree laid out as a heap: node 1 is its
+ * final, the feeders of node i are nodes 2i and 2i + 1, and the slots are the
+ * leaves from {@code size} to {@code 2 * size - 1}. Winners round r (1 being
+ * the first) covers the nodes from {@code size >> r} up to
+ * {@code size >> (r - 1)}.
+ *
+ * A double elimination draw continues with the losers bracket and the grand
+ * final. Losers rounds alternate: odd rounds pair the survivors of the round
+ * before (the first one pairs the losers of winners round 1), even rounds
+ * meet those survivors with the players dropping from the next winners round.
+ * The drops are fed in reversed order, then with halves swapped, and so on,
+ * so players who met in the winners bracket do not meet again straight away.
+ * If the losers bracket champion wins the grand final, it is played again.
+ *
+ * Every node takes its two players from two sources, the winner or the loser
+ * of another node, so the draw is generated once in linear time and a result
+ * is passed on in constant time. A node whose sources both hold players gets
+ * a match, a node with a player on one side only passes that player on as a
+ * bye, and a node with no players behind it stays empty.
+ */
+final class Bracket implements TournamentFormat {
+    /**
+     * Where the players go in the first round: with the byes spread evenly
+     * over the draw, or with all of them at the end as in draws made before
+     * byes were spread.
+     */
+    enum Layout { SPREAD, PACKED }
+
+    private final int size;
+    private final int depth;
+    private final int losersRounds;
+    private final int bestOf;
+    private final boolean doubleElimination;
+    private final int grandFinal;
+    private final int reset;
+
+    // Sources of each node: n > 0 is the winner of node n, n < 0 the loser of node -n
+    private final int[] sourceA;
+    private final int[] sourceB;
+    // Where the winner and the loser of each node go, 0 for nowhere
+    private final int[] winnerTo;
+    private final int[] loserTo;
+    // Whether a node will ever have a winner, and a loser
+    private final boolean[] hasWinner;
+    private final boolean[] hasLoser;
+    // Node ids of each round, round r from roundStart[r - 1] up to roundEnd[r - 1]
+    private final int[] roundStart;
+    private final int[] roundEnd;
+
+    // The player holding each slot, or passed on by each bye; null otherwise
+    private final Player[] occupants;
+    private final Match[] matches;
+    // The round of play each node was opened in, 0 while it is not
+    private final int[] openedIn;
+    private final Map<Match, Integer> nodes = new IdentityHashMap<>();
+    // The latest node each player entered, and the matches they played
+    private final Map<Player, Integer> positions = new HashMap<>();
+    private final Map<Player, List<Match>> paths = new HashMap<>();
+    private final List<Integer> openMatches = new ArrayList<>();
+    private int currentRound;
+
+    /**
+     * Creates a draw with the players in the given order; no round is open yet.
+     */
+    Bracket(List<Player> players, int bestOf, boolean doubleElimination, Layout layout) {
+        if (players.size() < 2) {
+            throw new IllegalArgumentException("A draw needs at least 2 players: " + players.size());
+        }
+        this.size = Integer.highestOneBit(players.size() - 1) << 1;
+        this.depth = Integer.numberOfTrailingZeros(size);
+        this.losersRounds = doubleElimination ? 2 * (depth - 1) : 0;
+        this.bestOf = bestOf;
+        this.doubleElimination = doubleElimination;
+
+        // Winners bracket and slots, then size - 2 losers nodes, the grand final and its replay
+        int nodeCount = doubleElimination ? 3 * size : 2 * size;
+        sourceA = new int[nodeCount];
+        sourceB = new int[nodeCount];
+        winnerTo = new int[nodeCount];
+        loserTo = new int[nodeCount];
+        hasWinner = new boolean[nodeCount];
+        hasLoser = new boolean[nodeCount];
+        occupants = new Player[nodeCount];
+        matches = new Match[nodeCount];
+        openedIn = new int[nodeCount];
+        int roundCount = depth + losersRounds + (doubleElimination ? 1 : 0);
+        roundStart = new int[roundCount];
+        roundEnd = new int[roundCount];
+
+        placePlayers(players, layout);
+        for (int node = size - 1; node >= 1; node--) {
+            link(node, 2 * node, 2 * node + 1);
+        }
+        for (int round = 1; round <= depth; round++) {
+            roundStart[round - 1] = size >> round;
+            roundEnd[round - 1] = size >> (round - 1);
+        }
+
+        if (doubleElimination) {
+            int next = 2 * size;
+            int previous = 0;
+            for (int round = 1; round <= losersRounds; round++) {
+                int count = size >> ((round + 1) / 2 + 1);
+                for (int i = 0; i < count; i++) {
+                    if (round == 1) {
+                        link(next + i, -(size / 2 + 2 * i), -(size / 2 + 2 * i + 1));
+                    } else if (round % 2 == 0) {
+                        int winnersRound = round / 2 + 1;
+                        int drop = round / 2 % 2 == 1 ? count - 1 - i : i ^ (count >> 1);
+                        link(next + i, previous + i, -((size >> winnersRound) + drop));
+                    } else {
+                        link(next + i, previous + 2 * i, previous + 2 * i + 1);
+                    }
+                }
+                roundStart[depth + round - 1] = next;
+                roundEnd[depth + round - 1] = next + count;
+                previous = next;
+                next += count;
+            }
+            grandFinal = next;
+            reset = next + 1;
+            // Without losers rounds the loser of the winners final is the losers champion
+            link(grandFinal, 1, losersRounds > 0 ? previous : -1);
+            // Played again only if the winners champion loses the grand final
+            link(reset, grandFinal, -grandFinal);
+            roundStart[roundCount - 1] = grandFinal;
+            roundEnd[roundCount - 1] = reset + 1;
+        } else {
+            grandFinal = 0;
+            reset = 0;
+        }
+    }
+
+    // Fills the slots; a spread layout gives the byes to the first-round nodes in bit-reversed order
+    private void placePlayers(List<Player> players, Layout layout) {
+        int half = size / 2;
+        boolean[] byes = new boolean[half];
+        if (layout == Layout.SPREAD && half > 1) {
+            int bits = depth - 1;
+            for (int i = 0; i < size - players.size(); i++) {
+                byes[Integer.reverse(i) >>> (32 - bits)] = true;
+            }
+        } else if (layout == Layout.PACKED) {
+            for (int i = players.size() / 2; i < half; i++) {
+                byes[i] = true;
+            }
+        }
+        Iterator<Player> remaining = players.iterator();
+        for (int i = 0; i < half; i++) {
+            place(size + 2 * i, remaining.hasNext() ? remaining.next() : null);
+            place(size + 2 * i + 1, byes[i] || !remaining.hasNext() ? null : remaining.next());
+        }
+    }
+
+    private void place(int slot, Player player) {
+        occupants[slot] = player;
+        hasWinner[slot] = player != null;
+        if (player != null) {
+            positions.put(player, slot);
+        }
+    }
+
+    // Nodes are linked after their sources, so whether they will have players is known
+    private void link(int node, int a, int b) {
+        sourceA[node] = a;
+        sourceB[node] = b;
+        route(a, node);
+        route(b, node);
+        hasWinner[node] = !isEmpty(a) || !isEmpty(b);
+        hasLoser[node] = !isEmpty(a) && !isEmpty(b);
+    }
+
+    private void route(int source, int node) {
+        if (source > 0) {
+            winnerTo[source] = node;
+        } else {
+            loserTo[-source] = node;
+        }
+    }
+
+    /**
+     * Rebuilds a draw from the players in draw order and its matches in the
+     * order they were created, which is the order the draw opens them in.
+     * Rounds are reopened while the saved matches carry on. Saved matches
+     * that do not fit the draw are left out of it; matches the reopened
+     * rounds need but were not saved are created and added to {@code matches}.
+     */
+    static Bracket restore(List<Player> players, List<Match> matches, int bestOf, boolean doubleElimination) {
+        SavedMatches saved = new SavedMatches(matches);
+        Bracket bracket = restore(players, saved, bestOf, doubleElimination, Layout.SPREAD);
+        if (saved.next < matches.size() && bracket.size != players.size()) {
+            SavedMatches packedSaved = new SavedMatches(matches);
+            Bracket packed = restore(players, packedSaved, bestOf, doubleElimination, Layout.PACKED);
+            if (packedSaved.next > saved.next) {
+                bracket = packed;
+                saved = packedSaved;
+            }
+        }
+        matches.addAll(saved.added);
+        return bracket;
+    }
+
+    private static Bracket restore(List<Player> players, SavedMatches saved, int bestOf,
+            boolean doubleElimination, Layout layout) {
+        Bracket bracket = new Bracket(players, bestOf, doubleElimination, layout);
+        List<Match> created;
+        do {
+            created = bracket.advance(saved);
+        } while (saved.next < saved.matches.size() && !created.isEmpty());
+        return bracket;
+    }
+
+    // The saved matches of a draw being rebuilt, taken in order, and those created instead
+    private static final class SavedMatches {
+        final List<Match> matches;
+        final List<Match> added = new ArrayList<>();
+        int next;
+
+        SavedMatches(List<Match> matches) {
+            this.matches = matches;
+        }
+
+        Match take(Player player1, Player player2) {
+            if (next < matches.size()) {
+                Match match = matches.get(next);
+                if (match.getPlayer1().equals(player1) && match.getPlayer2().equals(player2)
+                        || match.getPlayer1().equals(player2) && match.getPlayer2().equals(player1)) {
+                    next++;
+                    return match;
+                }
+            }
+            return null;
+        }
+    }
+
+    // Advancing
+
+    /**
+     * Opens every node whose players are known, once all open matches are
+     * completed. Byes are passed on straight away. Returns the matches created.
+     */
+    @Override
+    public List<Match> advance() {
+        return advance(null);
+    }
+
+    private List<Match> advance(SavedMatches saved) {
+        List<Match> created = new ArrayList<>();
+        Deque<Integer> work = new ArrayDeque<>();
+        if (currentRound == 0) {
+            for (int node = size / 2; node < size; node++) {
+                work.add(node);
+            }
+        } else {
+            for (int node : openMatches) {
+                if (!matches[node].isCompleted()) {
+                    return created;
+                }
+            }
+            for (int node : openMatches) {
+                work.add(winnerTo[node]);
+                work.add(loserTo[node]);
+            }
+            openMatches.clear();
+        }
+
+        while (!work.isEmpty()) {
+            int node = work.poll();
+            if (node != 0 && openedIn[node] == 0 && isReady(sourceA[node]) && isReady(sourceB[node])) {
+                open(node, saved, created, work);
+            }
+        }
+        if (!created.isEmpty()) {
+            currentRound++;
+        }
+        return created;
+    }
+
+    private void open(int node, SavedMatches saved, List<Match> created, Deque<Integer> work) {
+        openedIn[node] = currentRound + 1;
+        int a = sourceA[node];
+        int b = sourceB[node];
+        if (node == reset && playerOf(a).equals(winnerOf(1))) {
+            return; // The winners champion won the grand final; no replay
+        }
+        if (isEmpty(a) || isEmpty(b)) {
+            Player player = isEmpty(a) ? playerOf(b) : playerOf(a);
+            if (player != null) {
+                occupants[node] = player;
+                positions.put(player, node);
+                work.add(winnerTo[node]);
+            }
+            return;
+        }
+
+        Match match = matchFor(playerOf(a), playerOf(b), saved);
+        matches[node] = match;
+        nodes.put(match, node);
+        openMatches.add(node);
+        created.add(match);
+        for (Player player : new Player[] {match.getPlayer1(), match.getPlayer2()}) {
+            positions.put(player, node);
+            paths.computeIfAbsent(player, key -> new ArrayList<>()).add(match);
+        }
+    }
+
+    // The next saved match if it is between the two players, a new match otherwise
+    private Match matchFor(Player player1, Player player2, SavedMatches saved) {
+        Match match = saved == null ? null : saved.take(player1, player2);
+        if (match == null) {
+            match = new Match(player1, player2, bestOf);
+            if (saved != null) {
+                saved.added.add(match);
+            }
+        }
+        return match;
+    }
+
+    // Sources
+
+    private boolean isEmpty(int source) {
+        return source > 0 ? !hasWinner[source] : !hasLoser[-source];
+    }
+
+    // Decided before this round of play; a rebuilt draw has results for matches it is just opening
+    private boolean isReady(int source) {
+        if (isEmpty(source)) {
+            return true;
+        }
+        int node = Math.abs(source);
+        return (matches[node] == null || openedIn[node] <= currentRound) && playerOf(source) != null;
+    }
+
+    private Player playerOf(int source) {
+        return source > 0 ? winnerOf(source) : loserOf(-source);
+    }
+
+    // The player who came through a node, or null while it is undecided or empty
+    private Player winnerOf(int node) {
+        Match match = matches[node];
+        return match != null ? match.getWinner() : occupants[node];
+    }
+
+    private Player loserOf(int node) {
+        Match match = matches[node];
+        return match != null ? match.getLoser() : null;
+    }
+
+    // Queries
+
+    int getSize() { return size; }
+    boolean isDoubleElimination() { return doubleElimination; }
+    int getNodeCount() { return sourceA.length; }
+    int getSourceA(int node) { return sourceA[node]; }
+    int getSourceB(int node) { return sourceB[node]; }
+    int getGrandFinal() { return grandFinal; }
+    int getReset() { return reset; }
+
+    /**
+     * Returns the nodes that take part in play, each after its sources: the
+     * winners bracket from the first round up, then the losers bracket, the
+     * grand final and its replay. Slots come before all of them.
+     */
+    int[] getNodeOrder() {
+        int[] order = new int[size - 1 + (doubleElimination ? size : 0)];
+        int count = 0;
+        for (int node = size - 1; node >= 1; node--) {
+            order[count++] = node;
+        }
+        if (doubleElimination) {
+            for (int node = 2 * size; node <= reset; node++) {
+                order[count++] = node;
+            }
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Returns the round a node belongs to, 0 for slots and unused nodes.
+     */
+    int getRoundOf(int node) {
+        for (int round = 0; round < roundStart.length; round++) {
+            if (node >= roundStart[round] && node < roundEnd[round]) {
+                return round + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns whether the result of a node is settled: a slot, a bye passed
+     * on, or a completed match. A node with no players behind it is settled
+     * as empty.
+     */
+    boolean isSettled(int node) {
+        if (node >= size && node < 2 * size) {
+            return true;
+        }
+        Match match = matches[node];
+        return match != null ? match.isCompleted() : occupants[node] != null || !hasWinner[node];
+    }
+
+    // The winner and loser of a settled node, null for none
+    Player getSettledWinner(int node) { return winnerOf(node); }
+    Player getSettledLoser(int node) { return loserOf(node); }
+
+    @Override
+    public int getRoundCount() {
+        return roundStart.length;
+    }
+
+    @Override
+    public int getCurrentRound() {
+        return currentRound;
+    }
+
+    @Override
+    public boolean isDecided() {
+        return getWinner() != null;
+    }
+
+    @Override
+    public Player getWinner() {
+        if (!doubleElimination) {
+            return winnerOf(1);
+        }
+        Player winner = winnerOf(grandFinal);
+        if (winner == null || winner.equals(winnerOf(1))) {
+            return winner;
+        }
+        return winnerOf(reset);
+    }
+
+    @Override
+    public boolean contains(Match match) {
+        return nodes.containsKey(match);
+    }
+
+    @Override
+    public int getMatchCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public String getRoundName(int round) {
+        if (round <= depth) {
+            int remaining = depth - round;
+            String name = remaining == 0 ? "Final" : remaining == 1 ? "Semi-Finals"
+                : remaining == 2 ? "Quarter-Finals" : "Round " + round;
+            return doubleElimination ? "Winners " + name : name;
+        }
+        int losersRound = round - depth;
+        if (losersRound <= losersRounds) {
+            return losersRound == losersRounds ? "Losers Final" : "Losers Round " + losersRound;
+        }
+        return "Grand Final";
+    }
+
+    /**
+     * Returns the matches of a round in draw order, as far as they are set.
+     */
+    @Override
+    public List<Match> getRoundMatches(int round) {
+        List<Match> roundMatches = new ArrayList<>();
+        if (round < 1 || round > roundStart.length) {
+            return roundMatches;
+        }
+        for (int node = roundStart[round - 1]; node < roundEnd[round - 1]; node++) {
+            if (matches[node] != null) {
+                roundMatches.add(matches[node]);
+            }
+        }
+        return roundMatches;
+    }
+
+    /**
+     * Returns the players passed through a round without playing, in draw order.
+     */
+    @Override
+    public List<Player> getByes(int round) {
+        List<Player> byes = new ArrayList<>();
+        if (round < 1 || round > roundStart.length) {
+            return byes;
+        }
+        for (int node = roundStart[round - 1]; node < roundEnd[round - 1]; node++) {
+            if (occupants[node] != null) {
+                byes.add(occupants[node]);
+            }
+        }
+        return byes;
+    }
+
+    /**
+     * Returns the match the winner of the given match plays next, or null if
+     * there is none, the match is not part of this draw, or the next match is
+     * not set yet.
+     */
+    @Override
+    public Match getNextMatch(Match match) {
+        Integer node = nodes.get(match);
+        return node == null ? null : matches[winnerTo[node]];
+    }
+
+    /**
+     * Returns who the player meets next, or null if that is not known yet or
+     * the player is out or has won.
+     */
+    @Override
+    public Player getNextOpponent(Player player) {
+        Integer node = positions.get(player);
+        if (node == null) {
+            return null;
+        }
+        Match match = matches[node];
+        if (match != null && !match.isCompleted()) {
+            return player.equals(match.getPlayer1()) ? match.getPlayer2() : match.getPlayer1();
+        }
+        boolean won = match == null || player.equals(match.getWinner());
+        int next = won ? winnerTo[node] : loserTo[node];
+        if (next == 0 || openedIn[next] != 0 || next == reset && winnerOf(grandFinal).equals(winnerOf(1))) {
+            return null;
+        }
+        int from = won ? node : -node;
+        return playerOf(sourceA[next] == from ? sourceB[next] : sourceA[next]);
+    }
+
+    /**
+     * Returns the player's matches in the order they were set, ending with the
+     * last one they lost or have yet to finish.
+     */
+    @Override
+    public List<Match> getPath(Player player) {
+        List<Match> path = paths.get(player);
+        return path == null ? new ArrayList<>() : new ArrayList<>(path);
+    }
+
+    @Override
+    public List<Standing> getStandings() {
+        return new ArrayList<>();
+    }
+}
@@ -0,0 +1,225 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Streams the contents of a {@link DataManager} to CSV or to the web
+ * edition's JSON layout. Matches are written one at a time straight from the
+ * archive, so exports of any size run in constant memory.
+ */
+public class DataExporter {
+    private static final String CSV_HEADER = "id,date,player1,player2,score1,score2,bestOf";
+
+    private final DataManager dataManager;
+
+    public DataExporter(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Exports to a file, choosing the format from its extension.
+     */
+    public TransferReport exportFile(Path path) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                return exportJson(out);
+            }
+            return exportCsv(out);
+        }
+    }
+
+    /**
+     * Writes all matches as CSV in the layout read by {@link DataImporter#importCsv}.
+     */
+    public TransferReport exportCsv(Writer out) throws IOException {
+        TransferReport report = new TransferReport();
+        long start = System.nanoTime();
+
+        out.write(CSV_HEADER);
+        out.write('\n');
+        int count = dataManager.getMatchCount();
+        for (int i = 0; i < count; i++) {
+            Match match = dataManager.getMatch(i);
+            out.write(match.getId());
+            out.write(',');
+            out.write(formatTimestamp(match.getTimestamp()));
+            out.write(',');
+            writeCsvField(out, match.getPlayer1().getName());
+            out.write(',');
+            writeCsvField(out, match.getPlayer2().getName());
+            out.write(',');
+            out.write(Integer.toString(match.getPlayer1Score()));
+            out.write(',');
+            out.write(Integer.toString(match.getPlayer2Score()));
+            out.write(',');
+            out.write(Integer.toString(match.getBestOf()));
+            out.write('\n');
+            report.addRow();
+            report.addMatch();
+        }
+        out.flush();
+
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Writes players, matches and tournaments in the web edition's storage
+     * layout, keyed by its {@code ttp_} names.
+     */
+    public TransferReport exportJson(Writer out) throws IOException {
+        TransferReport report = new TransferReport();
+        long start = System.nanoTime();
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+
+        json.name("ttp_players").beginArray();
+        for (Player player : dataManager.getAllPlayers()) {
+            writePlayer(json, player);
+            report.addRow();
+        }
+        json.endArray();
+
+        json.name("ttp_matches").beginArray();
+        int count = dataManager.getMatchCount();
+        for (int i = 0; i < count; i++) {
+            writeMatch(json, dataManager.getMatch(i));
+            report.addRow();
+            report.addMatch();
+        }
+        json.endArray();
+
+        json.name("ttp_tournaments").beginArray();
+        for (Tournament tournament : dataManager.getAllTournaments()) {
+            dataManager.readTournament(tournament, t -> {
+                writeTournament(json, t);
+                return null;
+            });
+            report.addRow();
+            report.addTournament();
+        }
+        json.endArray();
+
+        json.endObject();
+        json.flush();
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    // Players, matches and tournaments in the web edition's layout; also served by LiveScoreServer
+
+    static void writePlayer(JsonWriter json, Player player) throws IOException {
+        json.beginObject()
+            .name("id").value(player.getId())
+            .name("name").value(player.getName())
+            .name("wins").value(player.getWins())
+            .name("losses").value(player.getLosses())
+            .name("gamesWon").value(player.getGamesWon())
+            .name("gamesLost").value(player.getGamesLost())
+            .name("pointsWon").value(player.getTotalPointsScored())
+            .name("pointsLost").value(player.getTotalPointsConceded())
+            .endObject();
+    }
+
+    static void writeMatch(JsonWriter json, Match match) throws IOException {
+        json.beginObject()
+            .name("id").value(match.getId())
+            .name("player1").value(match.getPlayer1().getName())
+            .name("player2").value(match.getPlayer2().getName())
+            .name("score1").value(match.getPlayer1Score())
+            .name("score2").value(match.getPlayer2Score())
+            .name("bestOf").value(match.getBestOf())
+            .name("date").value(formatTimestamp(match.getTimestamp()))
+            .endObject();
+    }
+
+    static void writeTournament(JsonWriter json, Tournament tournament) throws IOException {
+        List<Player> tournamentPlayers = tournament.getPlayers();
+        List<List<Match>> rounds = new ArrayList<>();
+        for (int round = 1; round <= tournament.getRoundCount(); round++) {
+            rounds.add(tournament.getRoundMatches(round));
+        }
+        rounds.removeIf(List::isEmpty);
+        LocalDateTime createdAt = rounds.isEmpty() ? LocalDateTime.now() : rounds.get(0).get(0).getTimestamp();
+        Player winner = tournament.getWinner();
+
+        json.beginObject()
+            .name("id").value(tournament.getId())
+            .name("name").value(tournament.getName())
+            .name("format").value(tournament.getBestOf());
+
+        json.name("players").beginArray();
+        for (Player player : tournamentPlayers) {
+            writePlayerReference(json, player);
+        }
+        json.endArray();
+
+        json.name("matches").beginArray();
+        for (int round = 0; round < rounds.size(); round++) {
+            for (Match match : rounds.get(round)) {
+                json.beginObject()
+                    .name("id").value(match.getId())
+                    .name("tournamentId").value(tournament.getId());
+                json.name("p1");
+                writePlayerReference(json, match.getPlayer1());
+                json.name("p2");
+                writePlayerReference(json, match.getPlayer2());
+                json.name("score1").value(match.getPlayer1Score())
+                    .name("score2").value(match.getPlayer2Score());
+                json.name("winner");
+                writePlayerReference(json, match.getWinner());
+                Match next = tournament.getNextMatch(match);
+                json.name("completed").value(match.isCompleted())
+                    .name("round").value(round + 1)
+                    .name("nextMatchId").value(next == null ? null : next.getId())
+                    .endObject();
+            }
+        }
+        json.endArray();
+
+        json.name("rounds").beginArray();
+        for (List<Match> round : rounds) {
+            json.beginArray();
+            for (Match match : round) {
+                json.value(match.getId());
+            }
+            json.endArray();
+        }
+        json.endArray();
+
+        json.name("completed").value(tournament.isCompleted())
+            .name("winner").value(winner == null ? null : winner.getName())
+            .name("createdAt").value(formatTimestamp(createdAt))
+            .endObject();
+    }
+
+    static void writePlayerReference(JsonWriter json, Player player) throws IOException {
+        if (player == null) {
+            json.nullValue();
+            return;
+        }
+        json.beginObject()
+            .name("id").value(player.getId())
+            .name("name").value(player.getName())
+            .endObject();
+    }
+
+    static String formatTimestamp(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toString();
+    }
+
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,556 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Streams players, matches and tournaments from CSV or JSON into a
+ * {@link DataManager}.
+ *
+ * Input is read one record at a time and handed to the data manager in
+ * batches, so memory use does not grow with the size of the file. Players are
+ * matched by name, ignoring case, through the data manager's name index, and
+ * the whole import is persisted as one snapshot at the end instead of one
+ * journal record per match.
+ *
+ * CSV files need a header row naming the columns {@code player1},
+ * {@code player2}, {@code score1} and {@code score2}; {@code bestOf},
+ * {@code date} and {@code id} are optional. JSON files use the web edition's
+ * layout: an object with {@code players}, {@code matches} and
+ * {@code tournaments} arrays, also accepted with its {@code ttp_} storage
+ * prefix.
+ */
+public class DataImporter {
+    private static final int BATCH_SIZE = 10_000;
+    private static final int DEFAULT_BEST_OF = 5;
+    private static final String BYE_ID = "bye";
+
+    private final DataManager dataManager;
+    // Players created by this import that have not been handed over yet
+    private final Map<String, Player> newPlayersByName = new HashMap<>();
+    private final List<Player> pendingPlayers = new ArrayList<>();
+    private final List<Match> pendingMatches = new ArrayList<>();
+    private TransferReport report;
+    private long startNanos;
+
+    public DataImporter(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Imports a file, choosing the format from its extension.
+     */
+    public TransferReport importFile(Path path) throws IOException {
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                return importJson(in);
+            }
+            return importCsv(in);
+        }
+    }
+
+    public TransferReport importCsv(Reader in) throws IOException {
+        begin();
+        try {
+            BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+            List<String> fields = new ArrayList<>();
+            if (!readCsvRecord(reader, fields)) {
+                return report;
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                columns.put(fields.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String required : new String[] { "player1", "player2", "score1", "score2" }) {
+                if (!columns.containsKey(required)) {
+                    throw new IOException("CSV header has no " + required + " column");
+                }
+            }
+
+            while (readCsvRecord(reader, fields)) {
+                report.addRow();
+                try {
+                    String bestOf = field(fields, columns, "bestof");
+                    addMatch(field(fields, columns, "id"),
+                        field(fields, columns, "player1"),
+                        field(fields, columns, "player2"),
+                        Integer.parseInt(field(fields, columns, "score1").trim()),
+                        Integer.parseInt(field(fields, columns, "score2").trim()),
+                        bestOf == null || bestOf.trim().isEmpty() ? 0 : Integer.parseInt(bestOf.trim()),
+                        field(fields, columns, "date"));
+                } catch (NumberFormatException | NullPointerException e) {
+                    report.addSkippedRow();
+                }
+            }
+        } finally {
+            finish();
+        }
+        return report;
+    }
+
+    public TransferReport importJson(Reader in) throws IOException {
+        begin();
+        try {
+            readJsonDocument(new JsonReader(in));
+        } finally {
+            finish();
+        }
+        return report;
+    }
+
+    private void begin() {
+        report = new TransferReport();
+        startNanos = System.nanoTime();
+    }
+
+    // Whatever was read before an error is kept and committed
+    private void finish() {
+        flushBatch();
+        dataManager.commitImport();
+        report.setElapsedNanos(System.nanoTime() - startNanos);
+    }
+
+    private void flushBatch() {
+        if (!pendingPlayers.isEmpty() || !pendingMatches.isEmpty()) {
+            dataManager.importBatch(pendingPlayers, pendingMatches);
+            pendingPlayers.clear();
+            pendingMatches.clear();
+            newPlayersByName.clear();
+        }
+    }
+
+    // Record handling
+    private Player resolvePlayer(String id, String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        name = name.trim();
+        Player player = dataManager.getPlayerByName(name);
+        if (player == null) {
+            player = newPlayersByName.get(name.toLowerCase(Locale.ROOT));
+        }
+        if (player == null) {
+            player = id == null || id.isEmpty() || dataManager.getPlayerById(id) != null
+                ? new Player(name) : new Player(id, name);
+            newPlayersByName.put(name.toLowerCase(Locale.ROOT), player);
+            pendingPlayers.add(player);
+            report.addPlayer();
+        }
+        return player;
+    }
+
+    private void addMatch(String id, String player1Name, String player2Name,
+            int player1Score, int player2Score, int bestOf, String date) {
+        Player player1 = resolvePlayer(null, player1Name);
+        Player player2 = resolvePlayer(null, player2Name);
+        LocalDateTime timestamp = parseTimestamp(date);
+        if (player1 == null || player2 == null || player1.equals(player2) || timestamp == null
+                || player1Score < 0 || player2Score < 0 || player1Score == player2Score) {
+            report.addSkippedRow();
+            return;
+        }
+        if (bestOf <= 0) {
+            bestOf = 2 * Math.max(player1Score, player2Score) - 1;
+        }
+
+        Match match = new Match(id == null || id.isEmpty() ? UUID.randomUUID().toString() : id,
+            player1, player2, bestOf, timestamp);
+        match.restoreResult(player1Score, player2Score, false);
+        pendingMatches.add(match);
+        report.addMatch();
+
+        if (pendingMatches.size() >= BATCH_SIZE) {
+            flushBatch();
+        }
+    }
+
+    // Accepts ISO instants and offsets as written by the web edition, local date-times and plain dates
+    private static LocalDateTime parseTimestamp(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return LocalDateTime.now();
+        }
+        text = text.trim();
+        try {
+            return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            // Try the formats without an offset
+        }
+        try {
+            return LocalDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            // Try a plain date
+        }
+        try {
+            return LocalDate.parse(text).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // CSV
+    private static String field(List<String> fields, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= fields.size() ? null : fields.get(index);
+    }
+
+    /**
+     * Reads one CSV record into {@code fields}, following quoted fields across
+     * line breaks. Returns false at the end of the input.
+     */
+    private static boolean readCsvRecord(BufferedReader reader, List<String> fields) throws IOException {
+        fields.clear();
+        String line = reader.readLine();
+        while (line != null && line.isEmpty()) {
+            line = reader.readLine();
+        }
+        if (line == null) {
+            return false;
+        }
+
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (!quoted) {
+                break;
+            }
+            line = reader.readLine();
+            if (line == null) {
+                break; // Unterminated quote; keep what was read
+            }
+            field.append('\n');
+        }
+        fields.add(field.toString());
+        return true;
+    }
+
+    // JSON
+    private void readJsonDocument(JsonReader json) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            switch (name) {
+                case "players":
+                case "ttp_players":
+                    readJsonArray(json, this::readJsonPlayer);
+                    break;
+                case "matches":
+                case "ttp_matches":
+                    readJsonArray(json, this::readJsonMatch);
+                    break;
+                case "tournaments":
+                case "ttp_tournaments":
+                    readJsonArray(json, this::readJsonTournament);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    @FunctionalInterface
+    private interface ElementReader {
+        void read(JsonReader json) throws IOException;
+    }
+
+    // A localStorage dump holds each array as a JSON string, which is parsed in turn
+    private void readJsonArray(JsonReader json, ElementReader elementReader) throws IOException {
+        if (json.peek() == JsonReader.Token.STRING) {
+            readJsonArray(new JsonReader(new StringReader(json.nextString())), elementReader);
+            return;
+        }
+        if (json.peek() == JsonReader.Token.NULL) {
+            json.skipValue();
+            return;
+        }
+        json.beginArray();
+        while (json.hasNext()) {
+            report.addRow();
+            elementReader.read(json);
+        }
+        json.endArray();
+    }
+
+    private void readJsonPlayer(JsonReader json) throws IOException {
+        String id = null;
+        String name = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "name":
+                    name = json.nextString();
+                    break;
+                default:
+                    json.skipValue(); // Statistics are rebuilt from the imported matches
+            }
+        }
+        json.endObject();
+
+        if (name == null || name.trim().isEmpty()) {
+            report.addSkippedRow();
+        } else {
+            resolvePlayer(id, name);
+        }
+    }
+
+    private void readJsonMatch(JsonReader json) throws IOException {
+        String id = null;
+        String player1 = null;
+        String player2 = null;
+        int player1Score = -1;
+        int player2Score = -1;
+        int bestOf = 0;
+        String date = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "player1":
+                    player1 = readPlayerName(json);
+                    break;
+                case "player2":
+                    player2 = readPlayerName(json);
+                    break;
+                case "score1":
+                    player1Score = readInt(json);
+                    break;
+                case "score2":
+                    player2Score = readInt(json);
+                    break;
+                case "bestOf":
+                    bestOf = readInt(json);
+                    break;
+                case "date":
+                    date = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        addMatch(id, player1, player2, player1Score, player2Score, bestOf, date);
+    }
+
+    private void readJsonTournament(JsonReader json) throws IOException {
+        String id = null;
+        String name = null;
+        int bestOf = DEFAULT_BEST_OF;
+        boolean completed = false;
+        LocalDateTime createdAt = LocalDateTime.now();
+        List<Player> tournamentPlayers = new ArrayList<>();
+        List<TournamentMatchRecord> matchRecords = new ArrayList<>();
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "name":
+                    name = json.nextString();
+                    break;
+                case "format":
+                    bestOf = readInt(json);
+                    break;
+                case "completed":
+                    completed = readBoolean(json);
+                    break;
+                case "createdAt": {
+                    LocalDateTime parsed = parseTimestamp(json.nextString());
+                    if (parsed != null) {
+                        createdAt = parsed;
+                    }
+                    break;
+                }
+                case "players":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        String[] entry = readPlayerReference(json);
+                        Player player = entry == null ? null : resolvePlayer(entry[0], entry[1]);
+                        if (player != null && !tournamentPlayers.contains(player)) {
+                            tournamentPlayers.add(player);
+                        }
+                    }
+                    json.endArray();
+                    break;
+                case "matches":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        TournamentMatchRecord record = readTournamentMatch(json);
+                        if (record != null) {
+                            matchRecords.add(record);
+                        }
+                    }
+                    json.endArray();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (name == null || tournamentPlayers.size() < 2) {
+            report.addSkippedRow();
+            return;
+        }
+        if (bestOf <= 0) {
+            bestOf = DEFAULT_BEST_OF;
+        }
+
+        // Byes and rounds whose players are not known yet have no match object here
+        List<Match> tournamentMatches = new ArrayList<>();
+        for (TournamentMatchRecord record : matchRecords) {
+            Player player1 = resolvePlayer(record.player1[0], record.player1[1]);
+            Player player2 = resolvePlayer(record.player2[0], record.player2[1]);
+            Match match = new Match(record.id == null ? UUID.randomUUID().toString() : record.id,
+                player1, player2, bestOf, createdAt);
+            match.restoreResult(record.player1Score, record.player2Score, record.completed);
+            tournamentMatches.add(match);
+        }
+
+        // The draw is rebuilt from the player order, which the first round's matches give
+        Set<Player> entrants = new HashSet<>(tournamentPlayers);
+        Set<Player> drawOrder = new LinkedHashSet<>();
+        for (Match match : tournamentMatches) {
+            if (entrants.contains(match.getPlayer1()) && entrants.contains(match.getPlayer2())) {
+                drawOrder.add(match.getPlayer1());
+                drawOrder.add(match.getPlayer2());
+            }
+        }
+        drawOrder.addAll(tournamentPlayers);
+        tournamentPlayers = new ArrayList<>(drawOrder);
+
+        // The tournament's segment refers to its players, so they are registered first
+        flushBatch();
+        dataManager.addTournament(new Tournament(id == null ? UUID.randomUUID().toString() : id, name,
+            Tournament.TournamentType.SINGLE_ELIMINATION, bestOf, tournamentPlayers, tournamentMatches,
+            true, completed));
+        report.addTournament();
+    }
+
+    private static final class TournamentMatchRecord {
+        String id;
+        String[] player1;
+        String[] player2;
+        int player1Score;
+        int player2Score;
+        boolean completed;
+    }
+
+    // Returns null for byes and for slots whose players are not decided yet
+    private static TournamentMatchRecord readTournamentMatch(JsonReader json) throws IOException {
+        TournamentMatchRecord record = new TournamentMatchRecord();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    record.id = json.nextString();
+                    break;
+                case "p1":
+                    record.player1 = readPlayerReference(json);
+                    break;
+                case "p2":
+                    record.player2 = readPlayerReference(json);
+                    break;
+                case "score1":
+                    record.player1Score = Math.max(0, readInt(json));
+                    break;
+                case "score2":
+                    record.player2Score = Math.max(0, readInt(json));
+                    break;
+                case "completed":
+                    record.completed = readBoolean(json);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (record.player1 == null || record.player2 == null
+                || BYE_ID.equals(record.player1[0]) || BYE_ID.equals(record.player2[0])) {
+            return null;
+        }
+        return record;
+    }
+
+    // Reads {id, name}, a bare name, or null
+    private static String[] readPlayerReference(JsonReader json) throws IOException {
+        JsonReader.Token token = json.peek();
+        if (token == JsonReader.Token.NULL) {
+            json.skipValue();
+            return null;
+        }
+        if (token != JsonReader.Token.BEGIN_OBJECT) {
+            String name = json.nextString();
+            return name == null ? null : new String[] { null, name };
+        }
+        String id = null;
+        String name = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "name":
+                    name = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return name == null ? null : new String[] { id, name };
+    }
+
+    private static String readPlayerName(JsonReader json) throws IOException {
+        String[] reference = readPlayerReference(json);
+        return reference == null ? null : reference[1];
+    }
+
+    private static boolean readBoolean(JsonReader json) throws IOException {
+        return Boolean.parseBoolean(json.nextString());
+    }
+
+    private static int readInt(JsonReader json) throws IOException {
+        if (json.peek() == JsonReader.Token.NULL) {
+            json.skipValue();
+            return -1;
+        }
+        try {
+            return (int) json.nextLong();
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,116 +1,1320 @@
 package com.tabletennispro;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
- * Manages all data for the Table Tennis Pro application
+ * Manages all data for the Table Tennis Pro application.
+ *
+ * State is persisted as a full snapshot plus an append-only journal of the
+ * events recorded since that snapshot. Each mutation appends one small journal
+ * record; the snapshot is only rewritten when the journal is compacted. All
+ * file I/O happens on a {@link PersistenceWriter} thread, so callers on the
+ * Swing event thread never wait for the disk.
+ *
+ * Older completed matches are moved into a memory-mapped {@link MatchArchive}
+ * at each snapshot, so only the most recent ones are kept as objects. Match
+ * positions are global: the archived rows come first, followed by the matches
+ * still on the heap.
+ *
+ * Tournaments are kept out of the snapshot; each one lives in its own segment
+ * managed by a {@link TournamentStore} and is only loaded when opened.
+ *
+ * All methods may be called from any thread. Queries share a read lock and
+ * changes take the write lock, so several scoring sessions can record matches
+ * at once while the lists, indexes and journal stay consistent. Views and
+ * iterators returned by queries take the read lock again for each element.
  */
 public class DataManager {
+    /**
+     * Told about every change to the live scores, on the thread that made it.
+     */
+    public interface LiveScoreListener {
+        void liveScoreUpdated(LiveScore score);
+
+        // The match was added when completed, or abandoned otherwise
+        void liveScoreEnded(String matchId, boolean completed);
+    }
+
+    /**
+     * Told about every change to the registered players, on the thread that
+     * made it and while the change is held under the lock. Indexes are
+     * positions in {@link #getPlayer(int)} order, ranks are 1-based
+     * positions in a leaderboard.
+     */
+    public interface PlayerListener {
+        void playerAdded(int index, Player player);
+
+        // Renamed or given a club
+        void playerChanged(int index, Player player);
+
+        void playerRemoved(int index, Player player);
+
+        // The player ranked fromRank now ranks toRank, 0 for unranked; those in between moved up or down one
+        void rankChanged(Leaderboard.Metric metric, Player player, int fromRank, int toRank);
+
+        // Any player may have changed, as after an import
+        void playersReloaded();
+    }
+
+    /**
+     * Reads a tournament on behalf of {@link #readTournament}.
+     */
+    public interface TournamentReader<T, X extends Exception> {
+        T read(Tournament tournament) throws X;
+    }
+
     private static final String DATA_FILE = "tabletennis_data.dat";
-    
+    private static final String JOURNAL_FILE = "tabletennis_data.journal";
+    private static final String ARCHIVE_FILE = "tabletennis_matches.archive";
+    private static final int HEAP_MATCH_LIMIT = 10_000;
+    private static final String TOURNAMENT_DIRECTORY = "tabletennis_tournaments";
+    private static final long TOURNAMENT_MEMORY_BUDGET = 200_000;
+    private static final long COMPACT_THRESHOLD_BYTES = 4L * 1024 * 1024;
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+    // Set in the best-of byte of a journaled match when a rally log follows;
+    // records written by earlier versions end without one
+    private static final int RALLIES_FLAG = 0x80;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
     private List<Player> players;
     private List<Match> matches;
     private List<Tournament> tournaments;
-    
+
+    // Registered players by ID and by case-folded name; the first player with a name wins.
+    // Concurrent so the tournament store can resolve players without taking the lock.
+    private final Map<String, Player> playersById = new ConcurrentHashMap<>();
+    private final Map<String, Player> playersByName = new HashMap<>();
+    // Match positions of each registered player, in time order
+    private final PlayerMatchIndex playerMatches = new PlayerMatchIndex(this::matchTime);
+    // Match positions of all matches, in time order
+    private final MatchTimeIndex matchTimes = new MatchTimeIndex();
+    // Registered players ranked by each metric
+    private final Map<Leaderboard.Metric, Leaderboard> leaderboards = new EnumMap<>(Leaderboard.Metric.class);
+    // Ratings derived from the match log; recomputed on load and after imports
+    private final RatingEngine ratings = new RatingEngine();
+    // Head-to-head records of recently looked-up pairs, kept current as matches are added
+    private final HeadToHeadCache headToHeads = new HeadToHeadCache();
+    // Scores of the matches being played, by match ID; never persisted
+    private final Map<String, LiveScore> liveScores = new ConcurrentHashMap<>();
+    // Increased by every change, so readers can tell when what they derived is stale
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong liveScoreVersion = new AtomicLong();
+    private final AtomicLong nameVersion = new AtomicLong();
+    private final List<LiveScoreListener> liveScoreListeners = new CopyOnWriteArrayList<>();
+    private final List<PlayerListener> playerListeners = new CopyOnWriteArrayList<>();
+    // Set while an import is under way; player listeners hear about it once it is committed
+    private boolean importing;
+
+    private EventJournal journal;
+    private long snapshotSequence;
+    private MatchArchive archive;
+    private int snapshotArchivedCount;
+    private PersistenceWriter writer;
+    private long journalBytes;
+    private TournamentStore tournamentStore;
+    // Set when the loaded data predates per-player game totals
+    private boolean countGames;
+
     public DataManager() {
+        this(EventJournal.SyncPolicy.INTERVAL);
+    }
+
+    public DataManager(EventJournal.SyncPolicy syncPolicy) {
         this.players = new ArrayList<>();
         this.matches = new ArrayList<>();
         this.tournaments = new ArrayList<>();
         loadData();
+        rebuildPlayerIndex();
+        openArchive();
+        openJournal(syncPolicy);
+        rebuildMatchIndexes();
+        if (countGames) {
+            recountGames();
+        }
+        rebuildRatings();
+        rebuildLeaderboards();
+        writer = new PersistenceWriter(journal, archive, Paths.get(DATA_FILE));
+        openTournamentStore();
     }
-    
+
     // Player management
     public void addPlayer(Player player) {
-        if (!players.contains(player)) {
-            players.add(player);
-            saveData();
+        writeLock.lock();
+        try {
+            if (registerPlayer(player)) {
+                journal(EventJournal.EventType.PLAYER_ADDED, out -> {
+                    out.writeUTF(player.getId());
+                    out.writeUTF(player.getName());
+                });
+                version.incrementAndGet();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Renames a player and keeps the name index in sync. Use this rather than
+     * {@link Player#setName} for registered players.
+     */
+    public void renamePlayer(Player player, String newName) {
+        writeLock.lock();
+        try {
+            applyRename(player, newName);
+            journal(EventJournal.EventType.PLAYER_RENAMED, out -> {
+                out.writeUTF(player.getId());
+                out.writeUTF(newName);
+            });
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
         }
     }
-    
+
+    /**
+     * Sets a player's club, or clears it with null; draws keep clubmates apart.
+     */
+    public void setPlayerClub(Player player, String club) {
+        String trimmed = club == null ? "" : club.trim();
+        writeLock.lock();
+        try {
+            player.setClub(trimmed.isEmpty() ? null : trimmed);
+            playerChanged(player);
+            journal(EventJournal.EventType.PLAYER_CLUB_CHANGED, out -> {
+                out.writeUTF(player.getId());
+                out.writeUTF(trimmed);
+            });
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     public void removePlayer(Player player) {
-        players.remove(player);
-        saveData();
+        writeLock.lock();
+        try {
+            if (unregisterPlayer(player.getId())) {
+                journal(EventJournal.EventType.PLAYER_REMOVED, out -> out.writeUTF(player.getId()));
+                version.incrementAndGet();
+            }
+        } finally {
+            writeLock.unlock();
+        }
     }
-    
+
     public List<Player> getAllPlayers() {
-        return new ArrayList<>(players);
+        readLock.lock();
+        try {
+            return new ArrayList<>(players);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getPlayerCount() {
+        readLock.lock();
+        try {
+            return players.size();
+        } finally {
+            readLock.unlock();
+        }
     }
-    
+
+    /**
+     * Returns the registered player at the given position, in the order they were added.
+     */
+    public Player getPlayer(int index) {
+        readLock.lock();
+        try {
+            return players.get(index);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public void addPlayerListener(PlayerListener listener) {
+        playerListeners.add(listener);
+    }
+
+    public void removePlayerListener(PlayerListener listener) {
+        playerListeners.remove(listener);
+    }
+
+    /**
+     * Reads the players under the read lock. Listeners are told of changes
+     * under the write lock, so no change and no event falls inside the read.
+     */
+    public <T> T readPlayers(Supplier<T> reader) {
+        readLock.lock();
+        try {
+            return reader.get();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the registered player with the given name, ignoring case.
+     */
     public Player getPlayerByName(String name) {
-        return players.stream()
-            .filter(p -> p.getName().equalsIgnoreCase(name))
-            .findFirst()
-            .orElse(null);
+        readLock.lock();
+        try {
+            return name == null ? null : playersByName.get(nameKey(name));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Player getPlayerById(String id) {
+        readLock.lock();
+        try {
+            return playersById.get(id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private boolean registerPlayer(Player player) {
+        if (playersById.putIfAbsent(player.getId(), player) != null) {
+            return false;
+        }
+        players.add(player);
+        playersByName.putIfAbsent(nameKey(player.getName()), player);
+        if (archive != null) {
+            archive.forgetResolvedPlayer(player.getId());
+        }
+        if (notifying()) {
+            for (PlayerListener listener : playerListeners) {
+                listener.playerAdded(players.size() - 1, player);
+            }
+        }
+        updateStandings(player);
+        return true;
+    }
+
+    private boolean unregisterPlayer(String id) {
+        Player player = playersById.remove(id);
+        if (player == null) {
+            return false;
+        }
+        int index = players.indexOf(player);
+        players.remove(index);
+        unindexName(player);
+        if (archive != null) {
+            archive.forgetResolvedPlayer(id);
+        }
+        playerMatches.remove(id);
+        headToHeads.removePlayer(id);
+        for (Leaderboard leaderboard : leaderboards.values()) {
+            int rank = notifying() ? leaderboard.rankOf(player) : 0;
+            leaderboard.remove(player);
+            if (rank > 0) {
+                for (PlayerListener listener : playerListeners) {
+                    listener.rankChanged(leaderboard.getMetric(), player, rank, 0);
+                }
+            }
+        }
+        if (notifying()) {
+            for (PlayerListener listener : playerListeners) {
+                listener.playerRemoved(index, player);
+            }
+        }
+        return true;
+    }
+
+    private void applyRename(Player player, String newName) {
+        nameVersion.incrementAndGet();
+        boolean registered = playersById.get(player.getId()) == player;
+        if (registered) {
+            unindexName(player);
+        }
+        player.setName(newName);
+        if (registered) {
+            playersByName.putIfAbsent(nameKey(newName), player);
+            playerChanged(player);
+        }
+    }
+
+    private boolean notifying() {
+        return !importing && !playerListeners.isEmpty();
+    }
+
+    private void playerChanged(Player player) {
+        if (notifying() && playersById.get(player.getId()) == player) {
+            int index = players.indexOf(player);
+            for (PlayerListener listener : playerListeners) {
+                listener.playerChanged(index, player);
+            }
+        }
+    }
+
+    // Hands the player's name over to the next registered player sharing it, if any
+    private void unindexName(Player player) {
+        String key = nameKey(player.getName());
+        if (playersByName.get(key) != player) {
+            return;
+        }
+        playersByName.remove(key);
+        for (Player other : players) {
+            if (other != player && nameKey(other.getName()).equals(key)) {
+                playersByName.put(key, other);
+                break;
+            }
+        }
+    }
+
+    private void rebuildPlayerIndex() {
+        playersById.clear();
+        playersByName.clear();
+        for (Player player : players) {
+            playersById.putIfAbsent(player.getId(), player);
+            playersByName.putIfAbsent(nameKey(player.getName()), player);
+        }
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Rankings
+
+    /**
+     * Returns the live ranking of registered players by the given metric. It
+     * is updated as matches are added.
+     */
+    public Leaderboard getLeaderboard(Leaderboard.Metric metric) {
+        readLock.lock();
+        try {
+            return leaderboards.get(metric);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Repositions a registered player after their statistics changed
+    private void updateStandings(Player player) {
+        if (playersById.get(player.getId()) == player) {
+            for (Leaderboard leaderboard : leaderboards.values()) {
+                if (notifying()) {
+                    int rank = leaderboard.rankOf(player);
+                    leaderboard.update(player);
+                    for (PlayerListener listener : playerListeners) {
+                        listener.rankChanged(leaderboard.getMetric(), player, Math.max(rank, 0), leaderboard.rankOf(player));
+                    }
+                } else {
+                    leaderboard.update(player);
+                }
+            }
+        }
+    }
+
+    private void rebuildLeaderboards() {
+        for (Leaderboard.Metric metric : Leaderboard.Metric.values()) {
+            Leaderboard leaderboard = new Leaderboard(metric);
+            for (Player player : players) {
+                leaderboard.update(player);
+            }
+            leaderboards.put(metric, leaderboard);
+        }
     }
-    
+
+    // Ratings
+
+    /**
+     * Returns a player's rating after each of their matches, oldest first, in
+     * the same order as {@link #getMatchesForPlayer(Player)}.
+     */
+    public double[] getRatingHistory(Player player) {
+        readLock.lock();
+        try {
+            MatchRefs refs = playerMatches.get(player.getId());
+            double[] history = new double[refs.size()];
+            int archived = archivedCount();
+            for (int i = 0; i < history.length; i++) {
+                int position = refs.get(i);
+                String player1 = position < archived ? archive.getPlayerId(archive.getPlayer1(position))
+                    : matches.get(position - archived).getPlayer1().getId();
+                history[i] = ratings.getRatingAfter(position, player1.equals(player.getId()) ? 0 : 1);
+            }
+            return history;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private void rateMatch(Match match, int position) {
+        ratings.record(position, match.getPlayer1().getId(), match.getPlayer2().getId(),
+            match.getPlayer1Score() > match.getPlayer2Score(), BinaryIO.toEpochMillis(match.getTimestamp()));
+        publishRating(match.getPlayer1());
+        publishRating(match.getPlayer2());
+    }
+
+    private void publishRating(Player player) {
+        String id = player.getId();
+        player.updateRatings(ratings.getRating(id), ratings.getDeviation(id), ratings.getEloRating(id));
+    }
+
+    // Rates every match again in time order; removed players keep their place
+    // in the history of their opponents
+    private void rebuildRatings() {
+        ratings.rebuild(getMatchHistory());
+        for (Player player : players) {
+            publishRating(player);
+        }
+    }
+
+    /**
+     * Copies the match log, oldest first, into a compact form that can be
+     * replayed many times without touching match objects, for example by a
+     * {@link ReplayEngine}.
+     */
+    public MatchHistory getMatchHistory() {
+        readLock.lock();
+        try {
+            MatchRefs order = matchTimes.range(Long.MIN_VALUE, Long.MAX_VALUE);
+            int count = order.size();
+            Map<String, Integer> playerIndexes = new HashMap<>();
+            List<String> playerIds = new ArrayList<>();
+            Function<String, Integer> nextIndex = id -> {
+                playerIds.add(id);
+                return playerIds.size() - 1;
+            };
+            int[] positions = new int[count];
+            int[] player1 = new int[count];
+            int[] player2 = new int[count];
+            boolean[] player1Won = new boolean[count];
+            long[] epochMillis = new long[count];
+            int archived = archivedCount();
+            for (int i = 0; i < count; i++) {
+                int position = order.get(i);
+                positions[i] = position;
+                String player1Id;
+                String player2Id;
+                if (position < archived) {
+                    player1Id = archive.getPlayerId(archive.getPlayer1(position));
+                    player2Id = archive.getPlayerId(archive.getPlayer2(position));
+                    player1Won[i] = archive.getPlayer1Score(position) > archive.getPlayer2Score(position);
+                    epochMillis[i] = archive.getEpochMillis(position);
+                } else {
+                    Match match = matches.get(position - archived);
+                    player1Id = match.getPlayer1().getId();
+                    player2Id = match.getPlayer2().getId();
+                    player1Won[i] = match.getPlayer1Score() > match.getPlayer2Score();
+                    epochMillis[i] = BinaryIO.toEpochMillis(match.getTimestamp());
+                }
+                player1[i] = playerIndexes.computeIfAbsent(player1Id, nextIndex);
+                player2[i] = playerIndexes.computeIfAbsent(player2Id, nextIndex);
+            }
+            return new MatchHistory(playerIds.toArray(new String[0]), count, positions, player1, player2,
+                player1Won, epochMillis);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Live scores
+
+    /**
+     * Changes the score of a match being played under the write lock, so
+     * readers of its tournament never see half of a point. Scoring sessions
+     * make every change to a tournament match through this.
+     */
+    public void changeMatch(Match match, Consumer<Match> change) {
+        writeLock.lock();
+        try {
+            change.accept(match);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the current score of a match in progress and returns it.
+     * Scoring sessions call this after every change; the score is dropped once
+     * the match is added. The finished games' scores are carried over from the
+     * previous score until another game ends.
+     */
+    public LiveScore updateLiveScore(Match match) {
+        LiveScore score = new LiveScore(match, liveScores.get(match.getId()), System.currentTimeMillis());
+        liveScores.put(match.getId(), score);
+        liveScoreVersion.incrementAndGet();
+        for (LiveScoreListener listener : liveScoreListeners) {
+            listener.liveScoreUpdated(score);
+        }
+        return score;
+    }
+
+    /**
+     * Drops the score of a match that was abandoned before it finished.
+     */
+    public void removeLiveScore(Match match) {
+        endLiveScore(match.getId(), false);
+    }
+
+    private void endLiveScore(String matchId, boolean completed) {
+        if (liveScores.remove(matchId) != null) {
+            liveScoreVersion.incrementAndGet();
+            for (LiveScoreListener listener : liveScoreListeners) {
+                listener.liveScoreEnded(matchId, completed);
+            }
+        }
+    }
+
+    public void addLiveScoreListener(LiveScoreListener listener) {
+        liveScoreListeners.add(listener);
+    }
+
+    public void removeLiveScoreListener(LiveScoreListener listener) {
+        liveScoreListeners.remove(listener);
+    }
+
+    /**
+     * Returns the scores of all matches in progress, earliest started first.
+     */
+    public List<LiveScore> getLiveScores() {
+        List<LiveScore> scores = new ArrayList<>(liveScores.values());
+        scores.sort(Comparator.comparingLong(LiveScore::getStartedMillis));
+        return scores;
+    }
+
+    /**
+     * Returns a counter that increases with every change to players, matches
+     * or tournaments.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns a counter that increases whenever a player is renamed.
+     */
+    public long getNameVersion() {
+        return nameVersion.get();
+    }
+
+    /**
+     * Returns a counter that increases with every change to the live scores.
+     */
+    public long getLiveScoreVersion() {
+        return liveScoreVersion.get();
+    }
+
     // Match management
+
+    /**
+     * Completes a match and records it. Completing it here, under the lock,
+     * keeps a snapshot taken by another session from seeing the players' new
+     * statistics before the match itself.
+     */
     public void addMatch(Match match) {
-        matches.add(match);
-        saveData();
+        writeLock.lock();
+        try {
+            match.completeMatch();
+            matches.add(match);
+            int position = getMatchCount() - 1;
+            rateMatch(match, position);
+            updateStandings(match.getPlayer1());
+            updateStandings(match.getPlayer2());
+            indexMatch(match, position, false);
+            matchTimes.add(position, BinaryIO.toEpochMillis(match.getTimestamp()));
+            headToHeads.update(match);
+            journal(EventJournal.EventType.MATCH_COMPLETED, out -> writeMatch(out, match));
+            version.incrementAndGet();
+            endLiveScore(match.getId(), true);
+
+            // A tournament match updates its tournament's standings and is appended to its segment
+            List<Tournament> loaded = tournamentStore != null ? tournamentStore.getLoadedTournaments() : tournaments;
+            for (Tournament tournament : loaded) {
+                if (tournament.isStarted() && !tournament.isCompleted() && tournament.containsMatch(match)) {
+                    tournament.recordResult(match);
+                    if (tournamentStore != null) {
+                        tournamentStore.saveResult(tournament, match);
+                    }
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
     }
-    
+
+    /**
+     * Returns a read-only view of every match, archived ones first. Archived
+     * matches are only turned into objects when an element is accessed.
+     */
     public List<Match> getAllMatches() {
-        return new ArrayList<>(matches);
+        readLock.lock();
+        try {
+            return new MatchListView(archivedCount(), new ArrayList<>(matches));
+        } finally {
+            readLock.unlock();
+        }
     }
-    
+
+    public int getMatchCount() {
+        readLock.lock();
+        try {
+            return archivedCount() + matches.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the match at the given global position.
+     */
+    public Match getMatch(int index) {
+        readLock.lock();
+        try {
+            int archived = archivedCount();
+            return index < archived ? archive.getMatch(index, this::resolvePlayer) : matches.get(index - archived);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a read-only view of a player's matches, oldest first. Matches are
+     * only looked up when an element is accessed.
+     */
     public List<Match> getMatchesForPlayer(Player player) {
-        List<Match> playerMatches = new ArrayList<>();
-        for (Match match : matches) {
-            if (match.getPlayer1().equals(player) || match.getPlayer2().equals(player)) {
-                playerMatches.add(match);
+        readLock.lock();
+        try {
+            return new PlayerMatchView(playerMatches.get(player.getId()));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns one page of a player's matches, oldest first.
+     */
+    public List<Match> getMatchesForPlayer(Player player, int offset, int limit) {
+        readLock.lock();
+        try {
+            int end = (int) Math.min((long) offset + Math.max(limit, 0), Integer.MAX_VALUE);
+            return new PlayerMatchView(playerMatches.get(player.getId()).subRange(offset, end));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getMatchCountForPlayer(Player player) {
+        readLock.lock();
+        try {
+            return playerMatches.get(player.getId()).size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the record of all matches between two players, seen from the
+     * first one. Records of recently asked-for pairs are cached.
+     */
+    public HeadToHead getHeadToHead(Player player1, Player player2) {
+        readLock.lock();
+        try {
+            return headToHeads.get(player1.getId(), player2.getId(), this::computeHeadToHead);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public HeadToHeadCache getHeadToHeadCache() {
+        return headToHeads;
+    }
+
+    // Scans whichever of the two players has fewer matches
+    private HeadToHead computeHeadToHead(String player1Id, String player2Id) {
+        HeadToHead record = new HeadToHead(player1Id, player2Id);
+        MatchRefs refs1 = playerMatches.get(player1Id);
+        MatchRefs refs2 = playerMatches.get(player2Id);
+        MatchRefs refs = refs1.size() <= refs2.size() ? refs1 : refs2;
+        int archived = archivedCount();
+        int archived1 = archive == null ? -1 : archive.indexOfPlayer(player1Id);
+        int archived2 = archive == null ? -1 : archive.indexOfPlayer(player2Id);
+        for (int i = 0; i < refs.size(); i++) {
+            int position = refs.get(i);
+            if (position < archived) {
+                int first = archive.getPlayer1(position);
+                int second = archive.getPlayer2(position);
+                if (first == archived1 && second == archived2) {
+                    record.add(archive.getPlayer1Score(position), archive.getPlayer2Score(position),
+                        archive.getEpochMillis(position));
+                } else if (first == archived2 && second == archived1) {
+                    record.add(archive.getPlayer2Score(position), archive.getPlayer1Score(position),
+                        archive.getEpochMillis(position));
+                }
+            } else {
+                Match match = matches.get(position - archived);
+                String first = match.getPlayer1().getId();
+                String second = match.getPlayer2().getId();
+                long millis = BinaryIO.toEpochMillis(match.getTimestamp());
+                if (first.equals(player1Id) && second.equals(player2Id)) {
+                    record.add(match.getPlayer1Score(), match.getPlayer2Score(), millis);
+                } else if (first.equals(player2Id) && second.equals(player1Id)) {
+                    record.add(match.getPlayer2Score(), match.getPlayer1Score(), millis);
+                }
+            }
+        }
+        return record;
+    }
+
+    // Time range queries; ranges include from and exclude to, and a null bound is open
+
+    /**
+     * Iterates over the matches played in a time range, oldest first. Matches
+     * are looked up one at a time as the iterator advances.
+     */
+    public Iterator<Match> getMatchesBetween(LocalDateTime from, LocalDateTime to) {
+        readLock.lock();
+        try {
+            return new MatchRefIterator(matchTimes.range(lowerMillis(from), upperMillis(to)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over one player's matches played in a time range, oldest first.
+     */
+    public Iterator<Match> getMatchesBetween(Player player, LocalDateTime from, LocalDateTime to) {
+        readLock.lock();
+        try {
+            return new MatchRefIterator(playerMatches.range(player.getId(), lowerMillis(from), upperMillis(to)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over a tournament's matches played in a time range, oldest first.
+     */
+    public Iterator<Match> getMatchesBetween(Tournament tournament, LocalDateTime from, LocalDateTime to) {
+        long fromMillis = lowerMillis(from);
+        long toMillis = upperMillis(to);
+        return readTournament(tournament, Tournament::getMatches).stream()
+            .filter(m -> {
+                long millis = BinaryIO.toEpochMillis(m.getTimestamp());
+                return millis >= fromMillis && millis < toMillis;
+            })
+            .sorted(Comparator.comparing(Match::getTimestamp))
+            .iterator();
+    }
+
+    public int countMatchesBetween(LocalDateTime from, LocalDateTime to) {
+        readLock.lock();
+        try {
+            return matchTimes.count(lowerMillis(from), upperMillis(to));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private static long lowerMillis(LocalDateTime from) {
+        return from == null ? Long.MIN_VALUE : BinaryIO.toEpochMillis(from);
+    }
+
+    private static long upperMillis(LocalDateTime to) {
+        return to == null ? Long.MAX_VALUE : BinaryIO.toEpochMillis(to);
+    }
+
+    // Only registered players are indexed; matches of removed players stay out
+    private void indexMatch(Match match, int position, boolean unordered) {
+        for (Player player : new Player[] { match.getPlayer1(), match.getPlayer2() }) {
+            if (playersById.containsKey(player.getId())) {
+                if (unordered) {
+                    playerMatches.addUnordered(player.getId(), position);
+                } else {
+                    playerMatches.add(player.getId(), position);
+                }
+            }
+        }
+    }
+
+    private void rebuildMatchIndexes() {
+        playerMatches.clear();
+        matchTimes.clear();
+        int archived = archivedCount();
+        for (int row = 0; row < archived; row++) {
+            matchTimes.addUnordered(row, archive.getEpochMillis(row));
+            String player1 = archive.getPlayerId(archive.getPlayer1(row));
+            String player2 = archive.getPlayerId(archive.getPlayer2(row));
+            if (playersById.containsKey(player1)) {
+                playerMatches.addUnordered(player1, row);
+            }
+            if (playersById.containsKey(player2)) {
+                playerMatches.addUnordered(player2, row);
+            }
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            indexMatch(matches.get(i), archived + i, true);
+            matchTimes.addUnordered(archived + i, BinaryIO.toEpochMillis(matches.get(i).getTimestamp()));
+        }
+        playerMatches.sortPending();
+        matchTimes.sortPending();
+    }
+
+    private long matchTime(int position) {
+        int archived = archivedCount();
+        return position < archived ? archive.getEpochMillis(position)
+            : BinaryIO.toEpochMillis(matches.get(position - archived).getTimestamp());
+    }
+
+    private int archivedCount() {
+        return archive == null ? 0 : archive.size();
+    }
+
+    private Player resolvePlayer(String id, String storedName) {
+        Player player = playersById.get(id);
+        return player != null ? player : new Player(id, storedName); // Player has been removed since
+    }
+
+    private class MatchListView extends AbstractList<Match> implements RandomAccess {
+        private final int archived;
+        private final List<Match> recent;
+
+        MatchListView(int archived, List<Match> recent) {
+            this.archived = archived;
+            this.recent = recent;
+        }
+
+        @Override
+        public Match get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+            }
+            if (index >= archived) {
+                return recent.get(index - archived);
+            }
+            readLock.lock();
+            try {
+                return archive.getMatch(index, DataManager.this::resolvePlayer);
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            return archived + recent.size();
+        }
+    }
+
+    private class PlayerMatchView extends AbstractList<Match> implements RandomAccess {
+        private final MatchRefs refs;
+
+        PlayerMatchView(MatchRefs refs) {
+            this.refs = refs;
+        }
+
+        @Override
+        public Match get(int index) {
+            return getMatch(refs.get(index));
+        }
+
+        @Override
+        public int size() {
+            return refs.size();
+        }
+    }
+
+    private class MatchRefIterator implements Iterator<Match> {
+        private final MatchRefs refs;
+        private int next;
+
+        MatchRefIterator(MatchRefs refs) {
+            this.refs = refs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < refs.size();
+        }
+
+        @Override
+        public Match next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            return getMatch(refs.get(next++));
         }
-        return playerMatches;
     }
-    
+
     // Tournament management
     public void addTournament(Tournament tournament) {
-        tournaments.add(tournament);
-        saveData();
+        writeLock.lock();
+        try {
+            tournaments.add(tournament);
+            updateTournament(tournament);
+        } finally {
+            writeLock.unlock();
+        }
     }
-    
+
+    /**
+     * Records the current state of a tournament after it was started or advanced.
+     */
+    public void updateTournament(Tournament tournament) {
+        writeLock.lock();
+        try {
+            if (tournamentStore != null) {
+                tournamentStore.save(tournament);
+            } else {
+                journal(EventJournal.EventType.TOURNAMENT_SAVED, out -> writeTournament(out, tournament));
+            }
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Makes the draw of a tournament and opens its first round.
+     */
+    public void startTournament(Tournament tournament) {
+        writeLock.lock();
+        try {
+            tournament.startTournament();
+            updateTournament(tournament);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Opens the next round of a tournament once the current one is played.
+     */
+    public void advanceTournament(Tournament tournament) {
+        writeLock.lock();
+        try {
+            int opened = tournament.getMatchCount();
+            boolean completed = tournament.isCompleted();
+            tournament.advanceTournament();
+            // The store saved each result as it was added, so it only needs a round that opened or the end
+            if (tournamentStore == null || tournament.getMatchCount() != opened
+                    || tournament.isCompleted() != completed) {
+                updateTournament(tournament);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the knockout a finished group stage's qualifiers go on to,
+     * creating it from the top of each group the first time.
+     */
+    public Tournament createKnockout(Tournament groupStage, int perGroup) {
+        writeLock.lock();
+        try {
+            Tournament existing = getKnockout(groupStage);
+            if (existing != null) {
+                return existing;
+            }
+            Tournament knockout = new Tournament(groupStage.getName() + " - Knockout",
+                Tournament.TournamentType.SINGLE_ELIMINATION, groupStage.getBestOf());
+            for (Player player : groupStage.getQualifiers(perGroup)) {
+                knockout.addPlayer(player);
+            }
+            addTournament(knockout);
+            groupStage.setKnockoutId(knockout.getId());
+            updateTournament(groupStage);
+            return knockout;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the knockout created from a group stage, or null if there is none.
+     */
+    public Tournament getKnockout(Tournament groupStage) {
+        readLock.lock();
+        try {
+            String knockoutId = groupStage.getKnockoutId();
+            if (knockoutId != null) {
+                for (Tournament tournament : tournaments) {
+                    if (tournament.getId().equals(knockoutId)) {
+                        return tournament;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads a tournament under the read lock, so it is not changed meanwhile,
+     * and pinned in memory, so the store does not unload it while it is read.
+     * The reader must not change data itself.
+     */
+    public <T, X extends Exception> T readTournament(Tournament tournament, TournamentReader<T, X> reader) throws X {
+        readLock.lock();
+        try {
+            holdTournament(tournament);
+            try {
+                return reader.read(tournament);
+            } finally {
+                releaseTournament(tournament);
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Keeps a tournament in memory until it is released, for views that
+     * follow it on the event dispatch thread, where tournaments are changed.
+     */
+    public void holdTournament(Tournament tournament) {
+        if (tournamentStore != null) {
+            tournamentStore.pin(tournament);
+        }
+    }
+
+    public void releaseTournament(Tournament tournament) {
+        if (tournamentStore != null) {
+            tournamentStore.unpin(tournament);
+        }
+    }
+
     public void removeTournament(Tournament tournament) {
-        tournaments.remove(tournament);
-        saveData();
+        writeLock.lock();
+        try {
+            if (tournaments.remove(tournament)) {
+                if (tournamentStore != null) {
+                    tournamentStore.remove(tournament);
+                } else {
+                    journal(EventJournal.EventType.TOURNAMENT_REMOVED, out -> out.writeUTF(tournament.getId()));
+                }
+                version.incrementAndGet();
+            }
+        } finally {
+            writeLock.unlock();
+        }
     }
-    
+
     public List<Tournament> getAllTournaments() {
-        return new ArrayList<>(tournaments);
+        readLock.lock();
+        try {
+            return new ArrayList<>(tournaments);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getTournamentCount() {
+        readLock.lock();
+        try {
+            return tournaments.size();
+        } finally {
+            readLock.unlock();
+        }
     }
-    
+
+    /**
+     * Returns the tournament at the given position, in the order they were added.
+     */
+    public Tournament getTournament(int index) {
+        readLock.lock();
+        try {
+            return tournaments.get(index);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     public List<Tournament> getActiveTournaments() {
-        List<Tournament> active = new ArrayList<>();
-        for (Tournament t : tournaments) {
-            if (t.isStarted() && !t.isCompleted()) {
-                active.add(t);
+        readLock.lock();
+        try {
+            List<Tournament> active = new ArrayList<>();
+            for (Tournament t : tournaments) {
+                if (t.isStarted() && !t.isCompleted()) {
+                    active.add(t);
+                }
+            }
+            return active;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    // Bulk import
+
+    /**
+     * Adds a batch of new players and finished matches without journaling
+     * them one by one; {@link #commitImport} persists everything at once.
+     * The matches' results are applied to the players' statistics here, under
+     * the write lock, and the match indexes are back in time order before the
+     * lock is released, so readers never see a half-applied batch. Matches
+     * beyond the heap limit are moved to the archive straight away so memory
+     * use stays bounded however large the import is. Ratings are recomputed
+     * once, by {@link #commitImport}.
+     */
+    void importBatch(List<Player> newPlayers, List<Match> newMatches) {
+        writeLock.lock();
+        try {
+            importing = true;
+            for (Player player : newPlayers) {
+                registerPlayer(player);
+            }
+            int position = getMatchCount();
+            matches.addAll(newMatches);
+            Set<Player> changed = new HashSet<>();
+            for (Match match : newMatches) {
+                match.completeMatch();
+                changed.add(match.getPlayer1());
+                changed.add(match.getPlayer2());
+                matchTimes.addUnordered(position, BinaryIO.toEpochMillis(match.getTimestamp()));
+                indexMatch(match, position++, true);
+            }
+            playerMatches.sortPending();
+            matchTimes.sortPending();
+            for (Player player : changed) {
+                updateStandings(player);
+            }
+            headToHeads.clear();
+            matches = archiveOldMatches();
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Persists an import as a single snapshot and waits until it is durable.
+     * Until then the previous snapshot remains the recovery point, so an
+     * interrupted import leaves none of its players or matches behind.
+     */
+    void commitImport() {
+        writeLock.lock();
+        try {
+            rebuildRatings();
+            rebuildLeaderboards();
+            saveData();
+            version.incrementAndGet();
+            importing = false;
+            for (PlayerListener listener : playerListeners) {
+                listener.playersReloaded();
             }
+        } finally {
+            writeLock.unlock();
         }
-        return active;
+        awaitDurable();
     }
-    
+
     // Data persistence
+
+    /**
+     * Queues a full snapshot, after which the journal is emptied. Called
+     * automatically once the journal grows past its compaction threshold. The
+     * snapshot is encoded here and written by the background writer.
+     */
     public void saveData() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(players);
-            oos.writeObject(matches);
-            oos.writeObject(tournaments);
+        writeLock.lock();
+        try {
+            long sequence = journal != null ? journal.getLastSequence() : snapshotSequence;
+            List<Match> heapMatches = archiveOldMatches();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                List<Tournament> snapshotTournaments = tournamentStore == null ? tournaments : Collections.emptyList();
+                SnapshotCodec.write(bytes, new SnapshotCodec.Snapshot(players, heapMatches, snapshotTournaments,
+                    sequence, archivedCount()));
+            } catch (IOException e) {
+                System.err.println("Error saving data: " + e.getMessage());
+                return;
+            }
+
+            matches = heapMatches;
+            journalBytes = 0;
+            writer.submitSnapshot(bytes.toByteArray(), archivedCount());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the oldest completed matches beyond the heap limit to the archive
+     * and returns the matches that stay on the heap. The rows are synced by the
+     * writer before the snapshot that drops them from the heap is published.
+     */
+    private List<Match> archiveOldMatches() {
+        if (archive == null || matches.size() <= HEAP_MATCH_LIMIT) {
+            return matches;
+        }
+
+        // Only loaded tournaments are consulted, so unloaded ones are not read back just to archive
+        Map<String, String> tournamentOf = new HashMap<>();
+        List<Tournament> loadedTournaments = tournamentStore == null ? tournaments
+            : tournamentStore.getLoadedTournaments();
+        for (Tournament tournament : loadedTournaments) {
+            for (Match match : tournament.getMatches()) {
+                tournamentOf.put(match.getId(), tournament.getId());
+            }
+        }
+
+        int archivedBefore = archive.size();
+        int moved = 0;
+        try {
+            while (matches.size() - moved > HEAP_MATCH_LIMIT && matches.get(moved).isCompleted()) {
+                Match match = matches.get(moved);
+                archive.append(match, tournamentOf.get(match.getId()));
+                moved++;
+            }
         } catch (IOException e) {
-            System.err.println("Error saving data: " + e.getMessage());
+            System.err.println("Error archiving matches: " + e.getMessage());
+            rollBackArchive(archivedBefore);
+            return matches;
         }
+        return new ArrayList<>(matches.subList(moved, matches.size()));
     }
-    
-    @SuppressWarnings("unchecked")
+
+    private void rollBackArchive(int rows) {
+        try {
+            archive.truncate(rows);
+        } catch (IOException e) {
+            System.err.println("Error rolling back archive: " + e.getMessage());
+        }
+    }
+
     private void loadData() {
-        File file = new File(DATA_FILE);
-        if (!file.exists()) {
+        Path path = Paths.get(DATA_FILE);
+        if (!Files.exists(path)) {
             return;
         }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DATA_FILE))) {
-            players = (List<Player>) ois.readObject();
-            matches = (List<Match>) ois.readObject();
-            tournaments = (List<Tournament>) ois.readObject();
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            if (SnapshotCodec.isSnapshot(in)) {
+                SnapshotCodec.Snapshot snapshot = SnapshotCodec.read(in);
+                players = snapshot.players;
+                matches = snapshot.matches;
+                tournaments = snapshot.tournaments;
+                snapshotSequence = snapshot.sequence;
+                snapshotArchivedCount = snapshot.archivedCount;
+                countGames = snapshot.version < 5;
+            } else {
+                loadLegacyData(in);
+                countGames = true;
+            }
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading data: " + e.getMessage());
             // Initialize with empty lists if loading fails
@@ -119,8 +1323,339 @@ public class DataManager {
             tournaments = new ArrayList<>();
         }
     }
-    
+
+    // Reads data files written with Java serialization by earlier versions;
+    // the next snapshot rewrites them in the binary format
+    @SuppressWarnings("unchecked")
+    private void loadLegacyData(InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        players = (List<Player>) ois.readObject();
+        matches = (List<Match>) ois.readObject();
+        tournaments = (List<Tournament>) ois.readObject();
+        try {
+            snapshotSequence = ois.readLong();
+        } catch (EOFException e) {
+            snapshotSequence = 0; // Written before the journal existed
+        }
+        // These versions counted games as points
+        for (Player player : players) {
+            player.restoreStats(player.getWins(), player.getLosses(), 0, 0, 0);
+        }
+    }
+
+    // Counts every registered player's games won and lost from the whole match history
+    private void recountGames() {
+        Map<String, int[]> games = new HashMap<>();
+        for (Player player : players) {
+            games.put(player.getId(), new int[2]);
+        }
+        int archived = archivedCount();
+        for (int row = 0; row < archived; row++) {
+            addGames(games, archive.getPlayerId(archive.getPlayer1(row)),
+                archive.getPlayer1Score(row), archive.getPlayer2Score(row));
+            addGames(games, archive.getPlayerId(archive.getPlayer2(row)),
+                archive.getPlayer2Score(row), archive.getPlayer1Score(row));
+        }
+        for (Match match : matches) {
+            addGames(games, match.getPlayer1().getId(), match.getPlayer1Score(), match.getPlayer2Score());
+            addGames(games, match.getPlayer2().getId(), match.getPlayer2Score(), match.getPlayer1Score());
+        }
+        for (Player player : players) {
+            int[] total = games.get(player.getId());
+            player.restoreGames(total[0], total[1]);
+        }
+    }
+
+    private static void addGames(Map<String, int[]> games, String playerId, int won, int lost) {
+        int[] total = games.get(playerId);
+        if (total != null) {
+            total[0] += won;
+            total[1] += lost;
+        }
+    }
+
+    private void openArchive() {
+        try {
+            archive = new MatchArchive(Paths.get(ARCHIVE_FILE));
+            if (archive.size() > snapshotArchivedCount) {
+                // Rows archived by a snapshot that was never written are still on the heap
+                archive.truncate(snapshotArchivedCount);
+            } else if (archive.size() < snapshotArchivedCount) {
+                System.err.println("Match archive is missing " + (snapshotArchivedCount - archive.size())
+                    + " matches");
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening match archive: " + e.getMessage());
+            archive = null;
+        }
+    }
+
+    // Tournaments still found in a snapshot or journal from an earlier version are
+    // moved into segments; the snapshot written afterwards no longer contains them
+    private void openTournamentStore() {
+        try {
+            tournamentStore = new TournamentStore(Paths.get(TOURNAMENT_DIRECTORY), writer,
+                this::resolvePlayer, TOURNAMENT_MEMORY_BUDGET);
+            List<Tournament> legacy = tournaments;
+            tournaments = tournamentStore.loadIndex();
+            for (Tournament tournament : legacy) {
+                tournaments.removeIf(t -> t.getId().equals(tournament.getId()));
+                tournaments.add(tournament);
+                tournamentStore.save(tournament);
+            }
+            if (!legacy.isEmpty()) {
+                saveData();
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening tournament store: " + e.getMessage());
+            tournamentStore = null;
+        }
+    }
+
+    private void openJournal(EventJournal.SyncPolicy syncPolicy) {
+        try {
+            journal = new EventJournal(Paths.get(JOURNAL_FILE), syncPolicy, DEFAULT_SYNC_INTERVAL_MILLIS);
+            journal.replay(snapshotSequence, new JournalReplayer());
+        } catch (IOException e) {
+            System.err.println("Error opening journal: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    private void journal(EventJournal.EventType type, EventJournal.PayloadWriter payload) {
+        if (journal == null) {
+            saveData();
+            return;
+        }
+        try {
+            ByteBuffer frame = journal.encode(type, payload);
+            journalBytes += frame.remaining();
+            writer.submitRecord(frame);
+            if (journalBytes > COMPACT_THRESHOLD_BYTES) {
+                saveData();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+            saveData();
+        }
+    }
+
+    /**
+     * Records state changes made directly on model objects. Prefer the specific
+     * methods such as {@link #renamePlayer} and {@link #updateTournament}, which
+     * only append a journal record.
+     */
     public void updateData() {
         saveData();
     }
+
+    /**
+     * Waits until all queued changes have been written to the data files.
+     */
+    public void flush() {
+        writer.flush();
+    }
+
+    /**
+     * Waits until all queued changes have been forced to stable storage.
+     */
+    public void awaitDurable() {
+        writer.awaitDurable();
+    }
+
+    /**
+     * Returns the number of writes waiting for the background writer.
+     */
+    public int getPendingWriteCount() {
+        return writer.getQueueDepth();
+    }
+
+    /**
+     * Writes everything still queued, forces it to disk and releases the files.
+     */
+    public void close() {
+        writeLock.lock();
+        try {
+            writer.close();
+            if (journal != null) {
+                journal.close();
+            }
+            if (archive != null) {
+                archive.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing data files: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Journal record encoding
+    private static void writeMatch(DataOutput out, Match match) throws IOException {
+        out.writeUTF(match.getId());
+        out.writeUTF(match.getPlayer1().getId());
+        out.writeUTF(match.getPlayer1().getName());
+        out.writeUTF(match.getPlayer2().getId());
+        out.writeUTF(match.getPlayer2().getName());
+        out.writeByte(match.getBestOf() | RALLIES_FLAG);
+        out.writeLong(BinaryIO.toEpochMillis(match.getTimestamp()));
+        out.writeByte(match.getPlayer1Score());
+        out.writeByte(match.getPlayer2Score());
+        out.writeBoolean(match.isCompleted());
+        BinaryIO.writeRallies(out, match);
+    }
+
+    private static void writeTournament(DataOutput out, Tournament tournament) throws IOException {
+        out.writeUTF(tournament.getId());
+        out.writeUTF(tournament.getName());
+        out.writeByte(tournament.getType().ordinal());
+        out.writeByte(tournament.getBestOf());
+        out.writeBoolean(tournament.isStarted());
+        out.writeBoolean(tournament.isCompleted());
+
+        List<Player> tournamentPlayers = tournament.getPlayers();
+        out.writeInt(tournamentPlayers.size());
+        for (Player player : tournamentPlayers) {
+            out.writeUTF(player.getId());
+            out.writeUTF(player.getName());
+        }
+
+        List<Match> tournamentMatches = tournament.getMatches();
+        out.writeInt(tournamentMatches.size());
+        for (Match match : tournamentMatches) {
+            writeMatch(out, match);
+        }
+    }
+
+    /**
+     * Applies journal records on top of the loaded snapshot. Players and matches
+     * are resolved by ID so tournament matches and the global match list keep
+     * sharing the same objects, as they do in a snapshot.
+     */
+    private class JournalReplayer implements EventJournal.EventHandler {
+        private final Map<String, Player> knownPlayers = new HashMap<>();
+        private final Map<String, Match> knownMatches = new HashMap<>();
+
+        JournalReplayer() {
+            for (Player player : players) {
+                knownPlayers.put(player.getId(), player);
+            }
+            for (Match match : matches) {
+                registerMatch(match);
+            }
+            for (Tournament tournament : tournaments) {
+                for (Player player : tournament.getPlayers()) {
+                    knownPlayers.putIfAbsent(player.getId(), player);
+                }
+                for (Match match : tournament.getMatches()) {
+                    registerMatch(match);
+                }
+            }
+        }
+
+        private void registerMatch(Match match) {
+            knownMatches.put(match.getId(), match);
+            knownPlayers.putIfAbsent(match.getPlayer1().getId(), match.getPlayer1());
+            knownPlayers.putIfAbsent(match.getPlayer2().getId(), match.getPlayer2());
+        }
+
+        @Override
+        public void handle(long sequence, EventJournal.EventType type, DataInput in) throws IOException {
+            switch (type) {
+                case PLAYER_ADDED: {
+                    registerPlayer(resolvePlayer(in.readUTF(), in.readUTF()));
+                    break;
+                }
+                case PLAYER_RENAMED: {
+                    Player player = knownPlayers.get(in.readUTF());
+                    String name = in.readUTF();
+                    if (player != null) {
+                        applyRename(player, name);
+                    }
+                    break;
+                }
+                case PLAYER_REMOVED: {
+                    unregisterPlayer(in.readUTF());
+                    break;
+                }
+                case PLAYER_CLUB_CHANGED: {
+                    Player player = knownPlayers.get(in.readUTF());
+                    String club = in.readUTF();
+                    if (player != null) {
+                        player.setClub(club.isEmpty() ? null : club);
+                    }
+                    break;
+                }
+                case MATCH_COMPLETED: {
+                    Match match = readMatch(in);
+                    match.completeMatch();
+                    matches.add(match);
+                    break;
+                }
+                case TOURNAMENT_SAVED: {
+                    Tournament tournament = readTournament(in);
+                    tournaments.removeIf(t -> t.getId().equals(tournament.getId()));
+                    tournaments.add(tournament);
+                    break;
+                }
+                case TOURNAMENT_REMOVED: {
+                    String id = in.readUTF();
+                    tournaments.removeIf(t -> t.getId().equals(id));
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        private Player resolvePlayer(String id, String name) {
+            return knownPlayers.computeIfAbsent(id, key -> new Player(key, name));
+        }
+
+        private Match readMatch(DataInput in) throws IOException {
+            String id = in.readUTF();
+            Player player1 = resolvePlayer(in.readUTF(), in.readUTF());
+            Player player2 = resolvePlayer(in.readUTF(), in.readUTF());
+            int format = in.readUnsignedByte();
+            LocalDateTime timestamp = BinaryIO.fromEpochMillis(in.readLong());
+            int player1Score = in.readByte();
+            int player2Score = in.readByte();
+            boolean completed = in.readBoolean();
+
+            Match match = knownMatches.get(id);
+            if (match == null) {
+                match = new Match(id, player1, player2, format & ~RALLIES_FLAG, timestamp);
+                knownMatches.put(id, match);
+            }
+            match.restoreResult(player1Score, player2Score, completed);
+            if ((format & RALLIES_FLAG) != 0) {
+                BinaryIO.readRallies(in, match);
+            }
+            return match;
+        }
+
+        private Tournament readTournament(DataInput in) throws IOException {
+            String id = in.readUTF();
+            String name = in.readUTF();
+            Tournament.TournamentType type = Tournament.TournamentType.values()[in.readByte()];
+            int bestOf = in.readByte();
+            boolean started = in.readBoolean();
+            boolean completed = in.readBoolean();
+
+            int playerCount = in.readInt();
+            List<Player> tournamentPlayers = new ArrayList<>(playerCount);
+            for (int i = 0; i < playerCount; i++) {
+                tournamentPlayers.add(resolvePlayer(in.readUTF(), in.readUTF()));
+            }
+
+            int matchCount = in.readInt();
+            List<Match> tournamentMatches = new ArrayList<>(matchCount);
+            for (int i = 0; i < matchCount; i++) {
+                tournamentMatches.add(readMatch(in));
+            }
+
+            return new Tournament(id, name, type, bestOf, tournamentPlayers, tournamentMatches,
+                started, completed);
+        }
+    }
 }
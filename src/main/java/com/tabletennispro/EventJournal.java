@@ -0,0 +1,249 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of domain events written between full snapshots.
+ *
+ * Each record is framed as {@code [length][sequence][type][payload][crc32]} so a
+ * torn write at the tail is detected on replay and cut off instead of corrupting
+ * the records before it.
+ */
+public class EventJournal implements Closeable {
+    private static final int HEADER_SIZE = 4 + 8 + 1;
+    private static final int TRAILER_SIZE = 4;
+
+    public enum SyncPolicy {
+        /** Leave flushing to the operating system; survives an application crash but not a power loss */
+        OS,
+        /** Force to disk at most once per sync interval */
+        INTERVAL,
+        /** Force to disk after every written batch of records */
+        ALWAYS
+    }
+
+    public enum EventType {
+        PLAYER_ADDED,
+        PLAYER_RENAMED,
+        PLAYER_REMOVED,
+        MATCH_COMPLETED,
+        TOURNAMENT_SAVED,
+        TOURNAMENT_REMOVED,
+        // Codes are ordinals, so new events go last
+        PLAYER_CLUB_CHANGED;
+
+        static EventType fromCode(int code) {
+            EventType[] values = values();
+            return code >= 0 && code < values.length ? values[code] : null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface PayloadWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface EventHandler {
+        void handle(long sequence, EventType type, DataInput in) throws IOException;
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMillis;
+
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(recordBuffer);
+    private final CRC32 crc = new CRC32();
+    // Guards the file; encoding only holds the object monitor so callers never wait on disk I/O
+    private final Object channelLock = new Object();
+
+    private long lastSequence;
+    private long lastSyncMillis;
+    private boolean unsynced;
+
+    public EventJournal(Path path, SyncPolicy syncPolicy, long syncIntervalMillis) throws IOException {
+        this.path = path;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lastSyncMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Replays every intact record with a sequence number above {@code afterSequence}.
+     * A damaged tail is truncated so later appends continue from the last good record.
+     */
+    public void replay(long afterSequence, EventHandler handler) throws IOException {
+        lastSequence = afterSequence;
+        long goodEnd = 0;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > channel.size()) {
+                    break;
+                }
+
+                byte[] body = new byte[8 + 1 + length];
+                int stored;
+                try {
+                    in.readFully(body);
+                    stored = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(body, 0, body.length);
+                if ((int) crc.getValue() != stored) {
+                    break;
+                }
+
+                ByteBuffer header = ByteBuffer.wrap(body, 0, 9);
+                long sequence = header.getLong();
+                EventType type = EventType.fromCode(header.get());
+                if (type == null) {
+                    break;
+                }
+
+                if (sequence > afterSequence) {
+                    handler.handle(sequence, type,
+                        new DataInputStream(new ByteArrayInputStream(body, 9, length)));
+                }
+                lastSequence = Math.max(lastSequence, sequence);
+                goodEnd += HEADER_SIZE + length + TRAILER_SIZE;
+            }
+        }
+
+        if (goodEnd < channel.size()) {
+            System.err.println("Discarding damaged journal tail after byte " + goodEnd);
+            channel.truncate(goodEnd);
+        }
+        channel.position(goodEnd);
+    }
+
+    /**
+     * Encodes one event as a framed record and assigns it the next sequence
+     * number. The record is not written until it is passed to {@link #write}.
+     */
+    public synchronized ByteBuffer encode(EventType type, PayloadWriter payload) throws IOException {
+        recordBuffer.reset();
+        recordOut.writeInt(0); // length placeholder
+        recordOut.writeLong(lastSequence + 1);
+        recordOut.writeByte(type.ordinal());
+        payload.write(recordOut);
+        recordOut.flush();
+
+        byte[] bytes = recordBuffer.toByteArray();
+        int length = bytes.length - HEADER_SIZE;
+        ByteBuffer frame = ByteBuffer.allocate(bytes.length + TRAILER_SIZE);
+        frame.put(bytes);
+        frame.putInt(0, length);
+        crc.reset();
+        crc.update(bytes, 4, bytes.length - 4);
+        frame.putInt((int) crc.getValue());
+        frame.flip();
+
+        lastSequence++;
+        return frame;
+    }
+
+    /**
+     * Appends encoded records in order with a single gathering write.
+     */
+    public void write(ByteBuffer[] frames, int count) throws IOException {
+        long remaining = 0;
+        for (int i = 0; i < count; i++) {
+            remaining += frames[i].remaining();
+        }
+        synchronized (channelLock) {
+            while (remaining > 0) {
+                remaining -= channel.write(frames, 0, count);
+            }
+            unsynced = true;
+        }
+    }
+
+    /**
+     * Forces written records to disk if the sync policy calls for it.
+     */
+    public void syncIfDue() throws IOException {
+        switch (syncPolicy) {
+            case ALWAYS:
+                sync();
+                break;
+            case INTERVAL:
+                if (System.currentTimeMillis() - lastSyncMillis >= syncIntervalMillis) {
+                    sync();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns how long until written records are due to be forced to disk
+     * under the interval policy, or -1 if nothing is waiting for a sync.
+     */
+    public long millisUntilSyncDue() {
+        synchronized (channelLock) {
+            if (syncPolicy != SyncPolicy.INTERVAL || !unsynced) {
+                return -1;
+            }
+            return Math.max(0, lastSyncMillis + syncIntervalMillis - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Forces all appended records to stable storage.
+     */
+    public void sync() throws IOException {
+        synchronized (channelLock) {
+            if (unsynced) {
+                channel.force(false);
+                unsynced = false;
+            }
+            lastSyncMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Drops all records, typically right after a snapshot has captured them.
+     */
+    public void reset() throws IOException {
+        synchronized (channelLock) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            unsynced = false;
+        }
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (channelLock) {
+            if (channel.isOpen()) {
+                sync();
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,598 @@
+package com.tabletennispro;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * A group stage: the players are dealt into groups in draw order, snaking
+ * back and forth so the top seeds head different groups, and everyone plays
+ * everyone else in their group once. A field too small to split is a single
+ * round robin. All matches are created when the stage starts.
+ *
+ * Each group's schedule comes from the circle method, which gives every
+ * player one match per round. Within a round the matches are ordered so the
+ * players who have rested longest go first, keeping back-to-back matches to
+ * a minimum when a group plays on one table. Schedules of many groups are
+ * generated in parallel. Matches are created round by round, every group's
+ * first round before anyone's second.
+ *
+ * Standings follow the table tennis rules for groups: a win scores 2 match
+ * points and a loss 1. Players level on match points are separated by their
+ * results against each other only, first match points, then the ratio of
+ * games won to lost, then of points; when that separates some of them, the
+ * comparison starts again for those still level. The draw order settles
+ * what is left. Each result updates the totals and the group's ranking in
+ * O(group size), plus O(k^2) to break a tie between k players.
+ */
+final class GroupStage implements TournamentFormat {
+    static final int DEFAULT_GROUP_SIZE = 4;
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int CRITERIA = 3;
+
+    private final List<Player> players;
+    private final Map<Player, Integer> indexes = new HashMap<>();
+    private final int bestOf;
+    private final int roundCount;
+
+    // Per group: the members in draw order, and their local indexes in ranking order
+    private final int[][] members;
+    private final int[][] rankings;
+    // Per group, by local index i * size + j: i's result against j
+    private final boolean[][] beat;
+    private final boolean[][] met;
+    private final int[][] gamesAgainst;
+    private final int[][] pointsAgainst;
+
+    // Per player, by index in draw order
+    private final int[] groups;
+    private final int[] slots;
+    private final int[] matchPoints;
+    private final int[] played;
+    private final int[] wins;
+    private final int[] gamesWon;
+    private final int[] gamesLost;
+    private final int[] pointsWon;
+    private final int[] pointsLost;
+
+    private final List<List<Match>> rounds = new ArrayList<>();
+    private final List<List<Player>> byes = new ArrayList<>();
+    private final Map<Match, Integer> matchRounds = new IdentityHashMap<>();
+    private final Set<Match> recorded = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<Player, List<Match>> paths = new HashMap<>();
+    private boolean opened;
+    private boolean finished;
+
+    /**
+     * Creates a stage for the players in draw order, split into groups of
+     * about the given size; no match is created yet.
+     */
+    GroupStage(List<Player> players, int bestOf, int groupSize) {
+        if (players.size() < 2) {
+            throw new IllegalArgumentException("A group stage needs at least 2 players: " + players.size());
+        }
+        this.players = new ArrayList<>(players);
+        this.bestOf = bestOf;
+        int count = players.size();
+        int groupCount = groupCount(count, groupSize);
+
+        groups = new int[count];
+        slots = new int[count];
+        matchPoints = new int[count];
+        played = new int[count];
+        wins = new int[count];
+        gamesWon = new int[count];
+        gamesLost = new int[count];
+        pointsWon = new int[count];
+        pointsLost = new int[count];
+
+        // Snake through the groups: 1 to n, then n back to 1
+        int[] sizes = new int[groupCount];
+        for (int i = 0; i < count; i++) {
+            int row = i / groupCount;
+            int column = i % groupCount;
+            int group = row % 2 == 0 ? column : groupCount - 1 - column;
+            groups[i] = group;
+            slots[i] = sizes[group]++;
+            indexes.put(this.players.get(i), i);
+        }
+        members = new int[groupCount][];
+        rankings = new int[groupCount][];
+        beat = new boolean[groupCount][];
+        met = new boolean[groupCount][];
+        gamesAgainst = new int[groupCount][];
+        pointsAgainst = new int[groupCount][];
+        int rounds = 0;
+        for (int group = 0; group < groupCount; group++) {
+            int size = sizes[group];
+            members[group] = new int[size];
+            rankings[group] = new int[size];
+            beat[group] = new boolean[size * size];
+            met[group] = new boolean[size * size];
+            gamesAgainst[group] = new int[size * size];
+            pointsAgainst[group] = new int[size * size];
+            for (int slot = 0; slot < size; slot++) {
+                rankings[group][slot] = slot;
+            }
+            rounds = Math.max(rounds, size % 2 == 0 ? size - 1 : size);
+        }
+        for (int i = 0; i < count; i++) {
+            members[groups[i]][slots[i]] = i;
+        }
+        this.roundCount = rounds;
+    }
+
+    /**
+     * Returns how many groups a field is split into: as many as it takes to
+     * keep them to the given size, unless that leaves a group short of one
+     * player less than that.
+     */
+    static int groupCount(int players, int groupSize) {
+        int count = Math.max(1, (players + groupSize - 1) / groupSize);
+        if (count > 1 && players / count < groupSize - 1) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilds a stage from the players in draw order and its matches in the
+     * order they were created. Saved matches are matched to the schedule in
+     * order; any missing from the end are created and added to the list, so
+     * it must not yet be shared with other threads. A stage whose matches
+     * are all complete is finished, as advancing it would.
+     */
+    static GroupStage restore(List<Player> players, List<Match> matches, int bestOf, int groupSize) {
+        GroupStage stage = new GroupStage(players, bestOf, groupSize);
+        if (matches.isEmpty()) {
+            return stage;
+        }
+        int[][][] schedule = stage.schedule();
+        int next = 0;
+        List<Match> created = new ArrayList<>();
+        for (int round = 0; round < stage.roundCount; round++) {
+            List<Match> roundMatches = new ArrayList<>();
+            for (int[][] groupRounds : schedule) {
+                if (round >= groupRounds.length) {
+                    continue;
+                }
+                for (int i = 0; i < groupRounds[round].length; i += 2) {
+                    Player player1 = players.get(groupRounds[round][i]);
+                    Player player2 = players.get(groupRounds[round][i + 1]);
+                    Match saved = next < matches.size() ? matches.get(next) : null;
+                    if (saved != null && (saved.getPlayer1() == player1 && saved.getPlayer2() == player2
+                            || saved.getPlayer1() == player2 && saved.getPlayer2() == player1)) {
+                        roundMatches.add(saved);
+                        next++;
+                    } else {
+                        Match match = new Match(player1, player2, bestOf);
+                        roundMatches.add(match);
+                        created.add(match);
+                    }
+                }
+            }
+            stage.openRound(roundMatches);
+        }
+        stage.opened = true;
+        matches.addAll(created);
+        stage.recordCompleted();
+        stage.finished = stage.recorded.size() == stage.matchRounds.size();
+        return stage;
+    }
+
+    // Scheduling
+
+    // Every group's rounds, each a flat array of pairs of player indexes
+    private int[][][] schedule() {
+        IntStream groupIndexes = IntStream.range(0, members.length);
+        if (members.length >= PARALLEL_THRESHOLD) {
+            groupIndexes = groupIndexes.parallel();
+        }
+        return groupIndexes.mapToObj(this::scheduleGroup).toArray(int[][][]::new);
+    }
+
+    private int[][] scheduleGroup(int group) {
+        int size = members[group].length;
+        int[][] schedule = roundRobin(size);
+        // Local indexes to players, ordered for rest within each round
+        int[] lastPlayed = new int[size];
+        Arrays.fill(lastPlayed, Integer.MIN_VALUE / 2);
+        int position = 0;
+        for (int[] round : schedule) {
+            position = orderForRest(round, lastPlayed, position);
+            for (int i = 0; i < round.length; i++) {
+                round[i] = members[group][round[i]];
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Returns the rounds of a round robin between players 0 to size - 1 by
+     * the circle method, each as a flat array of pairs. Player 0 stays put
+     * while the others rotate; with an odd number of players whoever is
+     * paired with the empty seat has the round off.
+     */
+    static int[][] roundRobin(int size) {
+        int seats = size % 2 == 0 ? size : size + 1;
+        int[] circle = new int[seats];
+        for (int i = 0; i < seats; i++) {
+            circle[i] = i;
+        }
+        int[][] schedule = new int[seats - 1][];
+        for (int round = 0; round < seats - 1; round++) {
+            int[] pairs = new int[(size / 2) * 2];
+            int count = 0;
+            for (int i = 0; i < seats / 2; i++) {
+                int first = circle[i];
+                int second = circle[seats - 1 - i];
+                if (first >= size || second >= size) {
+                    continue;
+                }
+                // The fixed player alternates sides
+                if (i == 0 && round % 2 == 1) {
+                    pairs[count++] = second;
+                    pairs[count++] = first;
+                } else {
+                    pairs[count++] = first;
+                    pairs[count++] = second;
+                }
+            }
+            schedule[round] = pairs;
+            int last = circle[seats - 1];
+            System.arraycopy(circle, 1, circle, 2, seats - 2);
+            circle[1] = last;
+        }
+        return schedule;
+    }
+
+    // Puts the pair whose players have rested longest first, over and over; returns the next position
+    private static int orderForRest(int[] round, int[] lastPlayed, int position) {
+        for (int first = 0; first < round.length; first += 2) {
+            int best = first;
+            int bestRest = -1;
+            for (int i = first; i < round.length; i += 2) {
+                int rest = position - Math.max(lastPlayed[round[i]], lastPlayed[round[i + 1]]);
+                if (rest > bestRest) {
+                    best = i;
+                    bestRest = rest;
+                }
+            }
+            int player1 = round[best];
+            int player2 = round[best + 1];
+            round[best] = round[first];
+            round[best + 1] = round[first + 1];
+            round[first] = player1;
+            round[first + 1] = player2;
+            lastPlayed[player1] = position;
+            lastPlayed[player2] = position;
+            position++;
+        }
+        return position;
+    }
+
+    // Advancing
+
+    @Override
+    public List<Match> advance() {
+        List<Match> created = new ArrayList<>();
+        if (finished) {
+            return created;
+        }
+        if (opened) {
+            recordCompleted();
+            finished = recorded.size() == matchRounds.size();
+            return created;
+        }
+        int[][][] schedule = schedule();
+        for (int round = 0; round < roundCount; round++) {
+            List<Match> roundMatches = new ArrayList<>();
+            for (int[][] groupRounds : schedule) {
+                if (round >= groupRounds.length) {
+                    continue;
+                }
+                for (int i = 0; i < groupRounds[round].length; i += 2) {
+                    roundMatches.add(new Match(players.get(groupRounds[round][i]),
+                        players.get(groupRounds[round][i + 1]), bestOf));
+                }
+            }
+            openRound(roundMatches);
+            created.addAll(roundMatches);
+        }
+        opened = true;
+        return created;
+    }
+
+    private void openRound(List<Match> roundMatches) {
+        boolean[] playing = new boolean[players.size()];
+        for (Match match : roundMatches) {
+            matchRounds.put(match, rounds.size() + 1);
+            for (Player player : new Player[] {match.getPlayer1(), match.getPlayer2()}) {
+                playing[indexes.get(player)] = true;
+                paths.computeIfAbsent(player, key -> new ArrayList<>()).add(match);
+            }
+        }
+        rounds.add(roundMatches);
+
+        // Players of groups with an odd number of players, or with fewer rounds, sit out
+        List<Player> roundByes = new ArrayList<>();
+        for (int i = 0; i < playing.length; i++) {
+            if (!playing[i]) {
+                roundByes.add(players.get(i));
+            }
+        }
+        byes.add(roundByes);
+    }
+
+    // Catches up on results that were not reported as they came in
+    private void recordCompleted() {
+        for (Match match : matchRounds.keySet()) {
+            recordResult(match);
+        }
+    }
+
+    // Standings
+
+    @Override
+    public void recordResult(Match match) {
+        if (!match.isCompleted() || !matchRounds.containsKey(match) || !recorded.add(match)) {
+            return;
+        }
+        boolean player1Won = match.getWinner() == match.getPlayer1();
+        int winner = indexes.get(match.getWinner());
+        int loser = indexes.get(match.getLoser());
+        int winnerGames = player1Won ? match.getPlayer1Score() : match.getPlayer2Score();
+        int loserGames = player1Won ? match.getPlayer2Score() : match.getPlayer1Score();
+        int winnerPoints = player1Won ? match.getPlayer1PointsWon() : match.getPlayer2PointsWon();
+        int loserPoints = player1Won ? match.getPlayer2PointsWon() : match.getPlayer1PointsWon();
+
+        int group = groups[winner];
+        int size = members[group].length;
+        int w = slots[winner];
+        int l = slots[loser];
+        beat[group][w * size + l] = true;
+        met[group][w * size + l] = true;
+        met[group][l * size + w] = true;
+        gamesAgainst[group][w * size + l] = winnerGames;
+        gamesAgainst[group][l * size + w] = loserGames;
+        pointsAgainst[group][w * size + l] = winnerPoints;
+        pointsAgainst[group][l * size + w] = loserPoints;
+
+        int[] before = {matchPoints[winner], matchPoints[loser]};
+        matchPoints[winner] += 2;
+        matchPoints[loser] += 1;
+        played[winner]++;
+        played[loser]++;
+        wins[winner]++;
+        gamesWon[winner] += winnerGames;
+        gamesLost[winner] += loserGames;
+        gamesWon[loser] += loserGames;
+        gamesLost[loser] += winnerGames;
+        pointsWon[winner] += winnerPoints;
+        pointsLost[winner] += loserPoints;
+        pointsWon[loser] += loserPoints;
+        pointsLost[loser] += winnerPoints;
+
+        rerank(group, w, l, before);
+    }
+
+    // Moves the two players up past those with fewer match points, then breaks the ties they left or joined
+    private void rerank(int group, int first, int second, int[] before) {
+        int[] ranking = rankings[group];
+        int[] positions = new int[2];
+        for (int position = 0; position < ranking.length; position++) {
+            if (ranking[position] == first) {
+                positions[0] = position;
+            } else if (ranking[position] == second) {
+                positions[1] = position;
+            }
+        }
+        // The higher placed goes first, so the other cannot get stuck below it
+        int[] moving = positions[0] < positions[1] ? new int[] {first, second} : new int[] {second, first};
+        for (int slot : moving) {
+            int position = 0;
+            while (ranking[position] != slot) {
+                position++;
+            }
+            int points = matchPoints[members[group][slot]];
+            while (position > 0 && matchPoints[members[group][ranking[position - 1]]] < points) {
+                ranking[position] = ranking[position - 1];
+                position--;
+            }
+            ranking[position] = slot;
+        }
+        int[] levels = {before[0], before[1], matchPoints[members[group][first]], matchPoints[members[group][second]]};
+        int start = 0;
+        while (start < ranking.length) {
+            int points = matchPoints[members[group][ranking[start]]];
+            int end = start + 1;
+            while (end < ranking.length && matchPoints[members[group][ranking[end]]] == points) {
+                end++;
+            }
+            for (int level : levels) {
+                if (level == points) {
+                    breakTie(group, ranking, start, end, 0);
+                    break;
+                }
+            }
+            start = end;
+        }
+    }
+
+    private void breakTie(int group, int[] ranking, int from, int to, int criterion) {
+        if (to - from < 2) {
+            return;
+        }
+        if (criterion == CRITERIA) {
+            Arrays.sort(ranking, from, to);
+            return;
+        }
+        // Results against the others in the tie only
+        int size = members[group].length;
+        int count = to - from;
+        long[] won = new long[size];
+        long[] lost = new long[size];
+        for (int i = from; i < to; i++) {
+            for (int j = from; j < to; j++) {
+                int a = ranking[i];
+                int b = ranking[j];
+                if (i == j || !met[group][a * size + b]) {
+                    continue;
+                }
+                if (criterion == 0) {
+                    won[a] += beat[group][a * size + b] ? 2 : 1;
+                } else {
+                    int[] against = criterion == 1 ? gamesAgainst[group] : pointsAgainst[group];
+                    won[a] += against[a * size + b];
+                    lost[a] += against[b * size + a];
+                }
+            }
+        }
+
+        // Insertion sort, best first; equal keys keep their order
+        for (int i = from + 1; i < to; i++) {
+            int slot = ranking[i];
+            int j = i;
+            while (j > from && compareKeys(won, lost, slot, ranking[j - 1]) > 0) {
+                ranking[j] = ranking[j - 1];
+                j--;
+            }
+            ranking[j] = slot;
+        }
+
+        int[] runStarts = new int[count + 1];
+        int runs = 0;
+        for (int i = from; i < to; i++) {
+            if (i == from || compareKeys(won, lost, ranking[i], ranking[i - 1]) != 0) {
+                runStarts[runs++] = i;
+            }
+        }
+        runStarts[runs] = to;
+        if (runs == 1) {
+            breakTie(group, ranking, from, to, criterion + 1);
+            return;
+        }
+        for (int run = 0; run < runs; run++) {
+            breakTie(group, ranking, runStarts[run], runStarts[run + 1], 0);
+        }
+    }
+
+    // Compares won to lost ratios; with nothing lost, by what was won
+    private static int compareKeys(long[] won, long[] lost, int a, int b) {
+        int ratio = Long.compare(won[a] * lost[b], won[b] * lost[a]);
+        if (ratio != 0 || lost[a] != 0 || lost[b] != 0) {
+            return ratio;
+        }
+        return Long.compare(won[a], won[b]);
+    }
+
+    // Queries
+
+    public int getGroupCount() {
+        return members.length;
+    }
+
+    /**
+     * Returns the players placed in the top places of each group: every
+     * group winner in group order, then every runner-up in reverse group
+     * order, and so on, so that players from one group land apart in a draw.
+     */
+    public List<Player> getQualifiers(int perGroup) {
+        List<Player> qualifiers = new ArrayList<>();
+        for (int place = 0; place < perGroup; place++) {
+            for (int i = 0; i < members.length; i++) {
+                int group = place % 2 == 0 ? i : members.length - 1 - i;
+                if (place < rankings[group].length) {
+                    qualifiers.add(players.get(members[group][rankings[group][place]]));
+                }
+            }
+        }
+        return qualifiers;
+    }
+
+    @Override
+    public boolean isDecided() {
+        return finished;
+    }
+
+    // A single group has a winner; several only have qualifiers
+    @Override
+    public Player getWinner() {
+        if (!finished || members.length > 1) {
+            return null;
+        }
+        return players.get(members[0][rankings[0][0]]);
+    }
+
+    @Override
+    public boolean contains(Match match) {
+        return matchRounds.containsKey(match);
+    }
+
+    @Override
+    public int getMatchCount() {
+        return matchRounds.size();
+    }
+
+    @Override
+    public int getCurrentRound() {
+        return rounds.size();
+    }
+
+    @Override
+    public int getRoundCount() {
+        return roundCount;
+    }
+
+    @Override
+    public String getRoundName(int round) {
+        return "Round " + round;
+    }
+
+    @Override
+    public List<Match> getRoundMatches(int round) {
+        return round < 1 || round > rounds.size() ? new ArrayList<>() : new ArrayList<>(rounds.get(round - 1));
+    }
+
+    @Override
+    public List<Player> getByes(int round) {
+        return round < 1 || round > byes.size() ? new ArrayList<>() : new ArrayList<>(byes.get(round - 1));
+    }
+
+    @Override
+    public Match getNextMatch(Match match) {
+        return null; // Every match is set from the start
+    }
+
+    @Override
+    public Player getNextOpponent(Player player) {
+        for (Match match : paths.getOrDefault(player, Collections.emptyList())) {
+            if (!match.isCompleted()) {
+                return player.equals(match.getPlayer1()) ? match.getPlayer2() : match.getPlayer1();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Match> getPath(Player player) {
+        List<Match> path = paths.get(player);
+        return path == null ? new ArrayList<>() : new ArrayList<>(path);
+    }
+
+    /**
+     * Returns the standings group by group, each ranked by the table tennis
+     * rules.
+     */
+    @Override
+    public List<Standing> getStandings() {
+        List<Standing> standings = new ArrayList<>(players.size());
+        for (int group = 0; group < members.length; group++) {
+            for (int slot : rankings[group]) {
+                int i = members[group][slot];
+                standings.add(new Standing(players.get(i), group, played[i], wins[i], matchPoints[i],
+                    gamesWon[i], gamesLost[i], pointsWon[i], pointsLost[i]));
+            }
+        }
+        return standings;
+    }
+}
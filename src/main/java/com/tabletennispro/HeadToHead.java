@@ -0,0 +1,69 @@
+package com.tabletennispro;
+
+import java.time.LocalDateTime;
+
+/**
+ * The record of all completed matches between two players, seen from the
+ * side of the first player.
+ */
+public final class HeadToHead {
+    private final String player1Id;
+    private final String player2Id;
+    private int matches;
+    private int player1Wins;
+    private int player2Wins;
+    private int player1Games;
+    private int player2Games;
+    private long lastMetMillis = Long.MIN_VALUE;
+
+    HeadToHead(String player1Id, String player2Id) {
+        this.player1Id = player1Id;
+        this.player2Id = player2Id;
+    }
+
+    public String getPlayer1Id() { return player1Id; }
+    public String getPlayer2Id() { return player2Id; }
+    public int getMatches() { return matches; }
+    public int getPlayer1Wins() { return player1Wins; }
+    public int getPlayer2Wins() { return player2Wins; }
+    public int getPlayer1Games() { return player1Games; }
+    public int getPlayer2Games() { return player2Games; }
+
+    /**
+     * Returns when the players last met, or null if they never have.
+     */
+    public LocalDateTime getLastMet() {
+        return matches == 0 ? null : BinaryIO.fromEpochMillis(lastMetMillis);
+    }
+
+    // Adds one match, given with the games won by player 1 and player 2 of this record
+    void add(int player1Games, int player2Games, long epochMillis) {
+        matches++;
+        if (player1Games > player2Games) {
+            player1Wins++;
+        } else {
+            player2Wins++;
+        }
+        this.player1Games += player1Games;
+        this.player2Games += player2Games;
+        lastMetMillis = Math.max(lastMetMillis, epochMillis);
+    }
+
+    // Returns a copy seen from the given player's side
+    HeadToHead copyFor(String playerId) {
+        boolean swap = !playerId.equals(player1Id);
+        HeadToHead copy = new HeadToHead(swap ? player2Id : player1Id, swap ? player1Id : player2Id);
+        copy.matches = matches;
+        copy.player1Wins = swap ? player2Wins : player1Wins;
+        copy.player2Wins = swap ? player1Wins : player2Wins;
+        copy.player1Games = swap ? player2Games : player1Games;
+        copy.player2Games = swap ? player1Games : player2Games;
+        copy.lastMetMillis = lastMetMillis;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d-%d in matches, %d-%d in games", player1Wins, player2Wins, player1Games, player2Games);
+    }
+}
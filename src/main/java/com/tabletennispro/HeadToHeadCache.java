@@ -0,0 +1,142 @@
+package com.tabletennispro;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * A size-bounded cache of head-to-head records, evicting the pair used least
+ * recently once it is full.
+ *
+ * Records are keyed by the unordered pair of players, so both orders of a
+ * lookup share one entry. A new match updates the record of its pair in
+ * place if it is cached; pairs that are not cached are left alone and
+ * computed when first asked for.
+ *
+ * The cache is safe to share between threads. A miss is computed outside the
+ * cache's monitor, so lookups of other pairs are not held up by it.
+ */
+public class HeadToHeadCache {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final class PairKey {
+        final String low;
+        final String high;
+
+        PairKey(String a, String b) {
+            boolean ordered = a.compareTo(b) <= 0;
+            this.low = ordered ? a : b;
+            this.high = ordered ? b : a;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof PairKey)) return false;
+            PairKey other = (PairKey) obj;
+            return low.equals(other.low) && high.equals(other.high);
+        }
+
+        @Override
+        public int hashCode() {
+            return low.hashCode() * 31 + high.hashCode();
+        }
+    }
+
+    private final int capacity;
+    private final Map<PairKey, HeadToHead> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long updates;
+
+    public HeadToHeadCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HeadToHeadCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<PairKey, HeadToHead>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PairKey, HeadToHead> eldest) {
+                if (size() > HeadToHeadCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the record of two players seen from the first one, computing it
+     * with {@code loader} on a miss. The loader receives the players in the
+     * order the record is stored in.
+     */
+    HeadToHead get(String player1Id, String player2Id, BiFunction<String, String, HeadToHead> loader) {
+        PairKey key = new PairKey(player1Id, player2Id);
+        synchronized (this) {
+            HeadToHead record = entries.get(key);
+            if (record != null) {
+                hits++;
+                return record.copyFor(player1Id);
+            }
+            misses++;
+        }
+        HeadToHead loaded = loader.apply(key.low, key.high);
+        synchronized (this) {
+            // Another thread may have cached the pair meanwhile; keep its record
+            HeadToHead record = entries.putIfAbsent(key, loaded);
+            return (record != null ? record : loaded).copyFor(player1Id);
+        }
+    }
+
+    /**
+     * Adds a completed match to the record of its pair, if that record is cached.
+     */
+    synchronized void update(Match match) {
+        String player1Id = match.getPlayer1().getId();
+        HeadToHead record = entries.get(new PairKey(player1Id, match.getPlayer2().getId()));
+        if (record != null) {
+            long millis = BinaryIO.toEpochMillis(match.getTimestamp());
+            if (record.getPlayer1Id().equals(player1Id)) {
+                record.add(match.getPlayer1Score(), match.getPlayer2Score(), millis);
+            } else {
+                record.add(match.getPlayer2Score(), match.getPlayer1Score(), millis);
+            }
+            updates++;
+        }
+    }
+
+    /**
+     * Drops every record involving the player.
+     */
+    synchronized void removePlayer(String playerId) {
+        entries.keySet().removeIf(key -> key.low.equals(playerId) || key.high.equals(playerId));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    // Statistics
+    public synchronized int size() { return entries.size(); }
+    public int getCapacity() { return capacity; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getUpdates() { return updates; }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d of %d pairs cached, %d hits, %d misses (%.1f%% hit rate), %d evictions, %d updates",
+            size(), capacity, hits, misses, getHitRate() * 100, evictions, updates);
+    }
+}
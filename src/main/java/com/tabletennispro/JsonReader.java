@@ -0,0 +1,299 @@
+package com.tabletennispro;
+
+import java.io.*;
+
+/**
+ * Minimal pull parser for JSON that reads one token at a time, so arrays with
+ * millions of elements can be processed with constant memory.
+ */
+public class JsonReader implements Closeable {
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder text = new StringBuilder();
+    private Token peeked;
+    private String peekedValue;
+
+    // One bit per nesting level, set for objects and clear for arrays
+    private long containerStack;
+    private int depth;
+    private boolean expectingName;
+
+    public JsonReader(Reader in) {
+        this.in = in;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked == null) {
+            advance();
+        }
+        return peeked;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+    }
+
+    /**
+     * Returns true if the current object or array has another element.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        return expect(Token.NAME);
+    }
+
+    /**
+     * Returns a string or number value as text, or null for a JSON null.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING || token == Token.NUMBER || token == Token.BOOLEAN) {
+            return consume();
+        }
+        if (token == Token.NULL) {
+            consume();
+            return null;
+        }
+        throw syntaxError("Expected a string but found " + token);
+    }
+
+    public long nextLong() throws IOException {
+        String value = nextString();
+        if (value == null) {
+            throw syntaxError("Expected a number but found null");
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(value);
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        return Boolean.parseBoolean(expect(Token.BOOLEAN));
+    }
+
+    /**
+     * Skips the next value, including any nested objects and arrays.
+     */
+    public void skipValue() throws IOException {
+        int nested = 0;
+        do {
+            Token token = peek();
+            if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+                nested++;
+            } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+                nested--;
+            } else if (token == Token.END_DOCUMENT) {
+                throw syntaxError("Unexpected end of document");
+            }
+            consume();
+        } while (nested > 0);
+    }
+
+    private String expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but found " + token);
+        }
+        return consume();
+    }
+
+    private String consume() {
+        String value = peekedValue;
+        peeked = null;
+        peekedValue = null;
+        return value;
+    }
+
+    // Tokenizer
+    private void advance() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            c = nextNonWhitespace();
+            if (inObject()) {
+                expectingName = true;
+            }
+        } else if (c == ':') {
+            c = nextNonWhitespace();
+        }
+
+        switch (c) {
+            case -1:
+                if (depth != 0) {
+                    throw syntaxError("Unexpected end of document");
+                }
+                peeked = Token.END_DOCUMENT;
+                return;
+            case '{':
+                push(true);
+                expectingName = true;
+                peeked = Token.BEGIN_OBJECT;
+                return;
+            case '}':
+                pop();
+                peeked = Token.END_OBJECT;
+                return;
+            case '[':
+                push(false);
+                expectingName = false;
+                peeked = Token.BEGIN_ARRAY;
+                return;
+            case ']':
+                pop();
+                peeked = Token.END_ARRAY;
+                return;
+            case '"':
+                peekedValue = readString();
+                if (expectingName && inObject()) {
+                    expectingName = false;
+                    peeked = Token.NAME;
+                } else {
+                    peeked = Token.STRING;
+                }
+                return;
+            default:
+                String literal = readLiteral((char) c);
+                if (literal.equals("true") || literal.equals("false")) {
+                    peeked = Token.BOOLEAN;
+                } else if (literal.equals("null")) {
+                    peeked = Token.NULL;
+                } else {
+                    peeked = Token.NUMBER;
+                }
+                peekedValue = literal;
+        }
+    }
+
+    private boolean inObject() {
+        return depth > 0 && (containerStack & (1L << (depth - 1))) != 0;
+    }
+
+    private void push(boolean object) throws IOException {
+        if (depth == 64) {
+            throw syntaxError("Nesting too deep");
+        }
+        if (object) {
+            containerStack |= 1L << depth;
+        } else {
+            containerStack &= ~(1L << depth);
+        }
+        depth++;
+    }
+
+    private void pop() throws IOException {
+        if (depth == 0) {
+            throw syntaxError("Unbalanced closing bracket");
+        }
+        depth--;
+        expectingName = false;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread() {
+        position--;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c == '\\') {
+                int escaped = read();
+                switch (escaped) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            code = code * 16 + Character.digit(read(), 16);
+                        }
+                        text.append((char) code);
+                        break;
+                    case -1:
+                        throw syntaxError("Unterminated string");
+                    default:
+                        text.append((char) escaped);
+                }
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private String readLiteral(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                break;
+            }
+            if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+                unread();
+                break;
+            }
+            text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
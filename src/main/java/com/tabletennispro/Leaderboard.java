@@ -0,0 +1,262 @@
+package com.tabletennispro;
+
+import java.util.*;
+
+/**
+ * Players ranked by one metric, kept in an order-statistic tree so that
+ * updates, rank lookups and access by rank all take O(log n).
+ *
+ * The tree is a treap whose nodes carry their subtree size. Each node stores
+ * the metric values the player had when it was inserted, so a player can be
+ * found and repositioned after their statistics have changed. Nodes compare on
+ * these primitive fields alone; equal players rank in the order they were
+ * first added.
+ *
+ * All methods are synchronized, so the ranking can be read while matches are
+ * recorded on other threads.
+ */
+public class Leaderboard {
+    public enum Metric {
+        WIN_RATE("Win Rate"),
+        WINS("Wins"),
+        RATING("Rating");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final class Node {
+        final Player player;
+        final double score;
+        final double tiebreak;
+        final long sequence;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(Player player, double score, double tiebreak, long sequence, int priority) {
+            this.player = player;
+            this.score = score;
+            this.tiebreak = tiebreak;
+            this.sequence = sequence;
+            this.priority = priority;
+        }
+    }
+
+    private final Metric metric;
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Random random = new Random();
+    private Node root;
+    private long nextSequence;
+
+    public Leaderboard(Metric metric) {
+        this.metric = metric;
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Inserts the player or moves them to the position matching their current statistics.
+     */
+    synchronized void update(Player player) {
+        Node previous = nodes.get(player.getId());
+        long sequence = previous != null ? previous.sequence : nextSequence++;
+        remove(player);
+        Node node;
+        switch (metric) {
+            case WINS:
+                node = new Node(player, player.getWins(), -player.getLosses(), sequence, random.nextInt());
+                break;
+            case RATING:
+                node = new Node(player, player.getRating(), -player.getRatingDeviation(), sequence, random.nextInt());
+                break;
+            default:
+                node = new Node(player, player.getWinRate(), player.getTotalMatches(), sequence, random.nextInt());
+                break;
+        }
+        nodes.put(player.getId(), node);
+        root = insert(root, node);
+    }
+
+    synchronized void remove(Player player) {
+        Node node = nodes.remove(player.getId());
+        if (node != null) {
+            root = remove(root, node);
+        }
+    }
+
+    synchronized void clear() {
+        nodes.clear();
+        root = null;
+        nextSequence = 0;
+    }
+
+    /**
+     * Returns the player's 1-based rank, or -1 if the player is not ranked.
+     */
+    public synchronized int rankOf(Player player) {
+        Node node = nodes.get(player.getId());
+        if (node == null) {
+            return -1;
+        }
+        int before = 0;
+        Node current = root;
+        while (current != node) {
+            if (compare(node, current) < 0) {
+                current = current.left;
+            } else {
+                before += size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        return before + size(node.left) + 1;
+    }
+
+    /**
+     * Returns the player at a 1-based rank.
+     */
+    public synchronized Player getPlayerAt(int rank) {
+        if (rank < 1 || rank > size()) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " of " + size());
+        }
+        int index = rank - 1;
+        Node current = root;
+        while (true) {
+            int leftSize = size(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            } else if (index == leftSize) {
+                return current.player;
+            } else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
+        }
+    }
+
+    public List<Player> topK(int k) {
+        return getPage(1, k);
+    }
+
+    /**
+     * Returns up to {@code count} players starting at a 1-based rank.
+     */
+    public synchronized List<Player> getPage(int fromRank, int count) {
+        List<Player> page = new ArrayList<>(Math.max(0, Math.min(count, size())));
+        int from = Math.max(fromRank, 1) - 1;
+        collect(root, from, from + Math.max(count, 0), 0, page);
+        return page;
+    }
+
+    // Adds the players at in-order indexes [from, to) of the subtree, which starts at offset
+    private static void collect(Node node, int from, int to, int offset, List<Player> out) {
+        if (node == null || offset >= to || offset + node.size <= from) {
+            return;
+        }
+        int index = offset + size(node.left);
+        collect(node.left, from, to, offset, out);
+        if (index >= from && index < to) {
+            out.add(node.player);
+        }
+        collect(node.right, from, to, index + 1, out);
+    }
+
+    // Best first: higher score, then higher tiebreak, then earlier addition for a total order
+    private static int compare(Node a, Node b) {
+        int result = Double.compare(b.score, a.score);
+        if (result == 0) {
+            result = Double.compare(b.tiebreak, a.tiebreak);
+        }
+        return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    // Descends by key until the new node's priority places it, then splits only the subtree below
+    private static Node insert(Node node, Node item) {
+        if (node == null) {
+            return item;
+        }
+        if (item.priority > node.priority) {
+            Node[] parts = split(node, item);
+            item.left = parts[0];
+            item.right = parts[1];
+            return update(item);
+        }
+        if (compare(item, node) < 0) {
+            node.left = insert(node.left, item);
+        } else {
+            node.right = insert(node.right, item);
+        }
+        return update(node);
+    }
+
+    // Splits into nodes ordered before the key and the rest
+    private static Node[] split(Node node, Node key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(node, key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            parts[0] = update(node);
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        node.left = parts[1];
+        parts[1] = update(node);
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node remove(Node node, Node target) {
+        if (node == null) {
+            return null;
+        }
+        if (node == target) {
+            return merge(node.left, node.right);
+        }
+        if (compare(target, node) < 0) {
+            node.left = remove(node.left, target);
+        } else {
+            node.right = remove(node.right, target);
+        }
+        return update(node);
+    }
+}
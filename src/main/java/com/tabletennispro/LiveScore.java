@@ -0,0 +1,81 @@
+package com.tabletennispro;
+
+/**
+ * The score of a match in progress at one moment.
+ *
+ * Scoring sessions take a copy after every change, so readers on other
+ * threads never see a match while its rally log is being written. A copy
+ * shares the finished games' scores with the previous one while no game has
+ * ended, so a point costs one small object rather than a replay of the
+ * rally log.
+ */
+public final class LiveScore {
+    private final String matchId;
+    private final Player player1;
+    private final Player player2;
+    private final int bestOf;
+    private final int player1Games;
+    private final int player2Games;
+    private final int player1Points;
+    private final int player2Points;
+    private final int server;
+    private final int[][] gameScores;
+    private final long startedMillis;
+    private final long updatedMillis;
+
+    LiveScore(Match match, LiveScore previous, long updatedMillis) {
+        this.matchId = match.getId();
+        this.player1 = match.getPlayer1();
+        this.player2 = match.getPlayer2();
+        this.bestOf = match.getBestOf();
+        this.player1Games = match.getPlayer1Score();
+        this.player2Games = match.getPlayer2Score();
+        this.player1Points = match.getPlayer1Points();
+        this.player2Points = match.getPlayer2Points();
+        this.server = match.getServer();
+        this.gameScores = previous != null
+            && previous.player1Games + previous.player2Games == player1Games + player2Games
+            ? previous.gameScores : match.getGameScores();
+        this.startedMillis = BinaryIO.toEpochMillis(match.getTimestamp());
+        this.updatedMillis = updatedMillis;
+    }
+
+    public String getMatchId() { return matchId; }
+    public Player getPlayer1() { return player1; }
+    public Player getPlayer2() { return player2; }
+    public int getBestOf() { return bestOf; }
+    public int getPlayer1Games() { return player1Games; }
+    public int getPlayer2Games() { return player2Games; }
+    public int getPlayer1Points() { return player1Points; }
+    public int getPlayer2Points() { return player2Points; }
+    public long getStartedMillis() { return startedMillis; }
+    public long getUpdatedMillis() { return updatedMillis; }
+
+    /**
+     * Returns who serves the next point: 0 for player 1, 1 for player 2.
+     */
+    public int getServer() { return server; }
+
+    /**
+     * Returns the scores of the games finished point by point, as
+     * {player 1 points, player 2 points} pairs.
+     */
+    public int[][] getGameScores() {
+        int[][] copy = new int[gameScores.length][];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = gameScores[i].clone();
+        }
+        return copy;
+    }
+
+    // Game scores without the defensive copy, for serializers in this package
+    int[][] gameScores() {
+        return gameScores;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s vs %s (%d-%d, %d-%d)", player1.getName(), player2.getName(),
+            player1Games, player2Games, player1Points, player2Points);
+    }
+}
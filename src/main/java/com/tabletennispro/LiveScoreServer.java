@@ -0,0 +1,379 @@
+package com.tabletennispro;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An embedded HTTP server that publishes the contents of a {@link DataManager}
+ * as JSON, for the web edition and for screens around the venue.
+ *
+ * <pre>
+ * GET /api/players       all players
+ * GET /api/matches       recent matches, oldest first; ?limit=&amp;offset= count back from the newest
+ * GET /api/tournaments   all tournaments
+ * GET /api/live          scores of the matches in progress
+ * GET /api/live/events   changes to those scores as server-sent events, see {@link ScoreFeed}
+ * </pre>
+ *
+ * Players, matches and tournaments use the layout of the web edition's
+ * storage. Every other path is served from the web edition's directory.
+ *
+ * A response is rendered once and cached together with the version of the
+ * data it shows, and only rendered again after that data changed; until then
+ * a request costs a version check and a write of the cached bytes. Live
+ * scores have their own version, so points being scored do not invalidate
+ * the player and match lists. Tournaments are also cached one by one, so a
+ * change renders again only the tournaments it touched; the others are not
+ * loaded from their segments again. Each request runs on its own virtual thread
+ * where the runtime has them (Java 21 and later) and on a pooled thread
+ * otherwise.
+ */
+public class LiveScoreServer implements Closeable {
+    private static final int DEFAULT_MATCH_LIMIT = 200;
+    private static final int MAX_MATCH_LIMIT = 5000;
+    // Bounds the cache when clients ask for many different match pages
+    private static final int MAX_CACHED_RESPONSES = 256;
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+
+    static {
+        // The JDK server writes headers and body separately; without TCP_NODELAY every
+        // keep-alive response waits about 40 ms for the client's delayed acknowledgement
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private interface VersionSource {
+        long get();
+    }
+
+    private interface Renderer {
+        void render(JsonWriter json) throws IOException;
+    }
+
+    private static final class CachedResponse {
+        final long version;
+        final byte[] body;
+
+        CachedResponse(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    private final DataManager dataManager;
+    private final Path webRoot;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScoreFeed scoreFeed = new ScoreFeed();
+    private static final class CachedTournament {
+        final Tournament tournament;
+        final int revision;
+        final long nameVersion;
+        final String json;
+
+        CachedTournament(Tournament tournament, int revision, long nameVersion, String json) {
+            this.tournament = tournament;
+            this.revision = revision;
+            this.nameVersion = nameVersion;
+            this.json = json;
+        }
+
+        boolean isCurrent(Tournament tournament, long nameVersion) {
+            return this.tournament == tournament && revision == tournament.getRevision()
+                && this.nameVersion == nameVersion;
+        }
+    }
+
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+    // Each tournament's JSON as last rendered, by tournament ID
+    private final Map<String, CachedTournament> tournamentCache = new ConcurrentHashMap<>();
+    // Distinguishes the entity tags of this run from those of an earlier one
+    private final String instance = Long.toHexString(System.currentTimeMillis());
+
+    /**
+     * Creates a server on the given port; static files are served from
+     * {@code webRoot}, which may be null.
+     */
+    public LiveScoreServer(DataManager dataManager, int port, Path webRoot) throws IOException {
+        this.dataManager = dataManager;
+        this.webRoot = webRoot == null ? null : webRoot.toAbsolutePath().normalize();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        dataManager.addLiveScoreListener(scoreFeed);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public ScoreFeed getScoreFeed() {
+        return scoreFeed;
+    }
+
+    @Override
+    public void close() {
+        dataManager.removeLiveScoreListener(scoreFeed);
+        scoreFeed.close();
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // Virtual threads where the runtime has them, a cached pool of daemon threads otherwise
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "live-score-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendEmpty(exchange, 405);
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            switch (path) {
+                case "/api/players":
+                    respond(exchange, path, dataManager::getVersion, this::writePlayers);
+                    break;
+                case "/api/matches": {
+                    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                    int limit = Math.min(parseCount(query.get("limit"), DEFAULT_MATCH_LIMIT), MAX_MATCH_LIMIT);
+                    int offset = parseCount(query.get("offset"), 0);
+                    respond(exchange, path + "?" + offset + "," + limit, dataManager::getVersion,
+                        json -> writeMatches(json, offset, limit));
+                    break;
+                }
+                case "/api/tournaments":
+                    respond(exchange, path, dataManager::getVersion, this::writeTournaments);
+                    break;
+                case "/api/live":
+                    respond(exchange, path, dataManager::getLiveScoreVersion, this::writeLiveScores);
+                    break;
+                case "/api/live/events":
+                    scoreFeed.stream(exchange);
+                    break;
+                default:
+                    if (path.startsWith("/api/")) {
+                        sendEmpty(exchange, 404);
+                    } else {
+                        serveFile(exchange, path);
+                    }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error serving " + exchange.getRequestURI() + ": " + e.getMessage());
+            if (exchange.getResponseCode() == -1) {
+                sendEmpty(exchange, 500);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Cached responses
+
+    private void respond(HttpExchange exchange, String key, VersionSource source, Renderer renderer)
+            throws IOException {
+        // Read before rendering, so a change made meanwhile is rendered by the next request
+        long version = source.get();
+        CachedResponse response = responses.get(key);
+        if (response == null || response.version != version) {
+            response = new CachedResponse(version, render(renderer));
+            if (responses.size() >= MAX_CACHED_RESPONSES) {
+                responses.clear();
+            }
+            responses.put(key, response);
+        }
+
+        String tag = "\"" + instance + "-" + response.version + "\"";
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", tag);
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Access-Control-Allow-Origin", "*");
+        if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            sendEmpty(exchange, 304);
+            return;
+        }
+        headers.set("Content-Type", JSON_TYPE);
+        send(exchange, 200, response.body);
+    }
+
+    private static byte[] render(Renderer renderer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8)));
+        renderer.render(json);
+        json.flush();
+        return bytes.toByteArray();
+    }
+
+    private void writePlayers(JsonWriter json) throws IOException {
+        json.beginArray();
+        for (Player player : dataManager.getAllPlayers()) {
+            DataExporter.writePlayer(json, player);
+        }
+        json.endArray();
+    }
+
+    private void writeMatches(JsonWriter json, int offset, int limit) throws IOException {
+        int end = Math.max(0, dataManager.getMatchCount() - offset);
+        int start = Math.max(0, end - limit);
+        json.beginArray();
+        for (int i = start; i < end; i++) {
+            DataExporter.writeMatch(json, dataManager.getMatch(i));
+        }
+        json.endArray();
+    }
+
+    // Only tournaments changed since they were last rendered are read, under the read lock
+    private void writeTournaments(JsonWriter json) throws IOException {
+        List<Tournament> tournaments = dataManager.getAllTournaments();
+        Set<String> ids = new HashSet<>();
+        json.beginArray();
+        for (Tournament tournament : tournaments) {
+            ids.add(tournament.getId());
+            long nameVersion = dataManager.getNameVersion();
+            CachedTournament cached = tournamentCache.get(tournament.getId());
+            if (cached == null || !cached.isCurrent(tournament, nameVersion)) {
+                cached = dataManager.readTournament(tournament, t -> {
+                    StringWriter text = new StringWriter();
+                    JsonWriter tournamentJson = new JsonWriter(text);
+                    int revision = t.getRevision();
+                    DataExporter.writeTournament(tournamentJson, t);
+                    tournamentJson.flush();
+                    return new CachedTournament(t, revision, nameVersion, text.toString());
+                });
+                tournamentCache.put(tournament.getId(), cached);
+            }
+            json.rawValue(cached.json);
+        }
+        json.endArray();
+        tournamentCache.keySet().retainAll(ids);
+    }
+
+    private void writeLiveScores(JsonWriter json) throws IOException {
+        json.beginArray();
+        for (LiveScore score : dataManager.getLiveScores()) {
+            writeLiveScore(json, score);
+        }
+        json.endArray();
+    }
+
+    static void writeLiveScore(JsonWriter json, LiveScore score) throws IOException {
+        json.beginObject()
+            .name("id").value(score.getMatchId());
+        json.name("player1");
+        DataExporter.writePlayerReference(json, score.getPlayer1());
+        json.name("player2");
+        DataExporter.writePlayerReference(json, score.getPlayer2());
+        json.name("bestOf").value(score.getBestOf())
+            .name("score1").value(score.getPlayer1Games())
+            .name("score2").value(score.getPlayer2Games())
+            .name("points1").value(score.getPlayer1Points())
+            .name("points2").value(score.getPlayer2Points())
+            .name("server").value(score.getServer() + 1);
+        json.name("games").beginArray();
+        for (int[] game : score.gameScores()) {
+            json.beginArray().value(game[0]).value(game[1]).endArray();
+        }
+        json.endArray();
+        json.name("startedAt").value(Instant.ofEpochMilli(score.getStartedMillis()).toString())
+            .name("updatedAt").value(Instant.ofEpochMilli(score.getUpdatedMillis()).toString())
+            .endObject();
+    }
+
+    // Static files
+
+    private void serveFile(HttpExchange exchange, String path) throws IOException {
+        if (webRoot == null) {
+            sendEmpty(exchange, 404);
+            return;
+        }
+        Path file = webRoot.resolve(path.equals("/") ? "index.html" : path.substring(1)).normalize();
+        if (!file.startsWith(webRoot) || !Files.isRegularFile(file)) {
+            sendEmpty(exchange, 404);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", contentType(file));
+        send(exchange, 200, Files.readAllBytes(file));
+    }
+
+    private static String contentType(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".html")) return "text/html; charset=utf-8";
+        if (name.endsWith(".js")) return "text/javascript; charset=utf-8";
+        if (name.endsWith(".css")) return "text/css; charset=utf-8";
+        if (name.endsWith(".json")) return JSON_TYPE;
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".png")) return "image/png";
+        return "application/octet-stream";
+    }
+
+    // Helpers
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        exchange.sendResponseHeaders(status, head ? -1 : body.length);
+        if (!head) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        return values;
+    }
+
+    // Non-negative counts only; anything else falls back to the default
+    private static int parseCount(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int count = Integer.parseInt(value);
+            return count < 0 ? defaultValue : count;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
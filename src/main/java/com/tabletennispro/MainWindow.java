@@ -1,14 +1,25 @@
 package com.tabletennispro;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Main GUI window for Table Tennis Pro
  */
 public class MainWindow extends JFrame {
+    private static final long serialVersionUID = 1L;
+
+    // Set to a port number to publish live scores over HTTP, e.g. -Dtabletennispro.server.port=8080
+    private static final String SERVER_PORT_PROPERTY = "tabletennispro.server.port";
+
     private DataManager dataManager;
+    private LiveScoreServer liveScoreServer;
+    private TableScheduler tableScheduler = new TableScheduler(4);
     private JTabbedPane tabbedPane;
 
     // Panels
@@ -19,14 +30,37 @@ public class MainWindow extends JFrame {
 
     public MainWindow() {
         dataManager = new DataManager();
+        startLiveScoreServer();
         initializeUI();
     }
 
+    private void startLiveScoreServer() {
+        String port = System.getProperty(SERVER_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        try {
+            liveScoreServer = new LiveScoreServer(dataManager, Integer.parseInt(port.trim()), Paths.get("docs"));
+            liveScoreServer.start();
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error starting live score server: " + e.getMessage());
+        }
+    }
+
     private void initializeUI() {
         setTitle("Table Tennis Pro");
         setSize(1000, 700);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (liveScoreServer != null) {
+                    liveScoreServer.close();
+                }
+                dataManager.close();
+            }
+        });
 
         // Create tabbed pane
         tabbedPane = new JTabbedPane();
@@ -62,17 +96,13 @@ public class MainWindow extends JFrame {
         titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
         playersPanel.add(titleLabel, BorderLayout.NORTH);
 
-        // Player list
-        DefaultListModel<Player> playerListModel = new DefaultListModel<>();
-        JList<Player> playerList = new JList<>(playerListModel);
+        // Player list, read from the data manager as it is scrolled
+        JList<Player> playerList = new JList<>(new PlayerListModel(dataManager));
         playerList.setFont(new Font("Arial", Font.PLAIN, 16));
+        // Cells are measured on a sample rather than on every player
+        playerList.setPrototypeCellValue(new Player("Prototype Player Name"));
         JScrollPane scrollPane = new JScrollPane(playerList);
 
-        // Load players
-        for (Player player : dataManager.getAllPlayers()) {
-            playerListModel.addElement(player);
-        }
-
         playersPanel.add(scrollPane, BorderLayout.CENTER);
 
         // Button panel
@@ -83,9 +113,7 @@ public class MainWindow extends JFrame {
         addButton.addActionListener(e -> {
             String name = JOptionPane.showInputDialog(this, "Enter player name:");
             if (name != null && !name.trim().isEmpty()) {
-                Player player = new Player(name.trim());
-                dataManager.addPlayer(player);
-                playerListModel.addElement(player);
+                dataManager.addPlayer(new Player(name.trim()));
             }
         });
 
@@ -99,7 +127,6 @@ public class MainWindow extends JFrame {
                         "Confirm Removal", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
                     dataManager.removePlayer(selected);
-                    playerListModel.removeElement(selected);
                 }
             }
         });
@@ -112,9 +139,56 @@ public class MainWindow extends JFrame {
                 String newName = JOptionPane.showInputDialog(this,
                         "Enter new name:", selected.getName());
                 if (newName != null && !newName.trim().isEmpty()) {
-                    selected.setName(newName.trim());
-                    dataManager.updateData();
-                    playerList.repaint();
+                    dataManager.renamePlayer(selected, newName.trim());
+                }
+            }
+        });
+
+        JButton clubButton = new JButton("Set Club");
+        clubButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        clubButton.addActionListener(e -> {
+            Player selected = playerList.getSelectedValue();
+            if (selected != null) {
+                String club = JOptionPane.showInputDialog(this,
+                        "Enter club (empty for none):", selected.getClub() == null ? "" : selected.getClub());
+                if (club != null) {
+                    dataManager.setPlayerClub(selected, club);
+                }
+            }
+        });
+
+        JButton importButton = new JButton("Import...");
+        importButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        importButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV or JSON files", "csv", "json"));
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    TransferReport report = new DataImporter(dataManager)
+                            .importFile(chooser.getSelectedFile().toPath());
+                    JOptionPane.showMessageDialog(this, "Imported " + report, "Import Complete",
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, "Import failed: " + ex.getMessage(), "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+
+        JButton exportButton = new JButton("Export...");
+        exportButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        exportButton.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("CSV or JSON files", "csv", "json"));
+            if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    TransferReport report = new DataExporter(dataManager)
+                            .exportFile(chooser.getSelectedFile().toPath());
+                    JOptionPane.showMessageDialog(this, "Exported " + report, "Export Complete",
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, "Export failed: " + ex.getMessage(), "Error",
+                            JOptionPane.ERROR_MESSAGE);
                 }
             }
         });
@@ -122,6 +196,9 @@ public class MainWindow extends JFrame {
         buttonPanel.add(addButton);
         buttonPanel.add(removeButton);
         buttonPanel.add(editButton);
+        buttonPanel.add(clubButton);
+        buttonPanel.add(importButton);
+        buttonPanel.add(exportButton);
 
         playersPanel.add(buttonPanel, BorderLayout.SOUTH);
     }
@@ -159,16 +236,11 @@ public class MainWindow extends JFrame {
         tournamentPanel.add(titleLabel, BorderLayout.NORTH);
 
         // Tournament list
-        DefaultListModel<Tournament> tournamentListModel = new DefaultListModel<>();
+        TournamentListModel tournamentListModel = new TournamentListModel(dataManager);
         JList<Tournament> tournamentList = new JList<>(tournamentListModel);
         tournamentList.setFont(new Font("Arial", Font.PLAIN, 16));
         JScrollPane scrollPane = new JScrollPane(tournamentList);
 
-        // Load tournaments
-        for (Tournament tournament : dataManager.getAllTournaments()) {
-            tournamentListModel.addElement(tournament);
-        }
-
         tournamentPanel.add(scrollPane, BorderLayout.CENTER);
 
         // Button panel
@@ -179,11 +251,7 @@ public class MainWindow extends JFrame {
         createButton.addActionListener(e -> {
             TournamentCreationDialog dialog = new TournamentCreationDialog(this, dataManager);
             dialog.setVisible(true);
-            // Refresh list
-            tournamentListModel.clear();
-            for (Tournament tournament : dataManager.getAllTournaments()) {
-                tournamentListModel.addElement(tournament);
-            }
+            tournamentListModel.added();
         });
 
         JButton viewButton = new JButton("View/Manage");
@@ -191,9 +259,12 @@ public class MainWindow extends JFrame {
         viewButton.addActionListener(e -> {
             Tournament selected = tournamentList.getSelectedValue();
             if (selected != null) {
+                int index = tournamentList.getSelectedIndex();
                 TournamentViewDialog dialog = new TournamentViewDialog(this, selected, dataManager);
                 dialog.setVisible(true);
-                tournamentList.repaint();
+                // A group stage can create its knockout from the dialog
+                tournamentListModel.changed(index);
+                tournamentListModel.added();
             }
         });
 
@@ -206,15 +277,24 @@ public class MainWindow extends JFrame {
                         "Are you sure you want to delete this tournament?",
                         "Confirm Deletion", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
+                    int index = tournamentList.getSelectedIndex();
                     dataManager.removeTournament(selected);
-                    tournamentListModel.removeElement(selected);
+                    tournamentListModel.removed(index);
                 }
             }
         });
 
+        JButton tablesButton = new JButton("Tables...");
+        tablesButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        tablesButton.addActionListener(e -> {
+            TableAssignmentDialog dialog = new TableAssignmentDialog(this, dataManager, tableScheduler);
+            dialog.setVisible(true);
+        });
+
         buttonPanel.add(createButton);
         buttonPanel.add(viewButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(tablesButton);
 
         tournamentPanel.add(buttonPanel, BorderLayout.SOUTH);
     }
@@ -227,55 +307,33 @@ public class MainWindow extends JFrame {
         titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
         statsPanel.add(titleLabel, BorderLayout.NORTH);
 
-        // Create table
-        String[] columnNames = { "Player", "Matches", "Wins", "Losses", "Win Rate", "Avg Points/Match" };
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        JComboBox<Leaderboard.Metric> metricCombo = new JComboBox<>(Leaderboard.Metric.values());
+        metricCombo.setFont(new Font("Arial", Font.PLAIN, 14));
 
+        // Create table in ranking order; cells are read and formatted only when shown
+        PlayerStatsTableModel tableModel = new PlayerStatsTableModel(dataManager,
+                (Leaderboard.Metric) metricCombo.getSelectedItem());
         JTable statsTable = new JTable(tableModel);
         statsTable.setFont(new Font("Arial", Font.PLAIN, 14));
         statsTable.setRowHeight(25);
         statsTable.getTableHeader().setFont(new Font("Arial", Font.BOLD, 14));
 
-        // Populate table
-        for (Player player : dataManager.getAllPlayers()) {
-            Object[] row = {
-                    player.getName(),
-                    player.getTotalMatches(),
-                    player.getWins(),
-                    player.getLosses(),
-                    String.format("%.1f%%", player.getWinRate()),
-                    String.format("%.1f", player.getAveragePointsPerMatch())
-            };
-            tableModel.addRow(row);
-        }
-
         JScrollPane scrollPane = new JScrollPane(statsTable);
         statsPanel.add(scrollPane, BorderLayout.CENTER);
 
+        metricCombo.addActionListener(e -> tableModel.setMetric((Leaderboard.Metric) metricCombo.getSelectedItem()));
+
         // Refresh button
         JButton refreshButton = new JButton("Refresh Statistics");
         refreshButton.setFont(new Font("Arial", Font.PLAIN, 14));
-        refreshButton.addActionListener(e -> {
-            tableModel.setRowCount(0);
-            for (Player player : dataManager.getAllPlayers()) {
-                Object[] row = {
-                        player.getName(),
-                        player.getTotalMatches(),
-                        player.getWins(),
-                        player.getLosses(),
-                        String.format("%.1f%%", player.getWinRate()),
-                        String.format("%.1f", player.getAveragePointsPerMatch())
-                };
-                tableModel.addRow(row);
-            }
-        });
+        refreshButton.addActionListener(e -> tableModel.reload());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttonPanel.add(new JLabel("Rank by:"));
+        buttonPanel.add(metricCombo);
+        buttonPanel.add(refreshButton);
 
-        statsPanel.add(refreshButton, BorderLayout.SOUTH);
+        statsPanel.add(buttonPanel, BorderLayout.SOUTH);
     }
 
     public static void main(String[] args) {
@@ -2,13 +2,26 @@ package com.tabletennispro;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.UUID;
+import java.util.*;
 
 /**
  * Represents a table tennis match between two players
+ *
+ * A match can be scored game by game or point by point. Points are appended to
+ * a rally log of packed ints holding the delay since the previous point, the
+ * server and the winner; games are won at 11 points with a lead of two, and
+ * the per-game scores are derived from the log. Recording a point allocates
+ * nothing once the log exists.
  */
 public class Match implements Serializable {
     private static final long serialVersionUID = 1L;
+
+    private static final int POINTS_PER_GAME = 11;
+    private static final int INITIAL_RALLY_CAPACITY = 256;
+    // Rally layout: bit 0 winner, bit 1 server (0 = player 1), bits 2-30 delay in millis
+    private static final int SERVER_SHIFT = 1;
+    private static final int DELAY_SHIFT = 2;
+    static final long MAX_RALLY_DELAY_MILLIS = (1 << 29) - 1;
     
     private String id;
     private Player player1;
@@ -18,6 +31,13 @@ public class Match implements Serializable {
     private LocalDateTime timestamp;
     private boolean completed;
     private int bestOf; // Best of 3, 5, 7, etc.
+    private int[] rallies;
+    private int rallyCount;
+    // Points in the game being played
+    private int player1Points;
+    private int player2Points;
+    private transient long lastRallyMillis;
+    private transient boolean statsRecorded;
     
     public Match(Player player1, Player player2, int bestOf) {
         this.id = UUID.randomUUID().toString();
@@ -28,6 +48,16 @@ public class Match implements Serializable {
         this.timestamp = LocalDateTime.now();
         this.completed = false;
         this.bestOf = bestOf;
+        this.lastRallyMillis = System.currentTimeMillis();
+    }
+    
+    // Restores a match read back from persistent storage
+    Match(String id, Player player1, Player player2, int bestOf, LocalDateTime timestamp) {
+        this.id = id;
+        this.player1 = player1;
+        this.player2 = player2;
+        this.bestOf = bestOf;
+        this.timestamp = timestamp;
     }
     
     // Getters
@@ -39,6 +69,9 @@ public class Match implements Serializable {
     public LocalDateTime getTimestamp() { return timestamp; }
     public boolean isCompleted() { return completed; }
     public int getBestOf() { return bestOf; }
+    public int getPlayer1Points() { return player1Points; }
+    public int getPlayer2Points() { return player2Points; }
+    public int getRallyCount() { return rallyCount; }
     
     // Setters
     public void setPlayer1Score(int score) { this.player1Score = score; }
@@ -54,6 +87,208 @@ public class Match implements Serializable {
         checkMatchCompletion();
     }
     
+    // Restores scores and state without touching player statistics
+    void restoreResult(int player1Score, int player2Score, boolean completed) {
+        this.player1Score = player1Score;
+        this.player2Score = player2Score;
+        this.completed = completed;
+    }
+    
+    // Point-by-point scoring
+
+    public void recordPlayer1Point() {
+        recordPoint(0);
+    }
+
+    public void recordPlayer2Point() {
+        recordPoint(1);
+    }
+
+    private void recordPoint(int winner) {
+        if (completed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long delay = Math.max(0, Math.min(now - lastRallyMillis, MAX_RALLY_DELAY_MILLIS));
+        lastRallyMillis = now;
+        if (rallies == null) {
+            rallies = new int[INITIAL_RALLY_CAPACITY];
+        } else if (rallyCount == rallies.length) {
+            rallies = Arrays.copyOf(rallies, rallyCount * 2);
+        }
+        rallies[rallyCount++] = (int) delay << DELAY_SHIFT | getServer() << SERVER_SHIFT | winner;
+
+        if (winner == 0) {
+            player1Points++;
+        } else {
+            player2Points++;
+        }
+        if (isGameOver(player1Points, player2Points)) {
+            if (winner == 0) {
+                player1Score++;
+            } else {
+                player2Score++;
+            }
+            player1Points = 0;
+            player2Points = 0;
+            checkMatchCompletion();
+        }
+    }
+
+    /**
+     * Takes back the last recorded point, including the game or match it decided.
+     */
+    public void undoPoint() {
+        if (rallyCount == 0) {
+            return;
+        }
+        int before = rallyGames();
+        rallyCount--;
+        int after = rallyGames();
+        player1Score -= (before >>> 16) - (after >>> 16);
+        player2Score -= (before & 0xFFFF) - (after & 0xFFFF);
+        updateGamePoints();
+        completed = false;
+        checkMatchCompletion();
+    }
+
+    /**
+     * Returns who serves the next point: 0 for player 1, 1 for player 2.
+     * Player 1 serves first; service changes every two points, and every
+     * point from 10-10, and the first server alternates between games.
+     */
+    public int getServer() {
+        int game = player1Score + player2Score;
+        int points = player1Points + player2Points;
+        int turn = points < 2 * (POINTS_PER_GAME - 1) ? points / 2 : points;
+        return (turn + game) % 2;
+    }
+
+    /**
+     * Returns the scores of the games finished point by point, as
+     * {player 1 points, player 2 points} pairs.
+     */
+    public int[][] getGameScores() {
+        List<int[]> games = new ArrayList<>();
+        int points1 = 0;
+        int points2 = 0;
+        for (int i = 0; i < rallyCount; i++) {
+            if (getPointWinner(i) == 0) {
+                points1++;
+            } else {
+                points2++;
+            }
+            if (isGameOver(points1, points2)) {
+                games.add(new int[] { points1, points2 });
+                points1 = 0;
+                points2 = 0;
+            }
+        }
+        return games.toArray(new int[0][]);
+    }
+
+    public int getPlayer1PointsWon() {
+        return pointsWonBy(0);
+    }
+
+    public int getPlayer2PointsWon() {
+        return pointsWonBy(1);
+    }
+
+    /**
+     * Returns who won a recorded point: 0 for player 1, 1 for player 2.
+     */
+    public int getPointWinner(int index) {
+        return rally(index) & 1;
+    }
+
+    /**
+     * Returns who served a recorded point: 0 for player 1, 1 for player 2.
+     */
+    public int getPointServer(int index) {
+        return rally(index) >>> SERVER_SHIFT & 1;
+    }
+
+    /**
+     * Returns the time since the previous point, or since the match was
+     * created for the first point.
+     */
+    public long getPointDelayMillis(int index) {
+        return rally(index) >>> DELAY_SHIFT;
+    }
+
+    // Packed rally at an index, for codecs
+    int rally(int index) {
+        if (index < 0 || index >= rallyCount) {
+            throw new IndexOutOfBoundsException("Point " + index + " of " + rallyCount);
+        }
+        return rallies[index];
+    }
+
+    // Restores a rally log read back from persistent storage; game scores are
+    // restored separately with restoreResult
+    void restoreRallies(int[] rallies, int count) {
+        this.rallies = count == 0 ? null : rallies;
+        this.rallyCount = count;
+        updateGamePoints();
+    }
+
+    private int pointsWonBy(int player) {
+        int points = 0;
+        for (int i = 0; i < rallyCount; i++) {
+            if ((rallies[i] & 1) == player) {
+                points++;
+            }
+        }
+        return points;
+    }
+
+    private static boolean isGameOver(int points1, int points2) {
+        return Math.max(points1, points2) >= POINTS_PER_GAME && Math.abs(points1 - points2) >= 2;
+    }
+
+    // Games won in the rally log, player 1 in the high half
+    private int rallyGames() {
+        int games1 = 0;
+        int games2 = 0;
+        int points1 = 0;
+        int points2 = 0;
+        for (int i = 0; i < rallyCount; i++) {
+            if ((rallies[i] & 1) == 0) {
+                points1++;
+            } else {
+                points2++;
+            }
+            if (isGameOver(points1, points2)) {
+                if (points1 > points2) {
+                    games1++;
+                } else {
+                    games2++;
+                }
+                points1 = 0;
+                points2 = 0;
+            }
+        }
+        return games1 << 16 | games2;
+    }
+
+    // Recomputes the points of the unfinished game from the rally log
+    private void updateGamePoints() {
+        player1Points = 0;
+        player2Points = 0;
+        for (int i = 0; i < rallyCount; i++) {
+            if ((rallies[i] & 1) == 0) {
+                player1Points++;
+            } else {
+                player2Points++;
+            }
+            if (isGameOver(player1Points, player2Points)) {
+                player1Points = 0;
+                player2Points = 0;
+            }
+        }
+    }
+
     public void decrementPlayer1Score() {
         if (player1Score > 0) player1Score--;
     }
@@ -79,15 +314,22 @@ public class Match implements Serializable {
         return player1Score < player2Score ? player1 : player2;
     }
     
+    // Only the first call updates player statistics
     public void completeMatch() {
         this.completed = true;
-        // Update player statistics
+        if (statsRecorded) {
+            return;
+        }
+        statsRecorded = true;
+        // Update player statistics; matches scored by game carry no points
+        int player1Points = getPlayer1PointsWon();
+        int player2Points = getPlayer2PointsWon();
         if (player1Score > player2Score) {
-            player1.recordWin(player1Score, player2Score);
-            player2.recordLoss(player2Score, player1Score);
+            player1.recordWin(player1Score, player2Score, player1Points, player2Points);
+            player2.recordLoss(player2Score, player1Score, player2Points, player1Points);
         } else {
-            player2.recordWin(player2Score, player1Score);
-            player1.recordLoss(player1Score, player2Score);
+            player2.recordWin(player2Score, player1Score, player2Points, player1Points);
+            player1.recordLoss(player1Score, player2Score, player1Points, player2Points);
         }
     }
     
@@ -0,0 +1,432 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Memory-mapped archive of completed matches stored as fixed-width columns.
+ *
+ * Rows are grouped into chunks of {@value #CHUNK_ROWS}; within a chunk every
+ * column is a contiguous array, so scans over one column touch as few pages as
+ * possible. Players and tournaments are stored as indexes into a small
+ * dictionary kept in a side file. Nothing is materialized on the heap until a
+ * caller asks for a {@link Match} object.
+ *
+ * Rally logs vary in length, so they are appended to a second side file as
+ * records of row, payload length and payload; only their offsets are kept in
+ * memory.
+ */
+public class MatchArchive implements Closeable {
+    private static final int MAGIC = 0x5454504D; // "TTPM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    static final int CHUNK_ROWS = 1 << 16;
+
+    // Column widths, widest first so every column stays naturally aligned
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = ID_HIGH + 8 * CHUNK_ROWS;
+    private static final int TIME = ID_LOW + 8 * CHUNK_ROWS;
+    private static final int PLAYER1 = TIME + 8 * CHUNK_ROWS;
+    private static final int PLAYER2 = PLAYER1 + 4 * CHUNK_ROWS;
+    private static final int TOURNAMENT = PLAYER2 + 4 * CHUNK_ROWS;
+    private static final int PLAYER1_SCORE = TOURNAMENT + 4 * CHUNK_ROWS;
+    private static final int PLAYER2_SCORE = PLAYER1_SCORE + CHUNK_ROWS;
+    private static final int BEST_OF = PLAYER2_SCORE + CHUNK_ROWS;
+    private static final int CHUNK_BYTES = BEST_OF + CHUNK_ROWS;
+
+    private static final int RALLY_HEADER_SIZE = 8;
+
+    private static final int DICT_PLAYER = 0;
+    private static final int DICT_TOURNAMENT = 1;
+
+    /**
+     * Supplies the live player object for an archived player ID
+     */
+    @FunctionalInterface
+    public interface PlayerResolver {
+        Player resolve(String id, String archivedName);
+    }
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new CopyOnWriteArrayList<>();
+    private final MappedByteBuffer header;
+    private int size;
+
+    private final DataOutputStream dictionaryOut;
+    private final FileOutputStream dictionaryFile;
+    private final List<String> playerIds = new ArrayList<>();
+    private final List<String> playerNames = new ArrayList<>();
+    private final Map<String, Integer> playerIndex = new HashMap<>();
+    private final List<String> tournamentIds = new ArrayList<>();
+    private final Map<String, Integer> tournamentIndex = new HashMap<>();
+    private Player[] resolvedPlayers = new Player[0];
+
+    private final FileChannel rallyChannel;
+    // Payload offset of each row's rally log, or -1 if it has none
+    private long[] rallyOffsets = new long[0];
+    private long rallyEnd;
+
+    public MatchArchive(Path path) throws IOException {
+        channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+
+        if (header.getInt(0) == MAGIC) {
+            if (header.getInt(4) > VERSION) {
+                throw new IOException("Unsupported archive version " + header.getInt(4));
+            }
+            size = (int) header.getLong(8);
+        } else {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(8, 0);
+            size = 0;
+        }
+        for (int c = 0; c * CHUNK_ROWS < size; c++) {
+            mapChunk(c);
+        }
+
+        Path dictionaryPath = Paths.get(path + ".dict");
+        loadDictionary(dictionaryPath);
+        dictionaryFile = new FileOutputStream(dictionaryPath.toFile(), true);
+        dictionaryOut = new DataOutputStream(new BufferedOutputStream(dictionaryFile));
+
+        rallyChannel = FileChannel.open(Paths.get(path + ".rallies"),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadRallyOffsets();
+    }
+
+    // Records past the committed rows, or torn by a crash, are cut off so that
+    // rows appended again later cannot pick them up
+    private void loadRallyOffsets() throws IOException {
+        long fileSize = rallyChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(RALLY_HEADER_SIZE);
+        long position = 0;
+        while (position + RALLY_HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(rallyChannel, header, position);
+            int row = header.getInt(0);
+            int length = header.getInt(4);
+            long payload = position + RALLY_HEADER_SIZE;
+            if (row < 0 || row >= size || length < 0 || payload + length > fileSize) {
+                break;
+            }
+            setRallyOffset(row, payload);
+            position = payload + length;
+        }
+        rallyEnd = position;
+        if (rallyEnd < fileSize) {
+            rallyChannel.truncate(rallyEnd);
+        }
+    }
+
+    private void setRallyOffset(int row, long offset) {
+        if (row >= rallyOffsets.length) {
+            int length = rallyOffsets.length;
+            rallyOffsets = Arrays.copyOf(rallyOffsets, Math.max(row + 1, length * 2));
+            Arrays.fill(rallyOffsets, length, rallyOffsets.length, -1);
+        }
+        rallyOffsets[row] = offset;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private void loadDictionary(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int kind;
+                try {
+                    kind = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    String id = BinaryIO.readId(in);
+                    String name = in.readUTF();
+                    if (kind == DICT_PLAYER) {
+                        playerIndex.put(id, playerIds.size());
+                        playerIds.add(id);
+                        playerNames.add(name);
+                    } else {
+                        tournamentIndex.put(id, tournamentIds.size());
+                        tournamentIds.add(id);
+                    }
+                } catch (EOFException e) {
+                    break; // Entry torn by a crash; no committed row can refer to it
+                }
+            }
+        }
+    }
+
+    private MappedByteBuffer mapChunk(int chunk) throws IOException {
+        while (chunks.size() <= chunk) {
+            long offset = HEADER_SIZE + (long) chunks.size() * CHUNK_BYTES;
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, offset, CHUNK_BYTES));
+        }
+        return chunks.get(chunk);
+    }
+
+    /**
+     * Appends a completed match. The row becomes durable on the next {@link #sync(int)}.
+     */
+    public int append(Match match, String tournamentId) throws IOException {
+        int row = size;
+        MappedByteBuffer chunk = mapChunk(row / CHUNK_ROWS);
+        int r = row % CHUNK_ROWS;
+
+        UUID id = toUuid(match.getId());
+        chunk.putLong(ID_HIGH + r * 8, id.getMostSignificantBits());
+        chunk.putLong(ID_LOW + r * 8, id.getLeastSignificantBits());
+        chunk.putLong(TIME + r * 8, BinaryIO.toEpochMillis(match.getTimestamp()));
+        chunk.putInt(PLAYER1 + r * 4, playerIndexFor(match.getPlayer1()));
+        chunk.putInt(PLAYER2 + r * 4, playerIndexFor(match.getPlayer2()));
+        chunk.putInt(TOURNAMENT + r * 4, tournamentId == null ? -1 : tournamentIndexFor(tournamentId));
+        chunk.put(PLAYER1_SCORE + r, (byte) match.getPlayer1Score());
+        chunk.put(PLAYER2_SCORE + r, (byte) match.getPlayer2Score());
+        chunk.put(BEST_OF + r, (byte) match.getBestOf());
+        if (match.getRallyCount() > 0) {
+            appendRallies(row, match);
+        }
+
+        size++;
+        return row;
+    }
+
+    private void appendRallies(int row, Match match) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(RALLY_HEADER_SIZE + match.getRallyCount() * 3);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(row);
+        out.writeInt(0);
+        BinaryIO.writeRallies(out, match);
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(4, record.capacity() - RALLY_HEADER_SIZE);
+        long position = rallyEnd;
+        while (record.hasRemaining()) {
+            rallyChannel.write(record, position + record.position());
+        }
+        setRallyOffset(row, position + RALLY_HEADER_SIZE);
+        rallyEnd = position + record.capacity();
+    }
+
+    // Archived rows need a fixed-width ID, so IDs that are not UUIDs are mapped
+    // to a name-based UUID derived from them
+    private static UUID toUuid(String id) {
+        try {
+            UUID uuid = UUID.fromString(id);
+            if (uuid.toString().equals(id)) {
+                return uuid;
+            }
+        } catch (IllegalArgumentException e) {
+            // Fall through
+        }
+        return UUID.nameUUIDFromBytes(id.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    private int playerIndexFor(Player player) throws IOException {
+        Integer index = playerIndex.get(player.getId());
+        if (index == null) {
+            index = playerIds.size();
+            playerIndex.put(player.getId(), index);
+            playerIds.add(player.getId());
+            playerNames.add(player.getName());
+            writeDictionaryEntry(DICT_PLAYER, player.getId(), player.getName());
+        }
+        return index;
+    }
+
+    private int tournamentIndexFor(String tournamentId) throws IOException {
+        Integer index = tournamentIndex.get(tournamentId);
+        if (index == null) {
+            index = tournamentIds.size();
+            tournamentIndex.put(tournamentId, index);
+            tournamentIds.add(tournamentId);
+            writeDictionaryEntry(DICT_TOURNAMENT, tournamentId, "");
+        }
+        return index;
+    }
+
+    private void writeDictionaryEntry(int kind, String id, String name) throws IOException {
+        synchronized (dictionaryOut) {
+            dictionaryOut.writeByte(kind);
+            BinaryIO.writeId(dictionaryOut, id);
+            dictionaryOut.writeUTF(name);
+        }
+    }
+
+    /**
+     * Forces appended rows and dictionary entries to disk, then publishes the
+     * first {@code rows} rows as committed. Safe to call from a background
+     * writer while new rows are being appended.
+     */
+    public void sync(int rows) throws IOException {
+        synchronized (dictionaryOut) {
+            dictionaryOut.flush();
+            dictionaryFile.getFD().sync();
+        }
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        rallyChannel.force(false);
+        synchronized (header) {
+            header.putLong(8, rows);
+            header.force();
+        }
+    }
+
+    /**
+     * Drops rows past {@code rows}, e.g. rows archived by a checkpoint that never completed.
+     */
+    public void truncate(int rows) throws IOException {
+        if (rows < size) {
+            // Rally records are appended in row order, so the first dropped one starts the cut
+            for (int row = rows; row < Math.min(size, rallyOffsets.length); row++) {
+                if (rallyOffsets[row] >= 0) {
+                    rallyEnd = rallyOffsets[row] - RALLY_HEADER_SIZE;
+                    rallyChannel.truncate(rallyEnd);
+                    Arrays.fill(rallyOffsets, row, rallyOffsets.length, -1);
+                    break;
+                }
+            }
+            size = rows;
+            synchronized (header) {
+                header.putLong(8, size);
+                header.force();
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Column access
+    private MappedByteBuffer chunk(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return chunks.get(row / CHUNK_ROWS);
+    }
+
+    public int getPlayer1(int row) {
+        return chunk(row).getInt(PLAYER1 + (row % CHUNK_ROWS) * 4);
+    }
+
+    public int getPlayer2(int row) {
+        return chunk(row).getInt(PLAYER2 + (row % CHUNK_ROWS) * 4);
+    }
+
+    public int getPlayer1Score(int row) {
+        return chunk(row).get(PLAYER1_SCORE + row % CHUNK_ROWS);
+    }
+
+    public int getPlayer2Score(int row) {
+        return chunk(row).get(PLAYER2_SCORE + row % CHUNK_ROWS);
+    }
+
+    public int getBestOf(int row) {
+        return chunk(row).get(BEST_OF + row % CHUNK_ROWS);
+    }
+
+    public long getEpochMillis(int row) {
+        return chunk(row).getLong(TIME + (row % CHUNK_ROWS) * 8);
+    }
+
+    public int getTournament(int row) {
+        return chunk(row).getInt(TOURNAMENT + (row % CHUNK_ROWS) * 4);
+    }
+
+    public String getMatchId(int row) {
+        MappedByteBuffer chunk = chunk(row);
+        int r = row % CHUNK_ROWS;
+        return new UUID(chunk.getLong(ID_HIGH + r * 8), chunk.getLong(ID_LOW + r * 8)).toString();
+    }
+
+    // Dictionary access
+    public int indexOfPlayer(String playerId) {
+        Integer index = playerIndex.get(playerId);
+        return index == null ? -1 : index;
+    }
+
+    public String getPlayerId(int playerIndex) {
+        return playerIds.get(playerIndex);
+    }
+
+    public String getTournamentId(int tournamentIndex) {
+        return tournamentIndex < 0 ? null : tournamentIds.get(tournamentIndex);
+    }
+
+    /**
+     * Builds a completed {@link Match} for one row. Player objects are resolved
+     * once per dictionary entry and reused.
+     */
+    public Match getMatch(int row, PlayerResolver resolver) {
+        Match match = new Match(getMatchId(row),
+            resolvePlayer(getPlayer1(row), resolver),
+            resolvePlayer(getPlayer2(row), resolver),
+            getBestOf(row),
+            BinaryIO.fromEpochMillis(getEpochMillis(row)));
+        match.restoreResult(getPlayer1Score(row), getPlayer2Score(row), true);
+        if (row < rallyOffsets.length && rallyOffsets[row] >= 0) {
+            try {
+                readRallies(rallyOffsets[row], match);
+            } catch (IOException e) {
+                System.err.println("Error reading rallies of archived match: " + e.getMessage());
+            }
+        }
+        return match;
+    }
+
+    private void readRallies(long offset, Match match) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(rallyChannel, length, offset - 4);
+        ByteBuffer payload = ByteBuffer.allocate(length.getInt(0));
+        readFully(rallyChannel, payload, offset);
+        BinaryIO.readRallies(new DataInputStream(new ByteArrayInputStream(payload.array())), match);
+    }
+
+    private synchronized Player resolvePlayer(int index, PlayerResolver resolver) {
+        if (index >= resolvedPlayers.length) {
+            resolvedPlayers = Arrays.copyOf(resolvedPlayers, Math.max(playerIds.size(), index + 1));
+        }
+        Player player = resolvedPlayers[index];
+        if (player == null) {
+            player = resolver.resolve(playerIds.get(index), playerNames.get(index));
+            resolvedPlayers[index] = player;
+        }
+        return player;
+    }
+
+    /**
+     * Forgets the player object resolved for an ID, so the next match read
+     * picks up the one registered now. Called when a player is added or removed.
+     */
+    public synchronized void forgetResolvedPlayer(String playerId) {
+        Integer index = playerIndex.get(playerId);
+        if (index != null && index < resolvedPlayers.length) {
+            resolvedPlayers[index] = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync(size);
+        dictionaryOut.close();
+        rallyChannel.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,67 @@
+package com.tabletennispro;
+
+/**
+ * A read-only copy of the match log in time order, reduced to the fields
+ * needed to rate it: who played, who won and when. Players are numbered from
+ * zero in the order they first appear.
+ *
+ * Taking the copy once lets rating rebuilds and parameter sweeps walk the
+ * history many times, and from several threads, without touching match
+ * objects or the archive.
+ */
+public final class MatchHistory {
+    private final String[] playerIds;
+    private final int size;
+    final int[] positions;
+    final int[] player1;
+    final int[] player2;
+    final boolean[] player1Won;
+    final long[] epochMillis;
+
+    MatchHistory(String[] playerIds, int size, int[] positions, int[] player1, int[] player2,
+                 boolean[] player1Won, long[] epochMillis) {
+        this.playerIds = playerIds;
+        this.size = size;
+        this.positions = positions;
+        this.player1 = player1;
+        this.player2 = player2;
+        this.player1Won = player1Won;
+        this.epochMillis = epochMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPlayerCount() {
+        return playerIds.length;
+    }
+
+    public String getPlayerId(int player) {
+        return playerIds[player];
+    }
+
+    /**
+     * Returns the global position of the i-th match, as used by
+     * {@link DataManager#getMatch(int)}.
+     */
+    public int getPosition(int i) {
+        return positions[i];
+    }
+
+    public int getPlayer1(int i) {
+        return player1[i];
+    }
+
+    public int getPlayer2(int i) {
+        return player2[i];
+    }
+
+    public boolean isPlayer1Win(int i) {
+        return player1Won[i];
+    }
+
+    public long getEpochMillis(int i) {
+        return epochMillis[i];
+    }
+}
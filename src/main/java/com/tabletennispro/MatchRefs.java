@@ -0,0 +1,43 @@
+package com.tabletennispro;
+
+/**
+ * An immutable slice of global match positions handed out by the match
+ * indexes. The backing array is shared with the index, which never rewrites
+ * entries that have already been handed out.
+ */
+public final class MatchRefs {
+    static final MatchRefs NONE = new MatchRefs(new int[0], 0, 0);
+
+    private final int[] positions;
+    private final int from;
+    private final int to;
+
+    MatchRefs(int[] positions, int from, int to) {
+        this.positions = positions;
+        this.from = from;
+        this.to = to;
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Returns the global match position at the given index of this slice.
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+        }
+        return positions[from + index];
+    }
+
+    /**
+     * Returns the part of this slice between two indexes, clamped to its bounds.
+     */
+    public MatchRefs subRange(int fromIndex, int toIndex) {
+        int start = Math.min(Math.max(fromIndex, 0), size());
+        int end = Math.min(Math.max(toIndex, start), size());
+        return new MatchRefs(positions, from + start, from + end);
+    }
+}
@@ -0,0 +1,204 @@
+package com.tabletennispro;
+
+import java.util.Arrays;
+
+/**
+ * Global match positions sorted by match time, for range scans such as
+ * "matches this week".
+ *
+ * Times and positions are kept in two parallel primitive arrays. Like
+ * {@link PlayerMatchIndex}, entries that have been handed out are never
+ * rewritten in place, so a {@link MatchRefs} stays valid while matches are
+ * added.
+ *
+ * Results from parallel tables often arrive slightly out of time order.
+ * Those matches go to a small sorted run of late entries instead of being
+ * inserted into the main arrays, which would copy them whole; the run is
+ * merged into the main arrays once it reaches about the square root of the
+ * index's size, so an out-of-order insert costs O(sqrt n) amortized. A range
+ * that takes in late entries is merged into a fresh array for its reader.
+ */
+public class MatchTimeIndex {
+    private static final int MIN_LATE_LIMIT = 256;
+
+    private long[] times = new long[1024];
+    private int[] positions = new int[1024];
+    private int size;
+    // Length of the prefix known to be in time order
+    private int ordered;
+    // Late entries in time order; never handed out, so they are updated in place
+    private long[] lateTimes = new long[MIN_LATE_LIMIT];
+    private int[] latePositions = new int[MIN_LATE_LIMIT];
+    private int lateSize;
+
+    /**
+     * Adds a match, keeping the index in time order.
+     */
+    public void add(int position, long millis) {
+        if (ordered == size && (size == 0 || millis >= times[size - 1])) {
+            append(position, millis);
+            ordered = size;
+            return;
+        }
+
+        // Insert after the last late entry with the same or an earlier time
+        int index = upperBound(lateTimes, lateSize, millis);
+        if (lateSize == lateTimes.length) {
+            lateTimes = Arrays.copyOf(lateTimes, lateSize * 2);
+            latePositions = Arrays.copyOf(latePositions, lateSize * 2);
+        }
+        System.arraycopy(lateTimes, index, lateTimes, index + 1, lateSize - index);
+        System.arraycopy(latePositions, index, latePositions, index + 1, lateSize - index);
+        lateTimes[index] = millis;
+        latePositions[index] = position;
+        lateSize++;
+        if (lateSize >= Math.max(MIN_LATE_LIMIT, (int) Math.sqrt(size))) {
+            mergeLate();
+        }
+    }
+
+    /**
+     * Appends a match without ordering it; {@link #sortPending} must be called
+     * once the batch is complete.
+     */
+    public void addUnordered(int position, long millis) {
+        boolean inOrder = ordered == size && (size == 0 || millis >= times[size - 1]);
+        append(position, millis);
+        if (inOrder) {
+            ordered = size;
+        }
+    }
+
+    /**
+     * Puts the entries added through {@link #addUnordered} since the last
+     * call in time order. Only they are sorted; the ordered prefix is copied
+     * and merged with them only where the two overlap in time.
+     */
+    public void sortPending() {
+        if (ordered == size) {
+            return;
+        }
+        // The unordered tail has not been handed out yet, so it is sorted in place
+        PlayerMatchIndex.mergeSort(positions, times, ordered, size);
+        if (ordered > 0 && times[ordered] < times[ordered - 1]) {
+            times = Arrays.copyOf(times, times.length);
+            positions = Arrays.copyOf(positions, positions.length);
+            PlayerMatchIndex.mergeTail(positions, times, ordered, size);
+        }
+        ordered = size;
+    }
+
+    public void clear() {
+        size = 0;
+        ordered = 0;
+        lateSize = 0;
+        times = new long[1024];
+        positions = new int[1024];
+    }
+
+    public int size() {
+        return size + lateSize;
+    }
+
+    /**
+     * Returns the positions of matches played within {@code [fromMillis, toMillis)}, oldest first.
+     */
+    public MatchRefs range(long fromMillis, long toMillis) {
+        int from = lowerBound(times, size, fromMillis);
+        int to = Math.max(from, lowerBound(times, size, toMillis));
+        int lateFrom = lowerBound(lateTimes, lateSize, fromMillis);
+        int lateTo = Math.max(lateFrom, lowerBound(lateTimes, lateSize, toMillis));
+        if (lateFrom == lateTo) {
+            return new MatchRefs(positions, from, to);
+        }
+
+        int[] merged = new int[to - from + lateTo - lateFrom];
+        int out = 0;
+        while (from < to && lateFrom < lateTo) {
+            merged[out++] = lateTimes[lateFrom] < times[from] ? latePositions[lateFrom++] : positions[from++];
+        }
+        while (from < to) {
+            merged[out++] = positions[from++];
+        }
+        while (lateFrom < lateTo) {
+            merged[out++] = latePositions[lateFrom++];
+        }
+        return new MatchRefs(merged, 0, out);
+    }
+
+    /**
+     * Returns the number of matches played within {@code [fromMillis, toMillis)}.
+     */
+    public int count(long fromMillis, long toMillis) {
+        int from = lowerBound(times, size, fromMillis);
+        int lateFrom = lowerBound(lateTimes, lateSize, fromMillis);
+        return Math.max(0, lowerBound(times, size, toMillis) - from)
+            + Math.max(0, lowerBound(lateTimes, lateSize, toMillis) - lateFrom);
+    }
+
+    // Merges the late entries into fresh main arrays, since the old ones may have been handed out
+    private void mergeLate() {
+        sortPending();
+        long[] newTimes = new long[Math.max(size + lateSize, times.length)];
+        int[] newPositions = new int[newTimes.length];
+        int main = 0;
+        int late = 0;
+        int out = 0;
+        while (main < size && late < lateSize) {
+            if (lateTimes[late] < times[main]) {
+                newTimes[out] = lateTimes[late];
+                newPositions[out++] = latePositions[late++];
+            } else {
+                newTimes[out] = times[main];
+                newPositions[out++] = positions[main++];
+            }
+        }
+        System.arraycopy(times, main, newTimes, out, size - main);
+        System.arraycopy(positions, main, newPositions, out, size - main);
+        out += size - main;
+        System.arraycopy(lateTimes, late, newTimes, out, lateSize - late);
+        System.arraycopy(latePositions, late, newPositions, out, lateSize - late);
+        times = newTimes;
+        positions = newPositions;
+        size += lateSize;
+        ordered = size;
+        lateSize = 0;
+    }
+
+    private void append(int position, long millis) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        times[size] = millis;
+        positions[size++] = position;
+    }
+
+    private static int lowerBound(long[] times, int size, long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int upperBound(long[] times, int size, long millis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,361 @@
+package com.tabletennispro;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Estimates each player's chances of reaching each round of an elimination
+ * draw, and of winning it, by playing the rest of the draw through many
+ * times at random.
+ *
+ * The draw is taken from the tournament as it stands: results already in are
+ * kept, and only the nodes still to be settled are played. A match goes to
+ * each player with the chance their ratings give it, as in Elo. The nodes
+ * still open are flattened once into arrays of sources in the order they are
+ * played, so a simulated completion is a single pass over them that reads
+ * and writes preallocated int arrays and allocates nothing. Completions run
+ * in blocks on a fork-join pool, each block with its own
+ * {@link SplittableRandom} split off the one before it, so a given seed
+ * gives the same estimate however the blocks are spread over threads.
+ *
+ * The work per completion is proportional to the matches still to be
+ * decided, so the estimate gets cheaper to redo as the draw advances.
+ * {@link #defaultTrials} spends a fixed budget of simulated matches, so a
+ * large draw gets fewer completions rather than a longer wait.
+ *
+ * The draw is copied out of its tournament by {@link #capture} before any
+ * completion is played, so a caller can read the tournament under a lock
+ * and run the simulation after releasing it.
+ */
+public class OutcomeSimulator {
+    public static final int DEFAULT_TRIALS = 1_000_000;
+    public static final int MIN_TRIALS = 10_000;
+    // Simulated matches the default trial count allows for
+    private static final long MATCH_BUDGET = 1L << 25;
+    // Simulated matches per fork-join block, so a large draw still splits into enough blocks
+    private static final int BLOCK_MATCHES = 1 << 19;
+
+    /**
+     * The chances of every player of a draw, in draw order.
+     */
+    public static final class Outcome {
+        private final List<Player> players;
+        private final List<String> roundNames;
+        private final double[] chances;
+        private final int trials;
+
+        Outcome(List<Player> players, List<String> roundNames, double[] chances, int trials) {
+            this.players = players;
+            this.roundNames = roundNames;
+            this.chances = chances;
+            this.trials = trials;
+        }
+
+        public List<Player> getPlayers() { return new ArrayList<>(players); }
+        public int getTrials() { return trials; }
+        public int getRoundCount() { return roundNames.size(); }
+
+        public String getRoundName(int round) {
+            return roundNames.get(round - 1);
+        }
+
+        /**
+         * Returns the chance that the player plays in, or is passed through,
+         * the given round, numbered from 1 as in the tournament.
+         */
+        public double getReachProbability(Player player, int round) {
+            int index = players.indexOf(player);
+            return index < 0 || round < 1 || round > roundNames.size()
+                ? 0 : chances[index * (roundNames.size() + 1) + round - 1];
+        }
+
+        public double getWinProbability(Player player) {
+            int index = players.indexOf(player);
+            return index < 0 ? 0 : chances[index * (roundNames.size() + 1) + roundNames.size()];
+        }
+    }
+
+    /**
+     * The open part of a draw with its players' ratings, copied out of the
+     * tournament.
+     */
+    public static final class Draw {
+        private final Plan plan;
+        private final List<Player> players;
+        private final List<String> roundNames;
+
+        Draw(Plan plan, List<Player> players, List<String> roundNames) {
+            this.plan = plan;
+            this.players = players;
+            this.roundNames = roundNames;
+        }
+
+        public int getPlayerCount() { return players.size(); }
+        public int getOpenMatchCount() { return plan.node.length; }
+    }
+
+    // The open part of a draw, flattened; results are held two per node, winner then loser
+    private static final class Plan {
+        int playerCount;
+        int columns;
+        // Results of settled nodes and slots, copied into every worker once
+        int[] settled;
+        // The nodes to play, in order, as offsets of their sources' results
+        int[] node;
+        int[] sourceA;
+        int[] sourceB;
+        int[] round;
+        // Offset of the reset's result, the winners champion and the grand final; -1 for single elimination
+        int reset = -1;
+        int champion;
+        int grandFinal = -1;
+        double[] strength;
+        // Reaches settled before the simulation, the same in every completion
+        int[] fixedCounts;
+        // Completions per fork-join block
+        int blockSize;
+    }
+
+    private final ForkJoinPool pool;
+
+    public OutcomeSimulator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public OutcomeSimulator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Simulates the rest of a started elimination tournament with the
+     * players' current ratings.
+     */
+    public Outcome simulate(Tournament tournament, int trials, long seed) {
+        return simulate(capture(tournament), trials, seed);
+    }
+
+    /**
+     * Simulates the rest of a started elimination tournament with the given
+     * ratings; players without one get the default rating.
+     */
+    public Outcome simulate(Tournament tournament, Map<Player, Double> ratings, int trials, long seed) {
+        return simulate(capture(tournament, ratings), trials, seed);
+    }
+
+    /**
+     * Copies the open part of a started elimination tournament's draw, with
+     * the players' current ratings.
+     */
+    public static Draw capture(Tournament tournament) {
+        Map<Player, Double> ratings = new HashMap<>();
+        for (Player player : tournament.getPlayers()) {
+            ratings.put(player, player.getRating());
+        }
+        return capture(tournament, ratings);
+    }
+
+    /**
+     * Copies the open part of a started elimination tournament's draw, with
+     * the given ratings; players without one get the default rating.
+     */
+    public static Draw capture(Tournament tournament, Map<Player, Double> ratings) {
+        if (!(tournament.getFormat() instanceof Bracket)) {
+            throw new IllegalArgumentException("Only started elimination draws can be simulated: " + tournament);
+        }
+        List<Player> players = tournament.getPlayers();
+        List<String> roundNames = new ArrayList<>();
+        for (int round = 1; round <= tournament.getRoundCount(); round++) {
+            roundNames.add(tournament.getRoundName(round));
+        }
+        return new Draw(plan((Bracket) tournament.getFormat(), players, ratings), players, roundNames);
+    }
+
+    /**
+     * Returns as many completions as the match budget allows for the
+     * draw's open matches, between {@link #MIN_TRIALS} and {@link #DEFAULT_TRIALS}.
+     */
+    public static int defaultTrials(Draw draw) {
+        long trials = MATCH_BUDGET / Math.max(1, draw.getOpenMatchCount());
+        return (int) Math.max(MIN_TRIALS, Math.min(DEFAULT_TRIALS, trials));
+    }
+
+    /**
+     * Simulates the rest of a captured draw.
+     */
+    public Outcome simulate(Draw draw, int trials, long seed) {
+        if (trials < 1) {
+            throw new IllegalArgumentException("Need at least one trial: " + trials);
+        }
+        Plan plan = draw.plan;
+        long[] counts = pool.invoke(new Block(plan, 0, trials, new SplittableRandom(seed)));
+        double[] chances = new double[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            chances[i] = plan.fixedCounts[i] + (double) counts[i] / trials;
+        }
+        return new Outcome(draw.players, draw.roundNames, chances, trials);
+    }
+
+    private static Plan plan(Bracket bracket, List<Player> players, Map<Player, Double> ratings) {
+        Map<Player, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < players.size(); i++) {
+            indexes.put(players.get(i), i);
+        }
+        Plan plan = new Plan();
+        plan.playerCount = players.size();
+        plan.columns = bracket.getRoundCount() + 1;
+        plan.strength = new double[players.size()];
+        for (int i = 0; i < players.size(); i++) {
+            Double rating = ratings.get(players.get(i));
+            plan.strength[i] = Math.pow(10, (rating == null ? RatingEngine.DEFAULT_RATING : rating) / 400);
+        }
+        plan.fixedCounts = new int[players.size() * plan.columns];
+
+        int nodeCount = bracket.getNodeCount();
+        plan.settled = new int[2 * nodeCount];
+        Arrays.fill(plan.settled, -1);
+        for (int slot = bracket.getSize(); slot < 2 * bracket.getSize(); slot++) {
+            plan.settled[2 * slot] = indexOf(indexes, bracket.getSettledWinner(slot));
+        }
+
+        int[] order = bracket.getNodeOrder();
+        int open = 0;
+        int[] openNodes = new int[order.length];
+        for (int node : order) {
+            if (bracket.isSettled(node)) {
+                int winner = indexOf(indexes, bracket.getSettledWinner(node));
+                int loser = indexOf(indexes, bracket.getSettledLoser(node));
+                plan.settled[2 * node] = winner;
+                plan.settled[2 * node + 1] = loser;
+                // The replay is part of the grand final's round, where its players were counted
+                if (node != bracket.getReset()) {
+                    countFixed(plan, winner, bracket.getRoundOf(node));
+                    countFixed(plan, loser, bracket.getRoundOf(node));
+                }
+            } else {
+                openNodes[open++] = node;
+            }
+        }
+
+        plan.node = new int[open];
+        plan.sourceA = new int[open];
+        plan.sourceB = new int[open];
+        plan.round = new int[open];
+        for (int i = 0; i < open; i++) {
+            int node = openNodes[i];
+            plan.node[i] = 2 * node;
+            plan.sourceA[i] = offsetOf(bracket.getSourceA(node));
+            plan.sourceB[i] = offsetOf(bracket.getSourceB(node));
+            plan.round[i] = bracket.getRoundOf(node) - 1;
+        }
+        plan.blockSize = Math.max(1, BLOCK_MATCHES / Math.max(1, open));
+        plan.champion = 2;
+        if (bracket.isDoubleElimination()) {
+            plan.grandFinal = 2 * bracket.getGrandFinal();
+            plan.reset = 2 * bracket.getReset();
+        }
+        return plan;
+    }
+
+    private static int indexOf(Map<Player, Integer> indexes, Player player) {
+        return player == null ? -1 : indexes.get(player);
+    }
+
+    private static int offsetOf(int source) {
+        return source > 0 ? 2 * source : 2 * -source + 1;
+    }
+
+    private static void countFixed(Plan plan, int player, int round) {
+        if (player >= 0 && round > 0) {
+            plan.fixedCounts[player * plan.columns + round - 1]++;
+        }
+    }
+
+    // A range of completions, split in half until it is one block
+    private static final class Block extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Plan plan;
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+
+        Block(Plan plan, int from, int to, SplittableRandom random) {
+            this.plan = plan;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= plan.blockSize) {
+                return run(plan, to - from, random);
+            }
+            int middle = (from + to) >>> 1;
+            Block second = new Block(plan, middle, to, random.split());
+            second.fork();
+            long[] counts = new Block(plan, from, middle, random).compute();
+            long[] secondCounts = second.join();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += secondCounts[i];
+            }
+            return counts;
+        }
+    }
+
+    // Plays the open nodes through the given number of times; nothing is allocated inside the loop
+    private static long[] run(Plan plan, int trials, SplittableRandom random) {
+        long[] counts = new long[plan.playerCount * plan.columns];
+        int[] results = plan.settled.clone();
+        int[] node = plan.node;
+        int[] sourceA = plan.sourceA;
+        int[] sourceB = plan.sourceB;
+        int[] round = plan.round;
+        double[] strength = plan.strength;
+        int columns = plan.columns;
+        int lastRound = columns - 1;
+        int reset = plan.reset;
+        int champion = plan.champion;
+        int grandFinal = plan.grandFinal;
+        // The replay, when still open, comes last and is played after the loop
+        int count = node.length > 0 && node[node.length - 1] == reset ? node.length - 1 : node.length;
+        for (int trial = 0; trial < trials; trial++) {
+            for (int i = 0; i < count; i++) {
+                int a = results[sourceA[i]];
+                int b = results[sourceB[i]];
+                int at = node[i];
+                if (a < 0 || b < 0) {
+                    results[at] = a < 0 ? b : a;
+                    results[at + 1] = -1;
+                    if ((a & b) < 0) {
+                        continue;
+                    }
+                    int player = a < 0 ? b : a;
+                    counts[player * columns + round[i]]++;
+                    continue;
+                }
+                double strengthA = strength[a];
+                int winner = random.nextDouble() * (strengthA + strength[b]) < strengthA ? a : b;
+                results[at] = winner;
+                results[at + 1] = a ^ b ^ winner;
+                counts[a * columns + round[i]]++;
+                counts[b * columns + round[i]]++;
+            }
+            int winner = results[champion];
+            if (grandFinal >= 0 && results[grandFinal] != winner) {
+                if (count < node.length) {
+                    // The losers champion took the grand final, so it is played again
+                    int a = results[grandFinal];
+                    int b = results[grandFinal + 1];
+                    double strengthA = strength[a];
+                    results[reset] = random.nextDouble() * (strengthA + strength[b]) < strengthA ? a : b;
+                }
+                winner = results[reset];
+            }
+            if (winner >= 0) {
+                counts[winner * columns + lastRound]++;
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,364 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Background thread that performs all persistence I/O for {@link DataManager}.
+ *
+ * Callers encode journal records and snapshots on their own thread, so the
+ * captured state is consistent, and hand the bytes over through a bounded
+ * queue. The writer drains whatever has accumulated and commits it as one
+ * group: records are appended with a single gathering write and at most one
+ * fsync, and of several queued snapshots or writes to the same file only the
+ * newest is written, followed by whatever was appended to the file after it.
+ * Under the interval sync policy the writer also wakes up
+ * when records written at the end of a burst are due to be synced, so they
+ * reach the disk within the interval even if nothing else is submitted.
+ */
+public class PersistenceWriter implements Closeable {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final BlockingQueue<Task> queue;
+    private final Thread thread;
+    private final EventJournal journal;
+    private final MatchArchive archive;
+    private final Path dataFile;
+    private volatile boolean closed;
+
+    public PersistenceWriter(EventJournal journal, MatchArchive archive, Path dataFile) {
+        this(journal, archive, dataFile, DEFAULT_CAPACITY);
+    }
+
+    public PersistenceWriter(EventJournal journal, MatchArchive archive, Path dataFile, int capacity) {
+        this.journal = journal;
+        this.archive = archive;
+        this.dataFile = dataFile;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "persistence-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Queue entries
+    private abstract static class Task {
+    }
+
+    private static final class RecordTask extends Task {
+        final ByteBuffer frame;
+
+        RecordTask(ByteBuffer frame) {
+            this.frame = frame;
+        }
+    }
+
+    private static final class SnapshotTask extends Task {
+        final byte[] data;
+        final int archivedRows;
+
+        SnapshotTask(byte[] data, int archivedRows) {
+            this.data = data;
+            this.archivedRows = archivedRows;
+        }
+    }
+
+    private static final class FileTask extends Task {
+        final Path path;
+        final byte[] data; // null deletes the file
+        final boolean append;
+        final Runnable written; // null if nobody waits for it
+
+        FileTask(Path path, byte[] data, boolean append, Runnable written) {
+            this.path = path;
+            this.data = data;
+            this.append = append;
+            this.written = written;
+        }
+    }
+
+    private static final class BarrierTask extends Task {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final boolean durable;
+
+        BarrierTask(boolean durable) {
+            this.durable = durable;
+        }
+    }
+
+    /**
+     * Queues an encoded journal record. Blocks only while the queue is full.
+     */
+    public void submitRecord(ByteBuffer frame) {
+        enqueue(new RecordTask(frame));
+    }
+
+    /**
+     * Queues a snapshot that supersedes every record submitted before it. The
+     * first {@code archivedRows} archive rows are synced before the snapshot is
+     * published, and the journal is emptied after it.
+     */
+    public void submitSnapshot(byte[] data, int archivedRows) {
+        enqueue(new SnapshotTask(data, archivedRows));
+    }
+
+    /**
+     * Queues an atomic replacement of a whole file.
+     */
+    public void submitFile(Path path, byte[] data) {
+        enqueue(new FileTask(path, data, false, null));
+    }
+
+    /**
+     * Queues an atomic replacement of a whole file, and runs {@code written}
+     * on the writer thread once the file is written or superseded by a
+     * newer write. It must not wait for anything that submits to the writer.
+     */
+    public void submitFile(Path path, byte[] data, Runnable written) {
+        enqueue(new FileTask(path, data, false, written));
+    }
+
+    /**
+     * Queues data to append to an existing file, and runs {@code written} on
+     * the writer thread once it is appended or the file is replaced by a
+     * newer write. It must not wait for anything that submits to the writer.
+     */
+    public void submitAppend(Path path, byte[] data, Runnable written) {
+        enqueue(new FileTask(path, data, true, written));
+    }
+
+    /**
+     * Queues the deletion of a file.
+     */
+    public void submitDelete(Path path) {
+        enqueue(new FileTask(path, null, false, null));
+    }
+
+    /**
+     * Waits until everything submitted so far has been written to the files.
+     */
+    public void flush() {
+        awaitBarrier(new BarrierTask(false));
+    }
+
+    /**
+     * Waits until everything submitted so far has been forced to stable storage.
+     */
+    public void awaitDurable() {
+        awaitBarrier(new BarrierTask(true));
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void awaitBarrier(BarrierTask barrier) {
+        if (closed) {
+            return;
+        }
+        enqueue(barrier);
+        try {
+            barrier.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error flushing data: " + e.getCause().getMessage());
+        }
+    }
+
+    private void enqueue(Task task) {
+        if (closed) {
+            throw new IllegalStateException("Persistence writer is closed");
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a write", e);
+        }
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        ByteBuffer[] frames = new ByteBuffer[16];
+
+        while (true) {
+            try {
+                long syncDue = journal != null ? journal.millisUntilSyncDue() : -1;
+                Task task = syncDue < 0 ? queue.take() : queue.poll(syncDue, TimeUnit.MILLISECONDS);
+                if (task == null) {
+                    syncIfDue();
+                    continue;
+                }
+                batch.add(task);
+            } catch (InterruptedException e) {
+                break; // close() interrupts only after the queue has drained
+            }
+            queue.drainTo(batch);
+
+            // Records before the newest snapshot are already contained in it
+            int start = 0;
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (batch.get(i) instanceof SnapshotTask) {
+                    if (writeSnapshot((SnapshotTask) batch.get(i))) {
+                        start = i + 1;
+                    }
+                    break;
+                }
+            }
+
+            int frameCount = 0;
+            boolean durable = false;
+            List<BarrierTask> barriers = new ArrayList<>();
+            // Each file's newest replacement, if any, then what was appended after it
+            Map<Path, List<FileTask>> files = new LinkedHashMap<>();
+            for (int i = 0; i < batch.size(); i++) {
+                Task task = batch.get(i);
+                if (task instanceof FileTask) {
+                    FileTask file = (FileTask) task;
+                    List<FileTask> writes = files.get(file.path);
+                    if (writes == null || !file.append) {
+                        if (writes != null) {
+                            for (FileTask superseded : writes) {
+                                if (superseded.written != null) {
+                                    superseded.written.run();
+                                }
+                            }
+                        }
+                        writes = new ArrayList<>();
+                        files.put(file.path, writes);
+                    }
+                    writes.add(file);
+                } else if (task instanceof BarrierTask) {
+                    barriers.add((BarrierTask) task);
+                    durable |= ((BarrierTask) task).durable;
+                } else if (i >= start && task instanceof RecordTask) {
+                    if (frameCount == frames.length) {
+                        frames = Arrays.copyOf(frames, frameCount * 2);
+                    }
+                    frames[frameCount++] = ((RecordTask) task).frame;
+                }
+            }
+
+            try {
+                if (journal != null && frameCount > 0) {
+                    journal.write(frames, frameCount);
+                }
+                if (journal != null) {
+                    if (durable) {
+                        journal.sync();
+                    } else {
+                        journal.syncIfDue();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing journal: " + e.getMessage());
+            }
+            for (List<FileTask> writes : files.values()) {
+                writeFile(writes);
+                for (FileTask file : writes) {
+                    if (file.written != null) {
+                        file.written.run();
+                    }
+                }
+            }
+
+            Arrays.fill(frames, 0, frameCount, null);
+            for (BarrierTask barrier : barriers) {
+                barrier.done.complete(null);
+            }
+            batch.clear();
+        }
+    }
+
+    // Syncs the records of a burst once nothing more has arrived within the interval
+    private void syncIfDue() {
+        try {
+            journal.syncIfDue();
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+        }
+    }
+
+    private boolean writeSnapshot(SnapshotTask task) {
+        try {
+            if (archive != null) {
+                archive.sync(task.archivedRows);
+            }
+            replaceFile(dataFile, task.data);
+            if (journal != null) {
+                journal.reset();
+            }
+            return true;
+        } catch (IOException e) {
+            // The journal keeps every record since the last good snapshot
+            System.err.println("Error saving data: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeFile(List<FileTask> writes) {
+        Path path = writes.get(0).path;
+        try {
+            int appended = 0;
+            for (FileTask task : writes) {
+                if (task.append) {
+                    appended++;
+                } else if (task.data == null) {
+                    Files.deleteIfExists(path);
+                } else {
+                    replaceFile(path, task.data);
+                }
+            }
+            if (appended > 0) {
+                appendFile(path, writes.subList(writes.size() - appended, writes.size()));
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing " + path + ": " + e.getMessage());
+        }
+    }
+
+    // Appends with one gathering write and one fsync; the file must exist already
+    private static void appendFile(Path path, List<FileTask> appends) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[appends.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(appends.get(i).data);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static void replaceFile(Path path, byte[] data) throws IOException {
+        Path temp = Paths.get(path + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes everything still queued, forces it to disk and stops the thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        awaitDurable();
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -5,16 +5,26 @@ import java.util.UUID;
 
 /**
  * Represents a table tennis player with statistics
+ *
+ * Statistics are read and updated under the player's monitor, so scoring
+ * sessions on several tables can record matches for the same player.
  */
 public class Player implements Serializable {
     private static final long serialVersionUID = 1L;
     
     private String id;
-    private String name;
+    private volatile String name;
+    private volatile String club; // null for none; separates clubmates in draws
     private int wins;
     private int losses;
+    private int gamesWon;
+    private int gamesLost;
     private int totalPointsScored;
     private int totalPointsConceded;
+    private int pointMatches; // Matches scored point by point
+    private double rating = RatingEngine.DEFAULT_RATING;
+    private double ratingDeviation = RatingEngine.DEFAULT_DEVIATION;
+    private double eloRating = RatingEngine.DEFAULT_RATING;
     
     public Player(String name) {
         this.id = UUID.randomUUID().toString();
@@ -25,41 +35,86 @@ public class Player implements Serializable {
         this.totalPointsConceded = 0;
     }
     
+    // Restores a player read back from persistent storage
+    Player(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+    
     // Getters
     public String getId() { return id; }
     public String getName() { return name; }
-    public int getWins() { return wins; }
-    public int getLosses() { return losses; }
-    public int getTotalPointsScored() { return totalPointsScored; }
-    public int getTotalPointsConceded() { return totalPointsConceded; }
+    public String getClub() { return club; }
+    public synchronized int getWins() { return wins; }
+    public synchronized int getLosses() { return losses; }
+    public synchronized int getGamesWon() { return gamesWon; }
+    public synchronized int getGamesLost() { return gamesLost; }
+    public synchronized int getTotalPointsScored() { return totalPointsScored; }
+    public synchronized int getTotalPointsConceded() { return totalPointsConceded; }
+    public synchronized int getPointMatches() { return pointMatches; }
+    public synchronized double getRating() { return rating; }
+    public synchronized double getRatingDeviation() { return ratingDeviation; }
+    public synchronized double getEloRating() { return eloRating; }
     
-    public int getTotalMatches() {
+    public synchronized int getTotalMatches() {
         return wins + losses;
     }
     
-    public double getWinRate() {
+    public synchronized double getWinRate() {
         int total = getTotalMatches();
         return total == 0 ? 0.0 : (double) wins / total * 100;
     }
     
-    public double getAveragePointsPerMatch() {
-        int total = getTotalMatches();
-        return total == 0 ? 0.0 : (double) totalPointsScored / total;
+    public synchronized double getAveragePointsPerMatch() {
+        return pointMatches == 0 ? 0.0 : (double) totalPointsScored / pointMatches;
     }
     
     // Setters
     public void setName(String name) { this.name = name; }
+    public void setClub(String club) { this.club = club; }
+    
+    // Restores statistics read back from persistent storage
+    synchronized void restoreStats(int wins, int losses, int totalPointsScored, int totalPointsConceded, int pointMatches) {
+        this.wins = wins;
+        this.losses = losses;
+        this.totalPointsScored = totalPointsScored;
+        this.totalPointsConceded = totalPointsConceded;
+        this.pointMatches = pointMatches;
+    }
     
-    public void recordWin(int pointsScored, int pointsConceded) {
+    synchronized void restoreGames(int gamesWon, int gamesLost) {
+        this.gamesWon = gamesWon;
+        this.gamesLost = gamesLost;
+    }
+    
+    // Publishes ratings computed by the rating engine
+    synchronized void updateRatings(double rating, double ratingDeviation, double eloRating) {
+        this.rating = rating;
+        this.ratingDeviation = ratingDeviation;
+        this.eloRating = eloRating;
+    }
+    
+    // A match without points, scored game by game, only counts as a win or loss
+    public synchronized void recordWin(int gamesWon, int gamesLost, int pointsScored, int pointsConceded) {
         this.wins++;
-        this.totalPointsScored += pointsScored;
-        this.totalPointsConceded += pointsConceded;
+        this.gamesWon += gamesWon;
+        this.gamesLost += gamesLost;
+        recordPoints(pointsScored, pointsConceded);
     }
     
-    public void recordLoss(int pointsScored, int pointsConceded) {
+    public synchronized void recordLoss(int gamesWon, int gamesLost, int pointsScored, int pointsConceded) {
         this.losses++;
-        this.totalPointsScored += pointsScored;
-        this.totalPointsConceded += pointsConceded;
+        this.gamesWon += gamesWon;
+        this.gamesLost += gamesLost;
+        recordPoints(pointsScored, pointsConceded);
+    }
+    
+    private void recordPoints(int pointsScored, int pointsConceded) {
+        if (pointsScored + pointsConceded > 0) {
+            this.pointMatches++;
+            this.totalPointsScored += pointsScored;
+            this.totalPointsConceded += pointsConceded;
+        }
     }
     
     @Override
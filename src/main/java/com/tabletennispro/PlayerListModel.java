@@ -0,0 +1,121 @@
+package com.tabletennispro;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * List model over the registered players. Changes arrive as single-row
+ * events from the data manager and are applied to the model's own list of
+ * rows on the Swing event thread, so the size and the rows the list sees
+ * always agree, however far the data manager has moved on.
+ *
+ * Events are queued in the order they are sent, under the data manager's
+ * write lock, and applied in that order. A snapshot of the rows is taken
+ * under the read lock and drops the changes still queued, since it already
+ * includes them.
+ */
+final class PlayerListModel extends AbstractListModel<Player> implements DataManager.PlayerListener {
+    private static final long serialVersionUID = 1L;
+
+    private final DataManager dataManager;
+    // Changes not yet applied, oldest first
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    // Rows as of the last change applied; only used on the event thread
+    private List<Player> rows;
+
+    PlayerListModel(DataManager dataManager) {
+        this.dataManager = dataManager;
+        dataManager.addPlayerListener(this);
+        snapshot();
+    }
+
+    /**
+     * Stops following the data manager, for models of windows that are closed.
+     */
+    void close() {
+        dataManager.removePlayerListener(this);
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public Player getElementAt(int index) {
+        return rows.get(index);
+    }
+
+    // Reads the rows afresh; they include every change still queued
+    private void snapshot() {
+        rows = dataManager.readPlayers(() -> {
+            pending.clear();
+            return dataManager.getAllPlayers();
+        });
+    }
+
+    // Listener methods, called on the thread that changed the players
+
+    @Override
+    public void playerAdded(int index, Player player) {
+        post(pending, () -> {
+            rows.add(index, player);
+            fireIntervalAdded(this, index, index);
+        });
+    }
+
+    @Override
+    public void playerChanged(int index, Player player) {
+        post(pending, () -> fireContentsChanged(this, index, index));
+    }
+
+    @Override
+    public void playerRemoved(int index, Player player) {
+        post(pending, () -> {
+            rows.remove(index);
+            fireIntervalRemoved(this, index, index);
+        });
+    }
+
+    @Override
+    public void rankChanged(Leaderboard.Metric metric, Player player, int fromRank, int toRank) {
+    }
+
+    @Override
+    public void playersReloaded() {
+        post(pending, () -> {
+            int previous = rows.size();
+            snapshot();
+            int size = rows.size();
+            if (size < previous) {
+                fireIntervalRemoved(this, size, previous - 1);
+            } else if (size > previous) {
+                fireIntervalAdded(this, previous, size - 1);
+            }
+            if (Math.min(size, previous) > 0) {
+                fireContentsChanged(this, 0, Math.min(size, previous) - 1);
+            }
+        });
+    }
+
+    // Queues a change and applies it, with any queued before it, on the event thread
+    static void post(Queue<Runnable> pending, Runnable change) {
+        pending.add(change);
+        onEventThread(() -> {
+            Runnable next;
+            while ((next = pending.poll()) != null) {
+                next.run();
+            }
+        });
+    }
+
+    static void onEventThread(Runnable update) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            update.run();
+        } else {
+            SwingUtilities.invokeLater(update);
+        }
+    }
+}
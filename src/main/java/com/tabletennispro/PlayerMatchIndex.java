@@ -0,0 +1,217 @@
+package com.tabletennispro;
+
+import java.util.*;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Maps each player to the global positions of their matches, ordered by match
+ * time.
+ *
+ * Positions are kept in plain int arrays, one per player. Entries below a
+ * published size are never changed in place: appends write past it and
+ * out-of-order inserts copy the array, so {@link MatchRefs} handed out earlier
+ * stay valid while the index keeps growing.
+ */
+public class PlayerMatchIndex {
+    private final IntToLongFunction timeOf;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<Entry> unsorted = new HashSet<>();
+
+    private static final class Entry {
+        int[] positions = new int[4];
+        int size;
+        // Length of the prefix known to be in time order
+        int ordered;
+    }
+
+    /**
+     * @param timeOf returns the time of the match at a global position, in epoch milliseconds
+     */
+    public PlayerMatchIndex(IntToLongFunction timeOf) {
+        this.timeOf = timeOf;
+    }
+
+    /**
+     * Adds a match position to a player, keeping the player's matches in time order.
+     */
+    public void add(String playerId, int position) {
+        Entry entry = entries.computeIfAbsent(playerId, id -> new Entry());
+        long time = timeOf.applyAsLong(position);
+        boolean inOrder = entry.ordered == entry.size;
+        if (entry.size == 0 || time >= timeOf.applyAsLong(entry.positions[entry.size - 1])) {
+            append(entry, position);
+            if (inOrder) {
+                entry.ordered = entry.size;
+            }
+            return;
+        }
+
+        // Insert after the last match with the same or an earlier time, into a fresh array
+        int low = 0;
+        int high = entry.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeOf.applyAsLong(entry.positions[mid]) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int[] positions = new int[Math.max(entry.size + 1, entry.positions.length)];
+        System.arraycopy(entry.positions, 0, positions, 0, low);
+        positions[low] = position;
+        System.arraycopy(entry.positions, low, positions, low + 1, entry.size - low);
+        entry.positions = positions;
+        entry.size++;
+        if (inOrder) {
+            entry.ordered = entry.size;
+        }
+    }
+
+    /**
+     * Appends a match position without ordering it; used while adding many
+     * matches at once. {@link #sortPending} must be called afterwards.
+     */
+    public void addUnordered(String playerId, int position) {
+        Entry entry = entries.computeIfAbsent(playerId, id -> new Entry());
+        boolean inOrder = entry.ordered == entry.size && (entry.size == 0
+            || timeOf.applyAsLong(position) >= timeOf.applyAsLong(entry.positions[entry.size - 1]));
+        append(entry, position);
+        if (inOrder) {
+            entry.ordered = entry.size;
+        } else {
+            unsorted.add(entry);
+        }
+    }
+
+    /**
+     * Restores time order for players that received out-of-order matches
+     * through {@link #addUnordered}. Only the matches added since the last
+     * call are sorted, then merged into the ordered prefix, so the cost of a
+     * batch does not grow with the length of a player's history.
+     */
+    public void sortPending() {
+        for (Entry entry : unsorted) {
+            long[] times = new long[entry.size];
+            for (int i = 0; i < entry.size; i++) {
+                times[i] = timeOf.applyAsLong(entry.positions[i]);
+            }
+            // The unordered tail has not been handed out yet, so it is sorted in place
+            mergeSort(entry.positions, times, entry.ordered, entry.size);
+            if (entry.ordered > 0 && times[entry.ordered] < times[entry.ordered - 1]) {
+                int[] positions = Arrays.copyOf(entry.positions, entry.positions.length);
+                mergeTail(positions, times, entry.ordered, entry.size);
+                entry.positions = positions;
+            }
+            entry.ordered = entry.size;
+        }
+        unsorted.clear();
+    }
+
+    public void remove(String playerId) {
+        Entry entry = entries.remove(playerId);
+        if (entry != null) {
+            unsorted.remove(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        unsorted.clear();
+    }
+
+    /**
+     * Returns the player's match positions within {@code [fromMillis, toMillis)}.
+     */
+    public MatchRefs range(String playerId, long fromMillis, long toMillis) {
+        Entry entry = entries.get(playerId);
+        if (entry == null) {
+            return MatchRefs.NONE;
+        }
+        int from = lowerBound(entry, fromMillis);
+        return new MatchRefs(entry.positions, from, Math.max(from, lowerBound(entry, toMillis)));
+    }
+
+    private int lowerBound(Entry entry, long millis) {
+        int low = 0;
+        int high = entry.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeOf.applyAsLong(entry.positions[mid]) < millis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the player's match positions in time order.
+     */
+    public MatchRefs get(String playerId) {
+        Entry entry = entries.get(playerId);
+        return entry == null ? MatchRefs.NONE : new MatchRefs(entry.positions, 0, entry.size);
+    }
+
+    private static void append(Entry entry, int position) {
+        if (entry.size == entry.positions.length) {
+            entry.positions = Arrays.copyOf(entry.positions, entry.size * 2);
+        }
+        entry.positions[entry.size++] = position;
+    }
+
+    // Stable bottom-up merge sort of positions from..to - 1 by their times; sorts both arrays
+    static void mergeSort(int[] positions, long[] times, int from, int to) {
+        int[] positionBuffer = new int[Math.max(0, to - from)];
+        long[] timeBuffer = new long[positionBuffer.length];
+        for (int width = 1; width < to - from; width *= 2) {
+            for (int low = from; low < to - width; low += 2 * width) {
+                merge(positions, times, low, low + width, Math.min(low + 2 * width, to), positionBuffer, timeBuffer);
+            }
+        }
+    }
+
+    // Merges the sorted tail ordered..size - 1 into the sorted prefix, touching only the overlap
+    static void mergeTail(int[] positions, long[] times, int ordered, int size) {
+        long first = times[ordered];
+        int low = 0;
+        int high = ordered;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= first) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        merge(positions, times, low, ordered, size, new int[size - low], new long[size - low]);
+    }
+
+    // Merges the sorted runs low..mid - 1 and mid..high - 1, the left run first on equal times
+    private static void merge(int[] positions, long[] times, int low, int mid, int high,
+            int[] positionBuffer, long[] timeBuffer) {
+        int left = low;
+        int right = mid;
+        int out = 0;
+        while (left < mid && right < high) {
+            if (times[right] < times[left]) {
+                timeBuffer[out] = times[right];
+                positionBuffer[out++] = positions[right++];
+            } else {
+                timeBuffer[out] = times[left];
+                positionBuffer[out++] = positions[left++];
+            }
+        }
+        while (left < mid) {
+            timeBuffer[out] = times[left];
+            positionBuffer[out++] = positions[left++];
+        }
+        while (right < high) {
+            timeBuffer[out] = times[right];
+            positionBuffer[out++] = positions[right++];
+        }
+        System.arraycopy(timeBuffer, 0, times, low, out);
+        System.arraycopy(positionBuffer, 0, positions, low, out);
+    }
+}
@@ -0,0 +1,133 @@
+package com.tabletennispro;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Table model of the player statistics in leaderboard order. The model keeps
+ * its own list of the ranked players, changed on the Swing event thread as
+ * rank changes arrive from the data manager, in the order they were made, so
+ * the row count and the rows always agree. Cells are formatted only when the
+ * table asks for them, so only the rows on screen cost anything. A result
+ * moves its players in the ranking; the rows from their old rank to their
+ * new one are repainted and the rest of the table is left alone.
+ */
+final class PlayerStatsTableModel extends AbstractTableModel implements DataManager.PlayerListener {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {
+        "Rank", "Player", "Rating", "Matches", "Wins", "Losses", "Win Rate", "Avg Points/Match"
+    };
+
+    private final DataManager dataManager;
+    // Changes not yet applied, oldest first
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private Leaderboard.Metric metric;
+    // Ranked players as of the last change applied; only used on the event thread
+    private List<Player> rows;
+
+    PlayerStatsTableModel(DataManager dataManager, Leaderboard.Metric metric) {
+        this.dataManager = dataManager;
+        this.metric = metric;
+        dataManager.addPlayerListener(this);
+        snapshot();
+    }
+
+    void setMetric(Leaderboard.Metric metric) {
+        this.metric = metric;
+        reload();
+    }
+
+    /**
+     * Reads everything again, for when the statistics should be refreshed in full.
+     */
+    void reload() {
+        snapshot();
+        fireTableDataChanged();
+    }
+
+    // Reads the ranking afresh; it includes every change still queued
+    private void snapshot() {
+        rows = dataManager.readPlayers(() -> {
+            pending.clear();
+            Leaderboard leaderboard = dataManager.getLeaderboard(metric);
+            return leaderboard.getPage(1, leaderboard.size());
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Player player = rows.get(row);
+        switch (column) {
+            case 0: return row + 1;
+            case 1: return player.getName();
+            case 2: return String.format("%.0f \u00b1 %.0f", player.getRating(), player.getRatingDeviation());
+            case 3: return player.getTotalMatches();
+            case 4: return player.getWins();
+            case 5: return player.getLosses();
+            case 6: return String.format("%.1f%%", player.getWinRate());
+            default: return String.format("%.1f", player.getAveragePointsPerMatch());
+        }
+    }
+
+    // Listener methods, called on the thread that changed the players
+
+    @Override
+    public void playerAdded(int index, Player player) {
+    }
+
+    @Override
+    public void playerChanged(int index, Player player) {
+        PlayerListModel.post(pending, () -> {
+            int row = rows.indexOf(player);
+            if (row >= 0) {
+                fireTableRowsUpdated(row, row);
+            }
+        });
+    }
+
+    @Override
+    public void playerRemoved(int index, Player player) {
+    }
+
+    @Override
+    public void rankChanged(Leaderboard.Metric metric, Player player, int fromRank, int toRank) {
+        // Checked on the event thread, where the metric is changed
+        PlayerListModel.post(pending, () -> {
+            if (metric != this.metric) {
+                return;
+            }
+            if (fromRank == 0 && toRank > 0) {
+                rows.add(toRank - 1, player);
+                fireTableRowsInserted(toRank - 1, toRank - 1);
+            } else if (fromRank > 0 && toRank == 0) {
+                rows.remove(fromRank - 1);
+                fireTableRowsDeleted(fromRank - 1, fromRank - 1);
+            } else if (fromRank > 0) {
+                rows.add(toRank - 1, rows.remove(fromRank - 1));
+                fireTableRowsUpdated(Math.min(fromRank, toRank) - 1, Math.max(fromRank, toRank) - 1);
+            }
+        });
+    }
+
+    @Override
+    public void playersReloaded() {
+        PlayerListModel.post(pending, this::reload);
+    }
+}
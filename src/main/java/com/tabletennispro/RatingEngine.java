@@ -0,0 +1,449 @@
+package com.tabletennispro;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Computes Elo and Glicko-2 ratings from completed matches.
+ *
+ * Glicko-2 groups games into rating periods of fixed length. Within a period
+ * every game is rated against the opponent's rating at the start of the
+ * period, so a player only needs two running sums to know their rating after
+ * each game; recording a match is O(1). When a player's next game falls in a
+ * later period, the sums are folded into a new starting rating and the
+ * deviation grows for the periods they sat out.
+ *
+ * Because games within a period do not affect each other, {@link #rebuild}
+ * rates all players of one period in parallel and only walks the periods in
+ * sequence. Recording matches in time order gives exactly the same ratings as
+ * rebuilding from them.
+ *
+ * Player state is kept in primitive arrays indexed by the order in which
+ * players were first seen, and the rating history is a float array indexed by
+ * global match position.
+ */
+public class RatingEngine {
+    public static final double DEFAULT_RATING = 1500;
+    public static final double DEFAULT_DEVIATION = 350;
+    public static final long DEFAULT_PERIOD_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final double GLICKO2_SCALE = 173.7178;
+    private static final double CONVERGENCE = 0.000001;
+    // Periods with fewer players than this are rated on the calling thread
+    private static final int PARALLEL_THRESHOLD = 512;
+    // Rating and deviation after the match, for player 1 then player 2
+    private static final int HISTORY_STRIDE = 4;
+    private static final long NO_PERIOD = Long.MIN_VALUE;
+
+    /**
+     * The tunable constants of both rating systems.
+     */
+    public static final class Parameters {
+        public static final Parameters DEFAULT = new Parameters(DEFAULT_PERIOD_MILLIS, 0.5, DEFAULT_DEVIATION, 0.06, 32);
+
+        private final long periodMillis;
+        private final double tau;
+        private final double initialDeviation;
+        private final double initialVolatility;
+        private final double eloK;
+
+        /**
+         * @param periodMillis length of a Glicko-2 rating period
+         * @param tau constrains how fast volatility changes; Glickman suggests 0.3 to 1.2
+         * @param initialDeviation rating deviation of a new player, also the upper limit
+         * @param initialVolatility Glicko-2 volatility of a new player
+         * @param eloK Elo K-factor
+         */
+        public Parameters(long periodMillis, double tau, double initialDeviation, double initialVolatility, double eloK) {
+            if (periodMillis <= 0 || tau <= 0 || initialDeviation <= 0 || initialVolatility <= 0 || eloK <= 0) {
+                throw new IllegalArgumentException("Rating parameters must be positive");
+            }
+            this.periodMillis = periodMillis;
+            this.tau = tau;
+            this.initialDeviation = initialDeviation;
+            this.initialVolatility = initialVolatility;
+            this.eloK = eloK;
+        }
+
+        public long getPeriodMillis() { return periodMillis; }
+        public double getTau() { return tau; }
+        public double getInitialDeviation() { return initialDeviation; }
+        public double getInitialVolatility() { return initialVolatility; }
+        public double getEloK() { return eloK; }
+
+        @Override
+        public String toString() {
+            return String.format("period %.1f days, tau %.2f, deviation %.0f, volatility %.3f, K %.0f",
+                periodMillis / 86_400_000.0, tau, initialDeviation, initialVolatility, eloK);
+        }
+    }
+
+    private final Parameters parameters;
+    private final double maxPhi;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int playerCount;
+
+    // Glicko-2 state on the internal scale at the start of each player's open period
+    private double[] mu = new double[16];
+    private double[] phi = new double[16];
+    private double[] sigma = new double[16];
+    private long[] period = new long[16];
+    // Running sums over the open period: the inverse of the estimated variance and
+    // the score surplus, both weighted by the opponent's deviation
+    private double[] varianceSum = new double[16];
+    private double[] improvementSum = new double[16];
+    private double[] elo = new double[16];
+
+    private float[] history = new float[1024 * HISTORY_STRIDE];
+
+    public RatingEngine() {
+        this(Parameters.DEFAULT);
+    }
+
+    public RatingEngine(Parameters parameters) {
+        this.parameters = parameters;
+        this.maxPhi = parameters.initialDeviation / GLICKO2_SCALE;
+    }
+
+    public Parameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Returns the index of a player, adding them with default ratings if they
+     * have not been seen yet.
+     */
+    public int indexOf(String playerId) {
+        Integer index = indexes.get(playerId);
+        if (index != null) {
+            return index;
+        }
+        if (playerCount == mu.length) {
+            int capacity = playerCount * 2;
+            mu = Arrays.copyOf(mu, capacity);
+            phi = Arrays.copyOf(phi, capacity);
+            sigma = Arrays.copyOf(sigma, capacity);
+            period = Arrays.copyOf(period, capacity);
+            varianceSum = Arrays.copyOf(varianceSum, capacity);
+            improvementSum = Arrays.copyOf(improvementSum, capacity);
+            elo = Arrays.copyOf(elo, capacity);
+        }
+        reset(playerCount);
+        indexes.put(playerId, playerCount);
+        return playerCount++;
+    }
+
+    /**
+     * Rates one completed match. Matches should arrive in time order; one that
+     * is older than either player's latest match is rated in that player's
+     * current period instead, until the next {@link #rebuild}.
+     */
+    public void record(int position, String player1Id, String player2Id, boolean player1Won, long epochMillis) {
+        int player1 = indexOf(player1Id);
+        int player2 = indexOf(player2Id);
+        rate(player1, player2, player1Won, epochMillis);
+        ensureHistory(position);
+        writeHistory(position, 0, player1);
+        writeHistory(position, 1, player2);
+    }
+
+    // Rates a match between indexed players without recording history
+    void rate(int player1, int player2, boolean player1Won, long epochMillis) {
+        startPeriod(player1, player2, epochMillis);
+        double score = player1Won ? 1 : 0;
+        accumulate(player1, player2, score);
+        accumulate(player2, player1, 1 - score);
+        recordElo(player1, player2, score);
+    }
+
+    /**
+     * Returns the chance Glicko-2 gives player 1 of winning a match at the
+     * given time, from both players' ratings at the start of its period.
+     */
+    double predictGlicko(int player1, int player2, long epochMillis) {
+        startPeriod(player1, player2, epochMillis);
+        double combinedPhi = Math.sqrt(phi[player1] * phi[player1] + phi[player2] * phi[player2]);
+        return expected(mu[player1], mu[player2], g(combinedPhi));
+    }
+
+    double predictElo(int player1, int player2) {
+        return 1 / (1 + Math.pow(10, (elo[player2] - elo[player1]) / 400));
+    }
+
+    // Moves both players into the period of a match, or the later of their open periods
+    private void startPeriod(int player1, int player2, long epochMillis) {
+        long target = Math.max(Math.floorDiv(epochMillis, parameters.periodMillis),
+            Math.max(period[player1], period[player2]));
+        rollTo(player1, target);
+        rollTo(player2, target);
+    }
+
+    /**
+     * Recomputes every rating from scratch. Elo is replayed on a separate task
+     * while the Glicko-2 periods are processed, each one rating its players in
+     * parallel.
+     */
+    public void rebuild(MatchHistory matchHistory) {
+        int[] indexes = new int[matchHistory.getPlayerCount()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = indexOf(matchHistory.getPlayerId(i));
+        }
+        int count = matchHistory.size();
+        int[] positions = matchHistory.positions;
+        int[] player1 = new int[count];
+        int[] player2 = new int[count];
+        for (int i = 0; i < count; i++) {
+            player1[i] = indexes[matchHistory.player1[i]];
+            player2[i] = indexes[matchHistory.player2[i]];
+        }
+        boolean[] player1Won = matchHistory.player1Won;
+        long[] epochMillis = matchHistory.epochMillis;
+        for (int i = 0; i < playerCount; i++) {
+            reset(i);
+        }
+        int maxPosition = -1;
+        for (int i = 0; i < count; i++) {
+            maxPosition = Math.max(maxPosition, positions[i]);
+        }
+        history = new float[Math.max(1024, maxPosition + 1) * HISTORY_STRIDE];
+
+        ForkJoinTask<?> eloTask = ForkJoinPool.commonPool().submit(() -> {
+            for (int i = 0; i < count; i++) {
+                recordElo(player1[i], player2[i], player1Won[i] ? 1 : 0);
+            }
+        });
+
+        int start = 0;
+        while (start < count) {
+            long current = Math.floorDiv(epochMillis[start], parameters.periodMillis);
+            int end = start + 1;
+            while (end < count && Math.floorDiv(epochMillis[end], parameters.periodMillis) == current) {
+                end++;
+            }
+            ratePeriod(current, start, end, positions, player1, player2, player1Won);
+            start = end;
+        }
+        eloTask.join();
+    }
+
+    // Rates the matches [start, end) of one period. Each match is entered once per
+    // player; sorting the entries by player while keeping match order lets every
+    // player fold in their games independently of the others.
+    private void ratePeriod(long current, int start, int end, int[] positions, int[] player1, int[] player2,
+                            boolean[] player1Won) {
+        int entryCount = (end - start) * 2;
+        long[] entries = new long[entryCount];
+        for (int i = start; i < end; i++) {
+            int entry = (i - start) * 2;
+            entries[entry] = (long) player1[i] << 32 | entry;
+            entries[entry + 1] = (long) player2[i] << 32 | (entry + 1);
+        }
+        if (entryCount >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(entries);
+        } else {
+            Arrays.sort(entries);
+        }
+
+        // Index at which each player's run of entries begins
+        int runCount = 0;
+        int[] runs = new int[entryCount + 1];
+        for (int i = 0; i < entryCount; i++) {
+            if (i == 0 || entries[i] >>> 32 != entries[i - 1] >>> 32) {
+                runs[runCount++] = i;
+            }
+        }
+        runs[runCount] = entryCount;
+
+        // Every player's period must start before anyone reads an opponent's rating
+        IntStream runIndexes = IntStream.range(0, runCount);
+        if (runCount >= PARALLEL_THRESHOLD) {
+            runIndexes = runIndexes.parallel();
+        }
+        runIndexes.forEach(run -> rollTo((int) (entries[runs[run]] >>> 32), current));
+
+        runIndexes = IntStream.range(0, runCount);
+        if (runCount >= PARALLEL_THRESHOLD) {
+            runIndexes = runIndexes.parallel();
+        }
+        runIndexes.forEach(run -> {
+            for (int i = runs[run]; i < runs[run + 1]; i++) {
+                int entry = (int) entries[i];
+                int match = start + entry / 2;
+                int side = entry % 2;
+                int player = side == 0 ? player1[match] : player2[match];
+                int opponent = side == 0 ? player2[match] : player1[match];
+                accumulate(player, opponent, player1Won[match] == (side == 0) ? 1 : 0);
+                writeHistory(positions[match], side, player);
+            }
+        });
+    }
+
+    // Rating queries, on the usual Glicko scale
+
+    public double getRating(String playerId) {
+        Integer index = indexes.get(playerId);
+        return index == null ? DEFAULT_RATING : toRating(currentMu(index));
+    }
+
+    public double getDeviation(String playerId) {
+        Integer index = indexes.get(playerId);
+        return index == null ? parameters.initialDeviation : currentPhi(index) * GLICKO2_SCALE;
+    }
+
+    public double getEloRating(String playerId) {
+        Integer index = indexes.get(playerId);
+        return index == null ? DEFAULT_RATING : elo[index];
+    }
+
+    /**
+     * Returns a player's rating right after the match at a global position;
+     * side 0 is player 1 and side 1 is player 2.
+     */
+    public double getRatingAfter(int position, int side) {
+        return history[position * HISTORY_STRIDE + side * 2];
+    }
+
+    public double getDeviationAfter(int position, int side) {
+        return history[position * HISTORY_STRIDE + side * 2 + 1];
+    }
+
+    // Glicko-2
+
+    private void reset(int index) {
+        mu[index] = 0;
+        phi[index] = maxPhi;
+        sigma[index] = parameters.initialVolatility;
+        period[index] = NO_PERIOD;
+        varianceSum[index] = 0;
+        improvementSum[index] = 0;
+        elo[index] = DEFAULT_RATING;
+    }
+
+    // Closes the player's open period and opens the given one
+    private void rollTo(int index, long target) {
+        long open = period[index];
+        if (open == target) {
+            return;
+        }
+        period[index] = target;
+        if (open == NO_PERIOD) {
+            return;
+        }
+        long idle = target - open;
+        if (varianceSum[index] > 0) {
+            double[] updated = update(index);
+            mu[index] = updated[0];
+            phi[index] = updated[1];
+            sigma[index] = updated[2];
+            varianceSum[index] = 0;
+            improvementSum[index] = 0;
+            idle--;
+        }
+        if (idle > 0) {
+            double s = sigma[index];
+            phi[index] = Math.min(Math.sqrt(phi[index] * phi[index] + idle * s * s), maxPhi);
+        }
+    }
+
+    private void accumulate(int index, int opponent, double score) {
+        double g = g(phi[opponent]);
+        double expected = expected(mu[index], mu[opponent], g);
+        varianceSum[index] += g * g * expected * (1 - expected);
+        improvementSum[index] += g * (score - expected);
+    }
+
+    private double currentMu(int index) {
+        return varianceSum[index] > 0 ? update(index)[0] : mu[index];
+    }
+
+    private double currentPhi(int index) {
+        return varianceSum[index] > 0 ? update(index)[1] : phi[index];
+    }
+
+    private void writeHistory(int position, int side, int index) {
+        double[] updated = varianceSum[index] > 0 ? update(index) : new double[] { mu[index], phi[index] };
+        int offset = position * HISTORY_STRIDE + side * 2;
+        history[offset] = (float) toRating(updated[0]);
+        history[offset + 1] = (float) (updated[1] * GLICKO2_SCALE);
+    }
+
+    private void ensureHistory(int position) {
+        if ((position + 1) * HISTORY_STRIDE > history.length) {
+            history = Arrays.copyOf(history, Math.max(history.length * 2, (position + 1) * HISTORY_STRIDE));
+        }
+    }
+
+    private static double toRating(double mu) {
+        return mu * GLICKO2_SCALE + DEFAULT_RATING;
+    }
+
+    private static double g(double phi) {
+        return 1 / Math.sqrt(1 + 3 * phi * phi / (Math.PI * Math.PI));
+    }
+
+    private static double expected(double mu, double opponentMu, double g) {
+        return 1 / (1 + Math.exp(-g * (mu - opponentMu)));
+    }
+
+    private double[] update(int index) {
+        return update(mu[index], phi[index], sigma[index], varianceSum[index], improvementSum[index], parameters.tau);
+    }
+
+    // Applies one period's games to a starting rating; returns mu, phi and sigma
+    private static double[] update(double mu, double phi, double sigma, double varianceSum, double improvementSum,
+                                   double tau) {
+        double v = 1 / varianceSum;
+        double delta = v * improvementSum;
+
+        // New volatility by the Illinois method, as in step 5 of Glickman's paper
+        double phiSquared = phi * phi;
+        double a = Math.log(sigma * sigma);
+        double low = a;
+        double high;
+        if (delta * delta > phiSquared + v) {
+            high = Math.log(delta * delta - phiSquared - v);
+        } else {
+            int k = 1;
+            while (volatilityFunction(a - k * tau, delta, phiSquared, v, a, tau) < 0) {
+                k++;
+            }
+            high = a - k * tau;
+        }
+        double fLow = volatilityFunction(low, delta, phiSquared, v, a, tau);
+        double fHigh = volatilityFunction(high, delta, phiSquared, v, a, tau);
+        while (Math.abs(high - low) > CONVERGENCE) {
+            double next = low + (low - high) * fLow / (fHigh - fLow);
+            double fNext = volatilityFunction(next, delta, phiSquared, v, a, tau);
+            if (fNext * fHigh <= 0) {
+                low = high;
+                fLow = fHigh;
+            } else {
+                fLow /= 2;
+            }
+            high = next;
+            fHigh = fNext;
+        }
+        double newSigma = Math.exp(low / 2);
+
+        double phiStar = Math.sqrt(phiSquared + newSigma * newSigma);
+        double newPhi = 1 / Math.sqrt(1 / (phiStar * phiStar) + varianceSum);
+        return new double[] { mu + newPhi * newPhi * improvementSum, newPhi, newSigma };
+    }
+
+    private static double volatilityFunction(double x, double delta, double phiSquared, double v, double a,
+                                             double tau) {
+        double ex = Math.exp(x);
+        double denominator = phiSquared + v + ex;
+        return ex * (delta * delta - phiSquared - v - ex) / (2 * denominator * denominator) - (x - a) / (tau * tau);
+    }
+
+    // Elo
+
+    private void recordElo(int player1, int player2, double score) {
+        double change = parameters.eloK * (score - predictElo(player1, player2));
+        elo[player1] += change;
+        elo[player2] -= change;
+    }
+}
@@ -0,0 +1,130 @@
+package com.tabletennispro;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Replays a match history under different rating parameters and measures how
+ * well each set predicted the results.
+ *
+ * Before every match the replay asks both rating systems for the chance that
+ * player 1 wins, then rates the match. A prediction scores its log-loss and
+ * counts as correct when it favoured the winner; an even prediction counts as
+ * half correct. Each parameter set is replayed as its own task on a fork-join
+ * pool, all reading the same {@link MatchHistory}.
+ */
+public class ReplayEngine {
+    // Keeps the log-loss of a confident wrong prediction finite
+    private static final double MIN_PROBABILITY = 1e-15;
+
+    /**
+     * Prediction quality of one parameter set.
+     */
+    public static final class Result {
+        private final RatingEngine.Parameters parameters;
+        private final int matches;
+        private final double glickoLogLoss;
+        private final double glickoAccuracy;
+        private final double eloLogLoss;
+        private final double eloAccuracy;
+
+        Result(RatingEngine.Parameters parameters, int matches, double glickoLogLoss, double glickoAccuracy,
+               double eloLogLoss, double eloAccuracy) {
+            this.parameters = parameters;
+            this.matches = matches;
+            this.glickoLogLoss = glickoLogLoss;
+            this.glickoAccuracy = glickoAccuracy;
+            this.eloLogLoss = eloLogLoss;
+            this.eloAccuracy = eloAccuracy;
+        }
+
+        public RatingEngine.Parameters getParameters() { return parameters; }
+        public int getMatches() { return matches; }
+        public double getGlickoLogLoss() { return glickoLogLoss; }
+        public double getGlickoAccuracy() { return glickoAccuracy; }
+        public double getEloLogLoss() { return eloLogLoss; }
+        public double getEloAccuracy() { return eloAccuracy; }
+
+        @Override
+        public String toString() {
+            return String.format("%s: Glicko-2 log-loss %.4f, accuracy %.1f%%; Elo log-loss %.4f, accuracy %.1f%%",
+                parameters, glickoLogLoss, glickoAccuracy * 100, eloLogLoss, eloAccuracy * 100);
+        }
+    }
+
+    private final MatchHistory history;
+
+    public ReplayEngine(MatchHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Evaluates the parameter sets concurrently on the common fork-join pool.
+     */
+    public List<Result> evaluate(List<RatingEngine.Parameters> parameterSets) {
+        return evaluate(parameterSets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Evaluates the parameter sets concurrently on the given pool. Results are
+     * returned in the order of the parameter sets.
+     */
+    public List<Result> evaluate(List<RatingEngine.Parameters> parameterSets, ForkJoinPool pool) {
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>(parameterSets.size());
+        for (RatingEngine.Parameters parameters : parameterSets) {
+            tasks.add(pool.submit(() -> replay(parameters)));
+        }
+        List<Result> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Result> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * Replays the whole history under one parameter set.
+     */
+    public Result replay(RatingEngine.Parameters parameters) {
+        RatingEngine engine = new RatingEngine(parameters);
+        int[] indexes = new int[history.getPlayerCount()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = engine.indexOf(history.getPlayerId(i));
+        }
+
+        double glickoLoss = 0;
+        double glickoCorrect = 0;
+        double eloLoss = 0;
+        double eloCorrect = 0;
+        int count = history.size();
+        for (int i = 0; i < count; i++) {
+            int player1 = indexes[history.player1[i]];
+            int player2 = indexes[history.player2[i]];
+            boolean player1Won = history.player1Won[i];
+            long epochMillis = history.epochMillis[i];
+
+            double glicko = engine.predictGlicko(player1, player2, epochMillis);
+            glickoLoss += logLoss(glicko, player1Won);
+            glickoCorrect += correctness(glicko, player1Won);
+            double elo = engine.predictElo(player1, player2);
+            eloLoss += logLoss(elo, player1Won);
+            eloCorrect += correctness(elo, player1Won);
+
+            engine.rate(player1, player2, player1Won, epochMillis);
+        }
+        int matches = Math.max(count, 1);
+        return new Result(parameters, count, glickoLoss / matches, glickoCorrect / matches,
+            eloLoss / matches, eloCorrect / matches);
+    }
+
+    private static double logLoss(double player1Chance, boolean player1Won) {
+        double p = player1Won ? player1Chance : 1 - player1Chance;
+        return -Math.log(Math.max(p, MIN_PROBABILITY));
+    }
+
+    private static double correctness(double player1Chance, boolean player1Won) {
+        if (player1Chance == 0.5) {
+            return 0.5;
+        }
+        return (player1Chance > 0.5) == player1Won ? 1 : 0;
+    }
+}
@@ -0,0 +1,320 @@
+package com.tabletennispro;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes live score changes to spectators as server-sent events.
+ *
+ * Every change of a match becomes one small event carrying that match's
+ * score ({@code score}) or the news that it ended ({@code end}). An event is
+ * serialized once and the same bytes are queued for every subscriber. A new
+ * subscriber first receives the latest event of each match in progress.
+ *
+ * Each subscriber has a bounded buffer holding at most one pending event per
+ * match. A single writer thread flushes the buffers of all subscribers at a
+ * fixed interval, so changes made in between replace each other: a spectator
+ * costs one write per interval at most however fast points are scored, and a
+ * client that is slow to read only receives the newest score of each match,
+ * never a backlog of stale ones. The threads serving the connections just
+ * wait for them to end.
+ *
+ * A subscriber that falls behind on more matches than its buffer holds, or
+ * whose write blocks for longer than the write timeout, is disconnected;
+ * browsers reconnect on their own and start again from the current scores.
+ */
+public class ScoreFeed implements DataManager.LiveScoreListener, Closeable {
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MILLIS = 100;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final long WRITE_TIMEOUT_MILLIS = 5_000;
+
+    private static final byte[] RETRY = "retry: 2000\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // One connection: its pending events, at most one per match
+    private final class Subscriber {
+        final OutputStream out;
+        private final LinkedHashMap<String, byte[]> pending = new LinkedHashMap<>();
+        private boolean closed;
+        // Only used by the writer thread
+        long lastWriteMillis = System.currentTimeMillis();
+
+        Subscriber(OutputStream out) {
+            this.out = out;
+        }
+
+        synchronized void offer(String matchId, byte[] frame) {
+            if (closed) {
+                return;
+            }
+            if (pending.remove(matchId) != null) {
+                coalesced.incrementAndGet();
+            } else if (pending.size() >= bufferSize) {
+                overflows.incrementAndGet();
+                close();
+                return;
+            }
+            pending.put(matchId, frame);
+        }
+
+        // Moves the pending events into the batch; returns false once closed
+        synchronized boolean drain(List<byte[]> batch) {
+            if (closed) {
+                return false;
+            }
+            batch.addAll(pending.values());
+            pending.clear();
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending.clear();
+            notifyAll();
+        }
+
+        synchronized void awaitClosed() throws InterruptedException {
+            while (!closed) {
+                wait();
+            }
+        }
+    }
+
+    private final int bufferSize;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // The latest event of each match in progress, replayed to new subscribers
+    private final Map<String, byte[]> latest = new LinkedHashMap<>();
+    private long sequence;
+
+    private final Thread writer;
+    private final Thread watchdog;
+    private volatile boolean closed;
+    // The subscriber being written to and since when; guarded by itself
+    private final Object writing = new Object();
+    private Subscriber current;
+    private long writeStartedMillis;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public ScoreFeed() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public ScoreFeed(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.writer = new Thread(this::writeLoop, "score-feed-writer");
+        this.writer.setDaemon(true);
+        this.watchdog = new Thread(this::watchLoop, "score-feed-watchdog");
+        this.watchdog.setDaemon(true);
+        this.writer.start();
+        this.watchdog.start();
+    }
+
+    // Publishing
+
+    @Override
+    public void liveScoreUpdated(LiveScore score) {
+        publish(score.getMatchId(), "score", json -> LiveScoreServer.writeLiveScore(json, score));
+    }
+
+    @Override
+    public void liveScoreEnded(String matchId, boolean completed) {
+        publish(matchId, "end", json -> json.beginObject()
+            .name("id").value(matchId)
+            .name("completed").value(completed)
+            .endObject());
+    }
+
+    private interface Payload {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    // Serializes the event once, then queues the same bytes for every subscriber
+    private synchronized void publish(String matchId, String type, Payload payload) {
+        byte[] frame;
+        try {
+            frame = encode(++sequence, type, payload);
+        } catch (IOException e) {
+            System.err.println("Error encoding score event: " + e.getMessage());
+            return;
+        }
+        if (type.equals("end")) {
+            latest.remove(matchId);
+        } else {
+            latest.put(matchId, frame);
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(matchId, frame);
+        }
+        published.incrementAndGet();
+    }
+
+    private static byte[] encode(long id, String type, Payload payload) throws IOException {
+        StringWriter data = new StringWriter(256);
+        JsonWriter json = new JsonWriter(data);
+        payload.write(json);
+        // JsonWriter escapes line breaks, so the data always fits on one line
+        String frame = "id: " + id + "\nevent: " + type + "\ndata: " + data + "\n\n";
+        return frame.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Subscribing
+
+    /**
+     * Streams events to one client until it disconnects, falls too far behind
+     * or the feed is closed. Blocks the calling thread meanwhile.
+     */
+    void stream(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "text/event-stream; charset=utf-8");
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Access-Control-Allow-Origin", "*");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(RETRY);
+        out.flush();
+
+        Subscriber subscriber = new Subscriber(out);
+        synchronized (this) {
+            for (Map.Entry<String, byte[]> event : latest.entrySet()) {
+                subscriber.offer(event.getKey(), event.getValue());
+            }
+            subscribers.add(subscriber);
+        }
+        if (closed) {
+            subscriber.close();
+        }
+        try {
+            subscriber.awaitClosed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscriber.close();
+            // The exchange is closed once this returns, so let a write in progress finish first
+            synchronized (subscriber.out) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    // Writing
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                continue; // Only close() interrupts outside a write
+            }
+            long now = System.currentTimeMillis();
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.drain(batch)) {
+                    continue;
+                }
+                // A heartbeat when idle finds connections that were dropped silently
+                if (!batch.isEmpty() || now - subscriber.lastWriteMillis >= HEARTBEAT_MILLIS) {
+                    write(subscriber, batch, now);
+                    subscriber.lastWriteMillis = now;
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void write(Subscriber subscriber, List<byte[]> batch, long now) {
+        synchronized (writing) {
+            current = subscriber;
+            writeStartedMillis = now;
+        }
+        boolean failed = false;
+        synchronized (subscriber.out) {
+            try {
+                if (batch.isEmpty()) {
+                    subscriber.out.write(HEARTBEAT);
+                }
+                for (byte[] frame : batch) {
+                    subscriber.out.write(frame);
+                }
+                subscriber.out.flush();
+            } catch (IOException e) {
+                failed = true; // The client went away, or the watchdog cut the write short
+            }
+        }
+        synchronized (writing) {
+            current = null;
+            // The watchdog may have interrupted just as the write finished
+            if (Thread.interrupted()) {
+                failed = true;
+            }
+        }
+        if (failed) {
+            subscriber.close();
+        }
+    }
+
+    // Interrupting a write blocked on a full socket closes the channel and ends the write
+    private void watchLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(WRITE_TIMEOUT_MILLIS / 5);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            synchronized (writing) {
+                if (current != null && System.currentTimeMillis() - writeStartedMillis > WRITE_TIMEOUT_MILLIS) {
+                    timeouts.incrementAndGet();
+                    current = null;
+                    writer.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Disconnects every subscriber and stops the writer.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        watchdog.interrupt();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    // Statistics
+    public int getSubscriberCount() { return subscribers.size(); }
+    public int getBufferSize() { return bufferSize; }
+    public long getPublished() { return published.get(); }
+    public long getCoalesced() { return coalesced.get(); }
+    public long getOverflows() { return overflows.get(); }
+    public long getTimeouts() { return timeouts.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("%d subscribers, %d events published, %d coalesced, %d overflows, %d timeouts",
+            getSubscriberCount(), getPublished(), getCoalesced(), getOverflows(), getTimeouts());
+    }
+}
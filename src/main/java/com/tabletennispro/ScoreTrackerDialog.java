@@ -7,6 +7,8 @@ import java.awt.*;
  * Dialog for tracking scores during a match
  */
 public class ScoreTrackerDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
     private DataManager dataManager;
     private Match currentMatch;
 
@@ -14,7 +16,16 @@ public class ScoreTrackerDialog extends JDialog {
     private JLabel player2NameLabel;
     private JLabel player1ScoreLabel;
     private JLabel player2ScoreLabel;
+    private JLabel player1PointsLabel;
+    private JLabel player2PointsLabel;
     private JLabel statusLabel;
+    // What the labels show, so a point only touches the labels it changes
+    private int shownPlayer1Games = -1;
+    private int shownPlayer2Games = -1;
+    private int shownPlayer1Points = -1;
+    private int shownPlayer2Points = -1;
+    private int shownServer = -1;
+    private boolean shownCompleted;
 
     public ScoreTrackerDialog(Frame parent, DataManager dataManager) {
         super(parent, "Score Tracker", true);
@@ -70,6 +81,26 @@ public class ScoreTrackerDialog extends JDialog {
         selectionPanel.add(new JLabel("Match Format:"));
         selectionPanel.add(bestOfCombo);
 
+        // Head-to-head record of the selected players
+        JLabel headToHeadLabel = new JLabel();
+        Runnable showHeadToHead = () -> {
+            Player p1 = (Player) player1Combo.getSelectedItem();
+            Player p2 = (Player) player2Combo.getSelectedItem();
+            if (p1 == null || p2 == null || p1.equals(p2)) {
+                headToHeadLabel.setText("-");
+                return;
+            }
+            HeadToHead record = dataManager.getHeadToHead(p1, p2);
+            headToHeadLabel.setText(record.getMatches() == 0 ? "First meeting"
+                : String.format("%d-%d (last met %s)", record.getPlayer1Wins(), record.getPlayer2Wins(),
+                    record.getLastMet().toLocalDate()));
+        };
+        player1Combo.addActionListener(e -> showHeadToHead.run());
+        player2Combo.addActionListener(e -> showHeadToHead.run());
+        showHeadToHead.run();
+        selectionPanel.add(new JLabel("Head to Head:"));
+        selectionPanel.add(headToHeadLabel);
+
         int result = JOptionPane.showConfirmDialog(getParent(), selectionPanel,
                 "Match Setup", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
@@ -93,7 +124,8 @@ public class ScoreTrackerDialog extends JDialog {
     }
 
     private void initializeUI() {
-        setSize(600, 500);
+        setSize(600, 600);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
         setLocationRelativeTo(getParent());
         setLayout(new BorderLayout(10, 10));
 
@@ -120,8 +152,13 @@ public class ScoreTrackerDialog extends JDialog {
         player1ScoreLabel.setFont(new Font("Arial", Font.BOLD, 72));
         player1ScoreLabel.setForeground(Color.WHITE);
 
+        player1PointsLabel = new JLabel("0", SwingConstants.CENTER);
+        player1PointsLabel.setFont(new Font("Arial", Font.BOLD, 36));
+        player1PointsLabel.setForeground(Color.WHITE);
+
         player1Panel.add(player1NameLabel, BorderLayout.NORTH);
         player1Panel.add(player1ScoreLabel, BorderLayout.CENTER);
+        player1Panel.add(player1PointsLabel, BorderLayout.SOUTH);
 
         // Player 2
         JPanel player2Panel = new JPanel(new BorderLayout());
@@ -136,32 +173,47 @@ public class ScoreTrackerDialog extends JDialog {
         player2ScoreLabel.setFont(new Font("Arial", Font.BOLD, 72));
         player2ScoreLabel.setForeground(Color.WHITE);
 
+        player2PointsLabel = new JLabel("0", SwingConstants.CENTER);
+        player2PointsLabel.setFont(new Font("Arial", Font.BOLD, 36));
+        player2PointsLabel.setForeground(Color.WHITE);
+
         player2Panel.add(player2NameLabel, BorderLayout.NORTH);
         player2Panel.add(player2ScoreLabel, BorderLayout.CENTER);
+        player2Panel.add(player2PointsLabel, BorderLayout.SOUTH);
 
         // Buttons for player 1
-        JPanel player1ButtonPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        JPanel player1ButtonPanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JButton p1PointButton = new JButton("+1 Point");
+        p1PointButton.setFont(new Font("Arial", Font.BOLD, 16));
+        p1PointButton.addActionListener(e -> recordPlayer1Point());
+
         JButton p1PlusButton = new JButton("+1 Game");
-        p1PlusButton.setFont(new Font("Arial", Font.BOLD, 16));
+        p1PlusButton.setFont(new Font("Arial", Font.PLAIN, 14));
         p1PlusButton.addActionListener(e -> incrementPlayer1Score());
 
         JButton p1MinusButton = new JButton("-1 Game");
         p1MinusButton.setFont(new Font("Arial", Font.PLAIN, 14));
         p1MinusButton.addActionListener(e -> decrementPlayer1Score());
 
+        player1ButtonPanel.add(p1PointButton);
         player1ButtonPanel.add(p1PlusButton);
         player1ButtonPanel.add(p1MinusButton);
 
         // Buttons for player 2
-        JPanel player2ButtonPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        JPanel player2ButtonPanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JButton p2PointButton = new JButton("+1 Point");
+        p2PointButton.setFont(new Font("Arial", Font.BOLD, 16));
+        p2PointButton.addActionListener(e -> recordPlayer2Point());
+
         JButton p2PlusButton = new JButton("+1 Game");
-        p2PlusButton.setFont(new Font("Arial", Font.BOLD, 16));
+        p2PlusButton.setFont(new Font("Arial", Font.PLAIN, 14));
         p2PlusButton.addActionListener(e -> incrementPlayer2Score());
 
         JButton p2MinusButton = new JButton("-1 Game");
         p2MinusButton.setFont(new Font("Arial", Font.PLAIN, 14));
         p2MinusButton.addActionListener(e -> decrementPlayer2Score());
 
+        player2ButtonPanel.add(p2PointButton);
         player2ButtonPanel.add(p2PlusButton);
         player2ButtonPanel.add(p2MinusButton);
 
@@ -182,6 +234,10 @@ public class ScoreTrackerDialog extends JDialog {
 
         JPanel controlPanel = new JPanel(new FlowLayout());
 
+        JButton undoButton = new JButton("Undo Point");
+        undoButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        undoButton.addActionListener(e -> undoPoint());
+
         JButton finishButton = new JButton("Finish Match");
         finishButton.setFont(new Font("Arial", Font.BOLD, 14));
         finishButton.addActionListener(e -> finishMatch());
@@ -197,42 +253,93 @@ public class ScoreTrackerDialog extends JDialog {
             }
         });
 
+        controlPanel.add(undoButton);
         controlPanel.add(finishButton);
         controlPanel.add(cancelButton);
 
         bottomPanel.add(controlPanel, BorderLayout.CENTER);
         add(bottomPanel, BorderLayout.SOUTH);
+        updateDisplay();
+    }
+
+    private void recordPlayer1Point() {
+        dataManager.changeMatch(currentMatch, Match::recordPlayer1Point);
+        updateDisplay();
+    }
+
+    private void recordPlayer2Point() {
+        dataManager.changeMatch(currentMatch, Match::recordPlayer2Point);
+        updateDisplay();
+    }
+
+    private void undoPoint() {
+        dataManager.changeMatch(currentMatch, Match::undoPoint);
+        updateDisplay();
     }
 
     private void incrementPlayer1Score() {
-        currentMatch.incrementPlayer1Score();
+        dataManager.changeMatch(currentMatch, Match::incrementPlayer1Score);
         updateDisplay();
     }
 
     private void incrementPlayer2Score() {
-        currentMatch.incrementPlayer2Score();
+        dataManager.changeMatch(currentMatch, Match::incrementPlayer2Score);
         updateDisplay();
     }
 
     private void decrementPlayer1Score() {
-        currentMatch.decrementPlayer1Score();
+        dataManager.changeMatch(currentMatch, Match::decrementPlayer1Score);
         updateDisplay();
     }
 
     private void decrementPlayer2Score() {
-        currentMatch.decrementPlayer2Score();
+        dataManager.changeMatch(currentMatch, Match::decrementPlayer2Score);
         updateDisplay();
     }
 
     private void updateDisplay() {
-        player1ScoreLabel.setText(String.valueOf(currentMatch.getPlayer1Score()));
-        player2ScoreLabel.setText(String.valueOf(currentMatch.getPlayer2Score()));
+        LiveScore score = dataManager.updateLiveScore(currentMatch);
+        if (score.getPlayer1Games() != shownPlayer1Games) {
+            player1ScoreLabel.setText(String.valueOf(score.getPlayer1Games()));
+        }
+        if (score.getPlayer2Games() != shownPlayer2Games) {
+            player2ScoreLabel.setText(String.valueOf(score.getPlayer2Games()));
+        }
+        if (score.getPlayer1Points() != shownPlayer1Points) {
+            player1PointsLabel.setText(String.valueOf(score.getPlayer1Points()));
+        }
+        if (score.getPlayer2Points() != shownPlayer2Points) {
+            player2PointsLabel.setText(String.valueOf(score.getPlayer2Points()));
+        }
 
-        if (currentMatch.isCompleted()) {
-            Player winner = currentMatch.getWinner();
-            statusLabel.setText("MATCH COMPLETE - " + winner.getName() + " WINS!");
-            statusLabel.setForeground(new Color(0, 150, 0));
+        // The status line only changes with a game, the server or the result
+        boolean completed = currentMatch.isCompleted();
+        if (score.getPlayer1Games() != shownPlayer1Games || score.getPlayer2Games() != shownPlayer2Games
+                || score.getServer() != shownServer || completed != shownCompleted) {
+            if (completed) {
+                Player winner = currentMatch.getWinner();
+                statusLabel.setText("MATCH COMPLETE - " + winner.getName() + " WINS!");
+                statusLabel.setForeground(new Color(0, 150, 0));
+            } else {
+                StringBuilder status = new StringBuilder("Best of " + score.getBestOf());
+                String separator = ": ";
+                for (int[] game : score.gameScores()) {
+                    status.append(separator).append(game[0]).append('-').append(game[1]);
+                    separator = ", ";
+                }
+                Player server = score.getServer() == 0 ? score.getPlayer1() : score.getPlayer2();
+                status.append(" - ").append(server.getName()).append(" to serve");
+                statusLabel.setText(status.toString());
+                statusLabel.setForeground(Color.BLACK);
+            }
         }
+
+        shownPlayer1Games = score.getPlayer1Games();
+        shownPlayer2Games = score.getPlayer2Games();
+        shownPlayer1Points = score.getPlayer1Points();
+        shownPlayer2Points = score.getPlayer2Points();
+        shownServer = score.getServer();
+        shownCompleted = completed;
     }
 
     private void finishMatch() {
@@ -243,7 +350,6 @@ public class ScoreTrackerDialog extends JDialog {
             return;
         }
 
-        currentMatch.completeMatch();
         dataManager.addMatch(currentMatch);
 
         Player winner = currentMatch.getWinner();
@@ -257,4 +363,13 @@ public class ScoreTrackerDialog extends JDialog {
 
         dispose();
     }
+
+    // A match left unfinished no longer counts as being played
+    @Override
+    public void dispose() {
+        if (currentMatch != null) {
+            dataManager.removeLiveScore(currentMatch);
+        }
+        super.dispose();
+    }
 }
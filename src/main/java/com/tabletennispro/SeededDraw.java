@@ -0,0 +1,269 @@
+package com.tabletennispro;
+
+import java.util.*;
+
+/**
+ * Makes the draw of a tournament from its entries, strongest first.
+ *
+ * Players are ranked by rating, then by the lower rating deviation, as on the
+ * leaderboard; players level on both keep their entry order. Swiss systems
+ * and group stages take the players in that order, as their seeding.
+ *
+ * An elimination draw seeds the top quarter of the field, up to
+ * {@link #MAX_SEEDS}, in the standard positions. Seed 1 heads the top half
+ * and seed 2 the bottom half, seeds 3 and 4 are drawn into the two other
+ * quarters, seeds 5 to 8 into the four other eighths, and so on, so seeds
+ * 1 and 2 cannot meet before the final and seeds 3 and 4 before the
+ * semi-finals. Seed r's position is the slot whose number is r with its bits
+ * reversed, which is also where the draw puts its byes, so byes go to the
+ * top seeds. Within each group of seeds the positions are drawn at random,
+ * preferring positions as far as possible from clubmates already placed.
+ *
+ * The other players are spread over the free slots club by club, largest
+ * club first. Each club's players are split between the two halves of the
+ * draw so that, with the clubmates already seeded, the halves hold as equal
+ * a number of them as the free slots allow, and the same again within each
+ * half, down to the first round. Clubmates thus meet as late as the field
+ * allows. Players without a clubmate fill the remaining slots at random.
+ * The whole draw takes O(n log n) time.
+ *
+ * All random choices come from the given seed, so the same entries, ratings
+ * and seed always give the same draw.
+ */
+public final class SeededDraw {
+    public static final int MAX_SEEDS = 32;
+
+    private SeededDraw() {
+    }
+
+    /**
+     * Returns the players strongest first.
+     */
+    public static List<Player> rank(List<Player> players) {
+        // Ratings are read once, so a rating published during the sort cannot upset it
+        int n = players.size();
+        double[] ratings = new double[n];
+        double[] deviations = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ratings[i] = players.get(i).getRating();
+            deviations[i] = players.get(i).getRatingDeviation();
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> {
+            int byRating = Double.compare(ratings[j], ratings[i]);
+            return byRating != 0 ? byRating : Double.compare(deviations[i], deviations[j]);
+        });
+        List<Player> ranked = new ArrayList<>(n);
+        for (int i : order) {
+            ranked.add(players.get(i));
+        }
+        return ranked;
+    }
+
+    /**
+     * Returns the number of seeds of an elimination draw of the given number of players.
+     */
+    public static int seedCount(int playerCount) {
+        int size = Integer.highestOneBit(playerCount - 1) << 1;
+        return Math.min(playerCount, Math.min(MAX_SEEDS, Math.max(2, size / 4)));
+    }
+
+    /**
+     * Returns the players in the order an elimination draw places them in,
+     * with the byes spread over the draw: the first two players meet in the
+     * first match, or the first player has a bye, and so on.
+     */
+    public static List<Player> eliminationOrder(List<Player> players, long seed) {
+        if (players.size() < 2) {
+            return new ArrayList<>(players);
+        }
+        return new Placement(rank(players), new SplittableRandom(seed)).draw();
+    }
+
+    // One elimination draw in the making; tree node t covers slots below it as in a heap of the slots
+    private static final class Placement {
+        private final List<Player> ranked;
+        private final SplittableRandom random;
+        private final int size;
+        private final int depth;
+        private final Player[] slots;
+        // Free slots under each tree node; leaves are size + slot
+        private final int[] free;
+        // Slots of each club's seeds
+        private final Map<String, List<Integer>> placed = new HashMap<>();
+
+        Placement(List<Player> ranked, SplittableRandom random) {
+            this.ranked = ranked;
+            this.random = random;
+            this.size = Integer.highestOneBit(ranked.size() - 1) << 1;
+            this.depth = Integer.numberOfTrailingZeros(size);
+            this.slots = new Player[size];
+            this.free = new int[2 * size];
+        }
+
+        List<Player> draw() {
+            int byes = size - ranked.size();
+            Arrays.fill(free, size, 2 * size, 1);
+            for (int i = 0; i < byes; i++) {
+                free[size + (slotOf(i) | 1)] = 0;
+            }
+            for (int t = size - 1; t >= 1; t--) {
+                free[t] = free[2 * t] + free[2 * t + 1];
+            }
+
+            int seeds = seedCount(ranked.size());
+            placeSeeds(0, 1);
+            for (int start = 1; start < seeds; start *= 2) {
+                // Seeds with a bye take the positions that have one
+                int withBye = Math.max(0, Math.min(2 * start, byes) - start);
+                placeSeeds(start, start + withBye);
+                placeSeeds(start + withBye, 2 * start);
+            }
+            placeOthers(ranked.subList(seeds, ranked.size()));
+
+            List<Player> order = new ArrayList<>(ranked.size());
+            for (Player player : slots) {
+                if (player != null) {
+                    order.add(player);
+                }
+            }
+            return order;
+        }
+
+        // Slot of the given seed position: its number with the bits reversed
+        private int slotOf(int position) {
+            return Integer.reverse(position) >>> (32 - depth);
+        }
+
+        // Draws seeds from..to - 1 into positions from..to - 1, away from their clubmates
+        private void placeSeeds(int from, int to) {
+            List<Integer> positions = new ArrayList<>();
+            for (int position = from; position < to; position++) {
+                positions.add(position);
+            }
+            shuffle(positions);
+            for (int rank = from; rank < to; rank++) {
+                Player player = ranked.get(rank);
+                int best = 0;
+                int bestClash = Integer.MAX_VALUE;
+                for (int i = 0; i < positions.size() && bestClash > 0; i++) {
+                    int clash = clash(player, slotOf(positions.get(i)));
+                    if (clash < bestClash) {
+                        best = i;
+                        bestClash = clash;
+                    }
+                }
+                int slot = slotOf(positions.remove(best));
+                place(player, slot);
+                String club = clubOf(player);
+                if (club != null) {
+                    placed.computeIfAbsent(club, key -> new ArrayList<>()).add(slot);
+                }
+            }
+        }
+
+        // The earliest round the player would meet a clubmate from the slot, counted from the final; 0 for none
+        private int clash(Player player, int slot) {
+            List<Integer> clubmates = placed.get(clubOf(player));
+            int clash = 0;
+            if (clubmates != null) {
+                for (int other : clubmates) {
+                    clash = Math.max(clash, depth - (32 - Integer.numberOfLeadingZeros(slot ^ other)) + 1);
+                }
+            }
+            return clash;
+        }
+
+        private void placeOthers(List<Player> others) {
+            // Largest clubs first, counting their seeded players; ties in the order the clubs were met
+            Map<String, List<Player>> clubs = new LinkedHashMap<>();
+            List<Player> unattached = new ArrayList<>();
+            for (Player player : others) {
+                String club = clubOf(player);
+                if (club == null) {
+                    unattached.add(player);
+                } else {
+                    clubs.computeIfAbsent(club, key -> new ArrayList<>()).add(player);
+                }
+            }
+            List<Map.Entry<String, List<Player>>> byClub = new ArrayList<>(clubs.entrySet());
+            byClub.sort((a, b) -> Integer.compare(clubSize(b), clubSize(a)));
+            for (Map.Entry<String, List<Player>> club : byClub) {
+                if (clubSize(club) == 1) {
+                    unattached.addAll(club.getValue());
+                    continue;
+                }
+                List<Player> members = club.getValue();
+                shuffle(members);
+                // Seeded clubmates under each tree node
+                Map<Integer, Integer> seeded = new HashMap<>();
+                for (int slot : placed.getOrDefault(club.getKey(), Collections.emptyList())) {
+                    for (int t = size + slot; t >= 1; t >>= 1) {
+                        seeded.merge(t, 1, Integer::sum);
+                    }
+                }
+                spread(1, members.size(), seeded, members.iterator());
+            }
+
+            // Everyone else at random into the slots left
+            List<Integer> left = new ArrayList<>();
+            for (int slot = 0; slot < size; slot++) {
+                if (free[size + slot] > 0) {
+                    left.add(slot);
+                }
+            }
+            shuffle(left);
+            for (int i = 0; i < unattached.size(); i++) {
+                place(unattached.get(i), left.get(i));
+            }
+        }
+
+        private int clubSize(Map.Entry<String, List<Player>> club) {
+            return club.getValue().size() + placed.getOrDefault(club.getKey(), Collections.emptyList()).size();
+        }
+
+        // Splits count clubmates between the halves under tree node t, evening out the club's players in each
+        private void spread(int t, int count, Map<Integer, Integer> seeded, Iterator<Player> members) {
+            if (t >= size) {
+                place(members.next(), t - size);
+                return;
+            }
+            int left = 2 * t;
+            int right = left + 1;
+            int seededLeft = seeded.getOrDefault(left, 0);
+            int total = seededLeft + seeded.getOrDefault(right, 0) + count;
+            int half = total / 2;
+            // An odd one out goes left in proportion to the free slots there
+            if (total % 2 == 1 && random.nextInt(free[left] + free[right]) < free[left]) {
+                half++;
+            }
+            int toLeft = Math.max(count - free[right], Math.min(Math.min(count, free[left]), Math.max(0, half - seededLeft)));
+            if (toLeft > 0) {
+                spread(left, toLeft, seeded, members);
+            }
+            if (count > toLeft) {
+                spread(right, count - toLeft, seeded, members);
+            }
+        }
+
+        private void place(Player player, int slot) {
+            slots[slot] = player;
+            for (int t = size + slot; t >= 1; t >>= 1) {
+                free[t]--;
+            }
+        }
+
+        private <T> void shuffle(List<T> list) {
+            for (int i = list.size() - 1; i > 0; i--) {
+                Collections.swap(list, i, random.nextInt(i + 1));
+            }
+        }
+    }
+
+    // Clubs are told apart ignoring case and surrounding spaces
+    private static String clubOf(Player player) {
+        String club = player.getClub();
+        return club == null || club.trim().isEmpty() ? null : club.trim().toLowerCase(Locale.ROOT);
+    }
+}
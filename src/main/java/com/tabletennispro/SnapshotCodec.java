@@ -0,0 +1,260 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Versioned binary snapshot format for all application data.
+ *
+ * Layout: magic, schema version, journal sequence, archived match count (since
+ * version 2), then a player table, a match table and the tournaments. Version
+ * 3 adds each player's count of matches scored by point and each match's rally
+ * log; earlier versions counted games as points, so those totals are dropped.
+ * Version 4 adds each player's club, empty for none. Version 5 adds each
+ * player's games won and lost; older snapshots have them counted again from
+ * the match history when loaded. Players
+ * are stored once and referenced by table index, matches reference players and
+ * tournaments reference matches the same way. Counts and scores are varints and timestamps are deltas in epoch millis,
+ * so records are a few bytes each and are read back without reflection.
+ */
+public final class SnapshotCodec {
+    static final int MAGIC = 0x54545053; // "TTPS"
+    static final int VERSION = 5;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Contents of one snapshot
+     */
+    public static final class Snapshot {
+        public final List<Player> players;
+        public final List<Match> matches;
+        public final List<Tournament> tournaments;
+        public final long sequence;
+        /** Number of matches preceding {@link #matches} that live in the {@link MatchArchive} */
+        public final int archivedCount;
+        /** Schema version the snapshot was read from */
+        public final int version;
+
+        public Snapshot(List<Player> players, List<Match> matches, List<Tournament> tournaments,
+                long sequence, int archivedCount) {
+            this(players, matches, tournaments, sequence, archivedCount, VERSION);
+        }
+
+        Snapshot(List<Player> players, List<Match> matches, List<Tournament> tournaments,
+                long sequence, int archivedCount, int version) {
+            this.players = players;
+            this.matches = matches;
+            this.tournaments = tournaments;
+            this.sequence = sequence;
+            this.archivedCount = archivedCount;
+            this.version = version;
+        }
+    }
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * Returns true if the stream starts with a snapshot header. The stream must
+     * support mark/reset; its position is left unchanged.
+     */
+    public static boolean isSnapshot(InputStream in) throws IOException {
+        in.mark(4);
+        try {
+            return new DataInputStream(in).readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    public static void write(OutputStream stream, Snapshot snapshot) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+
+        // Players referenced by matches or tournaments but no longer registered
+        // are kept after the registered ones so history stays intact
+        Map<Player, Integer> playerIndex = new LinkedHashMap<>();
+        for (Player player : snapshot.players) {
+            playerIndex.putIfAbsent(player, playerIndex.size());
+        }
+        int registeredCount = playerIndex.size();
+
+        Map<Match, Integer> matchIndex = new IdentityHashMap<>();
+        List<Match> matchTable = new ArrayList<>(snapshot.matches);
+        for (Match match : snapshot.matches) {
+            matchIndex.putIfAbsent(match, matchIndex.size());
+        }
+        for (Tournament tournament : snapshot.tournaments) {
+            for (Match match : tournament.getMatches()) {
+                if (matchIndex.putIfAbsent(match, matchIndex.size()) == null) {
+                    matchTable.add(match);
+                }
+            }
+            for (Player player : tournament.getPlayers()) {
+                playerIndex.putIfAbsent(player, playerIndex.size());
+            }
+        }
+        for (Match match : matchTable) {
+            playerIndex.putIfAbsent(match.getPlayer1(), playerIndex.size());
+            playerIndex.putIfAbsent(match.getPlayer2(), playerIndex.size());
+        }
+
+        out.writeInt(MAGIC);
+        BinaryIO.writeVarInt(out, VERSION);
+        BinaryIO.writeVarLong(out, snapshot.sequence);
+        BinaryIO.writeVarInt(out, snapshot.archivedCount);
+
+        // Player table
+        BinaryIO.writeVarInt(out, playerIndex.size());
+        BinaryIO.writeVarInt(out, registeredCount);
+        for (Player player : playerIndex.keySet()) {
+            BinaryIO.writeId(out, player.getId());
+            out.writeUTF(player.getName());
+            BinaryIO.writeVarInt(out, player.getWins());
+            BinaryIO.writeVarInt(out, player.getLosses());
+            BinaryIO.writeVarInt(out, player.getTotalPointsScored());
+            BinaryIO.writeVarInt(out, player.getTotalPointsConceded());
+            BinaryIO.writeVarInt(out, player.getPointMatches());
+            out.writeUTF(player.getClub() == null ? "" : player.getClub());
+            BinaryIO.writeVarInt(out, player.getGamesWon());
+            BinaryIO.writeVarInt(out, player.getGamesLost());
+        }
+
+        // Match table: the global match list first, then tournament-only matches
+        BinaryIO.writeVarInt(out, matchTable.size());
+        BinaryIO.writeVarInt(out, snapshot.matches.size());
+        long previousMillis = 0;
+        for (Match match : matchTable) {
+            long millis = BinaryIO.toEpochMillis(match.getTimestamp());
+            BinaryIO.writeId(out, match.getId());
+            BinaryIO.writeVarInt(out, playerIndex.get(match.getPlayer1()));
+            BinaryIO.writeVarInt(out, playerIndex.get(match.getPlayer2()));
+            BinaryIO.writeVarInt(out, match.getBestOf() << 1 | (match.isCompleted() ? 1 : 0));
+            BinaryIO.writeVarInt(out, match.getPlayer1Score());
+            BinaryIO.writeVarInt(out, match.getPlayer2Score());
+            BinaryIO.writeSignedVarLong(out, millis - previousMillis);
+            BinaryIO.writeRallies(out, match);
+            previousMillis = millis;
+        }
+
+        // Tournaments
+        BinaryIO.writeVarInt(out, snapshot.tournaments.size());
+        for (Tournament tournament : snapshot.tournaments) {
+            BinaryIO.writeId(out, tournament.getId());
+            out.writeUTF(tournament.getName());
+            BinaryIO.writeVarInt(out, tournament.getType().ordinal());
+            BinaryIO.writeVarInt(out, tournament.getBestOf());
+            out.writeByte((tournament.isStarted() ? 1 : 0) | (tournament.isCompleted() ? 2 : 0));
+
+            List<Player> tournamentPlayers = tournament.getPlayers();
+            BinaryIO.writeVarInt(out, tournamentPlayers.size());
+            for (Player player : tournamentPlayers) {
+                BinaryIO.writeVarInt(out, playerIndex.get(player));
+            }
+
+            List<Match> tournamentMatches = tournament.getMatches();
+            BinaryIO.writeVarInt(out, tournamentMatches.size());
+            for (Match match : tournamentMatches) {
+                BinaryIO.writeVarInt(out, matchIndex.get(match));
+            }
+        }
+
+        out.flush();
+    }
+
+    public static Snapshot read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        int version = BinaryIO.readVarInt(in);
+        if (version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        long sequence = BinaryIO.readVarLong(in);
+        int archivedCount = version >= 2 ? BinaryIO.readVarInt(in) : 0;
+
+        // Player table
+        int playerCount = BinaryIO.readVarInt(in);
+        int registeredCount = BinaryIO.readVarInt(in);
+        Player[] playerTable = new Player[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            Player player = new Player(BinaryIO.readId(in), in.readUTF());
+            int wins = BinaryIO.readVarInt(in);
+            int losses = BinaryIO.readVarInt(in);
+            int pointsScored = BinaryIO.readVarInt(in);
+            int pointsConceded = BinaryIO.readVarInt(in);
+            if (version >= 3) {
+                player.restoreStats(wins, losses, pointsScored, pointsConceded, BinaryIO.readVarInt(in));
+            } else {
+                player.restoreStats(wins, losses, 0, 0, 0);
+            }
+            if (version >= 4) {
+                String club = in.readUTF();
+                player.setClub(club.isEmpty() ? null : club);
+            }
+            if (version >= 5) {
+                player.restoreGames(BinaryIO.readVarInt(in), BinaryIO.readVarInt(in));
+            }
+            playerTable[i] = player;
+        }
+
+        // Match table
+        int matchCount = BinaryIO.readVarInt(in);
+        int globalCount = BinaryIO.readVarInt(in);
+        Match[] matchTable = new Match[matchCount];
+        long millis = 0;
+        for (int i = 0; i < matchCount; i++) {
+            String id = BinaryIO.readId(in);
+            Player player1 = playerTable[BinaryIO.readVarInt(in)];
+            Player player2 = playerTable[BinaryIO.readVarInt(in)];
+            int format = BinaryIO.readVarInt(in);
+            int player1Score = BinaryIO.readVarInt(in);
+            int player2Score = BinaryIO.readVarInt(in);
+            millis += BinaryIO.readSignedVarLong(in);
+            LocalDateTime timestamp = BinaryIO.fromEpochMillis(millis);
+
+            Match match = new Match(id, player1, player2, format >>> 1, timestamp);
+            match.restoreResult(player1Score, player2Score, (format & 1) != 0);
+            if (version >= 3) {
+                BinaryIO.readRallies(in, match);
+            }
+            matchTable[i] = match;
+        }
+
+        // Tournaments
+        int tournamentCount = BinaryIO.readVarInt(in);
+        List<Tournament> tournaments = new ArrayList<>(tournamentCount);
+        Tournament.TournamentType[] types = Tournament.TournamentType.values();
+        for (int i = 0; i < tournamentCount; i++) {
+            String id = BinaryIO.readId(in);
+            String name = in.readUTF();
+            Tournament.TournamentType type = types[BinaryIO.readVarInt(in)];
+            int bestOf = BinaryIO.readVarInt(in);
+            int flags = in.readUnsignedByte();
+
+            int tournamentPlayerCount = BinaryIO.readVarInt(in);
+            List<Player> tournamentPlayers = new ArrayList<>(tournamentPlayerCount);
+            for (int j = 0; j < tournamentPlayerCount; j++) {
+                tournamentPlayers.add(playerTable[BinaryIO.readVarInt(in)]);
+            }
+
+            int tournamentMatchCount = BinaryIO.readVarInt(in);
+            List<Match> tournamentMatches = new ArrayList<>(tournamentMatchCount);
+            for (int j = 0; j < tournamentMatchCount; j++) {
+                tournamentMatches.add(matchTable[BinaryIO.readVarInt(in)]);
+            }
+
+            tournaments.add(new Tournament(id, name, type, bestOf, tournamentPlayers, tournamentMatches,
+                (flags & 1) != 0, (flags & 2) != 0));
+        }
+
+        List<Player> players = new ArrayList<>(Arrays.asList(playerTable).subList(0, registeredCount));
+        List<Match> matches = new ArrayList<>(Arrays.asList(matchTable).subList(0, globalCount));
+        return new Snapshot(players, matches, tournaments, sequence, archivedCount, version);
+    }
+}
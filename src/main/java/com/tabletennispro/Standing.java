@@ -0,0 +1,72 @@
+package com.tabletennispro;
+
+/**
+ * A player's line in the standings of a tournament.
+ *
+ * In a Swiss system points are one per win and one per bye. The Buchholz
+ * score is the sum of the points of the player's opponents, the
+ * Sonneborn-Berger score the sum of the points of the opponents the player
+ * beat; both break ties between players on the same points.
+ *
+ * In a group stage a win scores 2 match points and a loss 1, and the games
+ * and rally points won and lost are kept for breaking ties; the group is
+ * numbered from 0. Fields a format does not use are 0.
+ */
+public final class Standing {
+    private final Player player;
+    private final int group;
+    private final int played;
+    private final int wins;
+    private final int points;
+    private final int buchholz;
+    private final int sonnebornBerger;
+    private final int gamesWon;
+    private final int gamesLost;
+    private final int pointsWon;
+    private final int pointsLost;
+
+    // A line of Swiss standings
+    Standing(Player player, int played, int wins, int points, int buchholz, int sonnebornBerger) {
+        this(player, 0, played, wins, points, buchholz, sonnebornBerger, 0, 0, 0, 0);
+    }
+
+    // A line of a group's standings
+    Standing(Player player, int group, int played, int wins, int points,
+            int gamesWon, int gamesLost, int pointsWon, int pointsLost) {
+        this(player, group, played, wins, points, 0, 0, gamesWon, gamesLost, pointsWon, pointsLost);
+    }
+
+    private Standing(Player player, int group, int played, int wins, int points, int buchholz,
+            int sonnebornBerger, int gamesWon, int gamesLost, int pointsWon, int pointsLost) {
+        this.player = player;
+        this.group = group;
+        this.played = played;
+        this.wins = wins;
+        this.points = points;
+        this.buchholz = buchholz;
+        this.sonnebornBerger = sonnebornBerger;
+        this.gamesWon = gamesWon;
+        this.gamesLost = gamesLost;
+        this.pointsWon = pointsWon;
+        this.pointsLost = pointsLost;
+    }
+
+    public Player getPlayer() { return player; }
+    public int getGroup() { return group; }
+    public int getPlayed() { return played; }
+    public int getWins() { return wins; }
+    public int getLosses() { return played - wins; }
+    public int getPoints() { return points; }
+    public int getBuchholz() { return buchholz; }
+    public int getSonnebornBerger() { return sonnebornBerger; }
+    public int getGamesWon() { return gamesWon; }
+    public int getGamesLost() { return gamesLost; }
+    public int getPointsWon() { return pointsWon; }
+    public int getPointsLost() { return pointsLost; }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d points (%d-%d), games %d:%d, Buchholz %d, Sonneborn-Berger %d",
+            player.getName(), points, wins, getLosses(), gamesWon, gamesLost, buchholz, sonnebornBerger);
+    }
+}
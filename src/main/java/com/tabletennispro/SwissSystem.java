@@ -0,0 +1,451 @@
+package com.tabletennispro;
+
+import java.util.*;
+
+/**
+ * A Swiss-system tournament: every round pairs players with the same number
+ * of points, nobody meets the same opponent twice, and nobody is knocked out.
+ * It runs for as many rounds as a knockout of the same field would, after
+ * which the player on top of the standings wins.
+ *
+ * Players are ranked by points, then by draw order. Each score group, with
+ * any players floated down from the group above, is split into a top and a
+ * bottom half, and the top half is paired against the bottom half in order.
+ * When that would repeat a match, the halves are matched by minimum cost
+ * assignment instead (the Hungarian algorithm), where the cost of a pair is
+ * how far it lies from the straight pairing plus a large penalty for a
+ * rematch; pairs that still repeat a match float down to the next group. A
+ * field with an odd number of players gives a bye, worth a point, to the
+ * lowest ranked player who has not had one.
+ *
+ * Points, Buchholz and Sonneborn-Berger scores are kept per player and
+ * updated as each result is recorded, at a cost proportional to the number of
+ * rounds played rather than the size of the field.
+ */
+final class SwissSystem implements TournamentFormat {
+    // Outweighs any sum of distances from the straight pairing
+    private static final long REMATCH_PENALTY = 1L << 32;
+
+    private final List<Player> players;
+    private final Map<Player, Integer> indexes = new HashMap<>();
+    private final int bestOf;
+    private final int roundCount;
+
+    // Per player, by index in draw order
+    private final int[] points;
+    private final int[] wins;
+    private final int[] played;
+    private final int[] buchholz;
+    private final int[] sonnebornBerger;
+    private final boolean[] hadBye;
+    // Opponents in the order met, as index * 2, plus 1 if the opponent won
+    private final int[][] opponents;
+
+    private final List<List<Match>> rounds = new ArrayList<>();
+    private final List<Player> byes = new ArrayList<>();
+    private final Map<Match, Integer> matchRounds = new IdentityHashMap<>();
+    private final Map<Player, Match> openMatches = new HashMap<>();
+    private final Map<Player, List<Match>> paths = new HashMap<>();
+    private boolean finished;
+
+    /**
+     * Creates a tournament for the players in draw order; no round is open yet.
+     */
+    SwissSystem(List<Player> players, int bestOf) {
+        if (players.size() < 2) {
+            throw new IllegalArgumentException("A Swiss tournament needs at least 2 players: " + players.size());
+        }
+        this.players = new ArrayList<>(players);
+        this.bestOf = bestOf;
+        this.roundCount = 32 - Integer.numberOfLeadingZeros(players.size() - 1);
+        int count = players.size();
+        points = new int[count];
+        wins = new int[count];
+        played = new int[count];
+        buchholz = new int[count];
+        sonnebornBerger = new int[count];
+        hadBye = new boolean[count];
+        opponents = new int[count][roundCount];
+        for (int i = 0; i < count; i++) {
+            indexes.put(this.players.get(i), i);
+        }
+    }
+
+    /**
+     * Rebuilds a tournament from the players in draw order and its matches in
+     * the order they were created. Each round has the same number of matches,
+     * so the saved matches are taken as they were paired; a trailing part
+     * round is left out. Once every match of the last round is in, the
+     * tournament is finished.
+     */
+    static SwissSystem restore(List<Player> players, List<Match> matches, int bestOf) {
+        SwissSystem swiss = new SwissSystem(players, bestOf);
+        int perRound = players.size() / 2;
+        for (int start = 0; start + perRound <= matches.size() && swiss.getCurrentRound() < swiss.roundCount;
+                start += perRound) {
+            if (swiss.getCurrentRound() > 0 && !swiss.recordRound()) {
+                break;
+            }
+            swiss.openRound(matches.subList(start, start + perRound));
+        }
+        // A last round played to the end decides the tournament, as advancing past it would
+        if (swiss.rounds.size() == swiss.roundCount && swiss.recordRound()) {
+            swiss.finished = true;
+        }
+        return swiss;
+    }
+
+    // Advancing
+
+    @Override
+    public List<Match> advance() {
+        List<Match> created = new ArrayList<>();
+        if (finished || rounds.size() > 0 && !recordRound()) {
+            return created;
+        }
+        if (rounds.size() == roundCount) {
+            finished = true;
+            return created;
+        }
+        for (int[] pair : pairRound()) {
+            created.add(new Match(players.get(pair[0]), players.get(pair[1]), bestOf));
+        }
+        openRound(created);
+        return created;
+    }
+
+    // Records the results of the open round; false if a match is still being played
+    private boolean recordRound() {
+        for (Match match : openMatches.values()) {
+            if (!match.isCompleted()) {
+                return false;
+            }
+        }
+        for (Match match : rounds.get(rounds.size() - 1)) {
+            recordResult(indexes.get(match.getWinner()), indexes.get(match.getLoser()));
+        }
+        openMatches.clear();
+        return true;
+    }
+
+    private void openRound(List<Match> roundMatches) {
+        boolean[] paired = new boolean[players.size()];
+        for (Match match : roundMatches) {
+            matchRounds.put(match, rounds.size() + 1);
+            for (Player player : new Player[] {match.getPlayer1(), match.getPlayer2()}) {
+                paired[indexes.get(player)] = true;
+                openMatches.put(player, match);
+                paths.computeIfAbsent(player, key -> new ArrayList<>()).add(match);
+            }
+        }
+        rounds.add(new ArrayList<>(roundMatches));
+
+        Player bye = null;
+        for (int i = 0; i < paired.length; i++) {
+            if (!paired[i]) {
+                bye = players.get(i);
+                hadBye[i] = true;
+                addPoint(i);
+                break;
+            }
+        }
+        byes.add(bye);
+    }
+
+    // Tie-break scores
+
+    private void recordResult(int winner, int loser) {
+        buchholz[winner] += points[loser];
+        buchholz[loser] += points[winner];
+        sonnebornBerger[winner] += points[loser];
+        opponents[winner][played[winner]++] = loser * 2;
+        opponents[loser][played[loser]++] = winner * 2 + 1;
+        wins[winner]++;
+        addPoint(winner);
+    }
+
+    // A point raises the Buchholz score of every opponent, and the Sonneborn-Berger score of those who won
+    private void addPoint(int player) {
+        points[player]++;
+        for (int i = 0; i < played[player]; i++) {
+            int opponent = opponents[player][i];
+            buchholz[opponent >> 1]++;
+            if ((opponent & 1) != 0) {
+                sonnebornBerger[opponent >> 1]++;
+            }
+        }
+    }
+
+    private boolean haveMet(int a, int b) {
+        for (int i = 0; i < played[a]; i++) {
+            if (opponents[a][i] >> 1 == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Pairing
+
+    private int[][] pairRound() {
+        int count = players.size();
+        Integer[] ranking = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ranking[i] = i;
+        }
+        Arrays.sort(ranking, (a, b) -> points[a] != points[b] ? points[b] - points[a] : a - b);
+        int[] rank = new int[count];
+        for (int i = 0; i < count; i++) {
+            rank[ranking[i]] = i;
+        }
+
+        int bye = -1;
+        if (count % 2 != 0) {
+            for (int i = count - 1; i >= 0 && bye < 0; i--) {
+                if (!hadBye[ranking[i]]) {
+                    bye = ranking[i];
+                }
+            }
+            if (bye < 0) {
+                bye = ranking[count - 1];
+            }
+        }
+
+        List<int[]> pairs = new ArrayList<>(count / 2);
+        List<Integer> floaters = new ArrayList<>();
+        int start = 0;
+        while (start < count) {
+            int end = start;
+            while (end < count && points[ranking[end]] == points[ranking[start]]) {
+                end++;
+            }
+            List<Integer> group = new ArrayList<>(floaters);
+            floaters.clear();
+            for (int i = start; i < end; i++) {
+                if (ranking[i] != bye) {
+                    group.add(ranking[i]);
+                }
+            }
+            boolean last = end == count;
+            if (group.size() % 2 != 0 && !last) {
+                floaters.add(group.remove(group.size() - 1));
+            }
+            pairGroup(group, pairs, floaters, last);
+            floaters.sort(Comparator.comparingInt(player -> rank[player]));
+            start = end;
+        }
+        repairRematches(pairs);
+        return pairs.toArray(new int[0][]);
+    }
+
+    // Pairs the top half of a group against the bottom half; rematches float down unless this is the last group
+    private void pairGroup(List<Integer> group, List<int[]> pairs, List<Integer> floaters, boolean last) {
+        int half = group.size() / 2;
+        boolean straight = true;
+        for (int i = 0; i < half && straight; i++) {
+            straight = !haveMet(group.get(i), group.get(half + i));
+        }
+        int[] partner = new int[half];
+        if (straight) {
+            for (int i = 0; i < half; i++) {
+                partner[i] = i;
+            }
+        } else {
+            long[][] cost = new long[half][half];
+            for (int i = 0; i < half; i++) {
+                for (int j = 0; j < half; j++) {
+                    cost[i][j] = Math.abs(i - j) + (haveMet(group.get(i), group.get(half + j)) ? REMATCH_PENALTY : 0);
+                }
+            }
+            partner = assign(cost);
+        }
+        for (int i = 0; i < half; i++) {
+            int top = group.get(i);
+            int bottom = group.get(half + partner[i]);
+            if (!last && haveMet(top, bottom)) {
+                floaters.add(top);
+                floaters.add(bottom);
+            } else {
+                pairs.add(new int[] {top, bottom});
+            }
+        }
+    }
+
+    // Swaps partners with a nearby pair where the last group was left with a rematch
+    private void repairRematches(List<int[]> pairs) {
+        for (int i = pairs.size() - 1; i >= 0; i--) {
+            int[] pair = pairs.get(i);
+            if (!haveMet(pair[0], pair[1])) {
+                continue;
+            }
+            for (int j = i - 1; j >= 0; j--) {
+                int[] other = pairs.get(j);
+                if (!haveMet(pair[0], other[1]) && !haveMet(other[0], pair[1])) {
+                    int swapped = pair[0];
+                    pair[0] = other[0];
+                    other[0] = swapped;
+                    break;
+                }
+                if (!haveMet(pair[0], other[0]) && !haveMet(pair[1], other[1])) {
+                    int swapped = pair[1];
+                    pair[1] = other[0];
+                    other[0] = swapped;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves the assignment problem for a square cost matrix with the
+     * Hungarian algorithm in O(n^3). Returns the column assigned to each row.
+     */
+    static int[] assign(long[][] cost) {
+        int n = cost.length;
+        long[] u = new long[n + 1];
+        long[] v = new long[n + 1];
+        int[] column = new int[n + 1];
+        int[] way = new int[n + 1];
+        long[] minimum = new long[n + 1];
+        boolean[] used = new boolean[n + 1];
+        for (int row = 1; row <= n; row++) {
+            column[0] = row;
+            int current = 0;
+            Arrays.fill(minimum, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[current] = true;
+                int i = column[current];
+                long delta = Long.MAX_VALUE;
+                int next = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (!used[j]) {
+                        long reduced = cost[i - 1][j - 1] - u[i] - v[j];
+                        if (reduced < minimum[j]) {
+                            minimum[j] = reduced;
+                            way[j] = current;
+                        }
+                        if (minimum[j] < delta) {
+                            delta = minimum[j];
+                            next = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[column[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minimum[j] -= delta;
+                    }
+                }
+                current = next;
+            } while (column[current] != 0);
+            do {
+                int previous = way[current];
+                column[current] = column[previous];
+                current = previous;
+            } while (current != 0);
+        }
+        int[] assignment = new int[n];
+        for (int j = 1; j <= n; j++) {
+            assignment[column[j] - 1] = j - 1;
+        }
+        return assignment;
+    }
+
+    // Queries
+
+    @Override
+    public boolean isDecided() {
+        return finished;
+    }
+
+    @Override
+    public Player getWinner() {
+        return finished ? getStandings().get(0).getPlayer() : null;
+    }
+
+    @Override
+    public boolean contains(Match match) {
+        return matchRounds.containsKey(match);
+    }
+
+    @Override
+    public int getMatchCount() {
+        return matchRounds.size();
+    }
+
+    @Override
+    public int getCurrentRound() {
+        return rounds.size();
+    }
+
+    @Override
+    public int getRoundCount() {
+        return roundCount;
+    }
+
+    @Override
+    public String getRoundName(int round) {
+        return round == roundCount ? "Final Round" : "Round " + round;
+    }
+
+    @Override
+    public List<Match> getRoundMatches(int round) {
+        return round < 1 || round > rounds.size() ? new ArrayList<>() : new ArrayList<>(rounds.get(round - 1));
+    }
+
+    @Override
+    public List<Player> getByes(int round) {
+        List<Player> roundByes = new ArrayList<>();
+        if (round >= 1 && round <= byes.size() && byes.get(round - 1) != null) {
+            roundByes.add(byes.get(round - 1));
+        }
+        return roundByes;
+    }
+
+    @Override
+    public Match getNextMatch(Match match) {
+        return null; // Decided by the standings after the round
+    }
+
+    @Override
+    public Player getNextOpponent(Player player) {
+        Match match = openMatches.get(player);
+        if (match == null || match.isCompleted()) {
+            return null;
+        }
+        return player.equals(match.getPlayer1()) ? match.getPlayer2() : match.getPlayer1();
+    }
+
+    @Override
+    public List<Match> getPath(Player player) {
+        List<Match> path = paths.get(player);
+        return path == null ? new ArrayList<>() : new ArrayList<>(path);
+    }
+
+    /**
+     * Returns the standings ranked by points, then Buchholz, then
+     * Sonneborn-Berger, then draw order. Results count once their round has
+     * been advanced past.
+     */
+    @Override
+    public List<Standing> getStandings() {
+        Integer[] order = new Integer[players.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            if (points[a] != points[b]) return points[b] - points[a];
+            if (buchholz[a] != buchholz[b]) return buchholz[b] - buchholz[a];
+            if (sonnebornBerger[a] != sonnebornBerger[b]) return sonnebornBerger[b] - sonnebornBerger[a];
+            return a - b;
+        });
+        List<Standing> standings = new ArrayList<>(order.length);
+        for (int i : order) {
+            standings.add(new Standing(players.get(i), played[i], wins[i], points[i], buchholz[i], sonnebornBerger[i]));
+        }
+        return standings;
+    }
+}
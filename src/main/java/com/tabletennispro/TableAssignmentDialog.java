@@ -0,0 +1,113 @@
+package com.tabletennispro;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Dialog for the desk: which match is on which table, and an estimate of how
+ * long the active tournaments still take
+ */
+public class TableAssignmentDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+    private static final int SIMULATION_RUNS = 20;
+
+    private DataManager dataManager;
+    private TableScheduler scheduler;
+    private DefaultListModel<String> tableListModel;
+    private JLabel statusLabel;
+
+    public TableAssignmentDialog(Frame parent, DataManager dataManager, TableScheduler scheduler) {
+        super(parent, "Tables", true);
+        this.dataManager = dataManager;
+        this.scheduler = scheduler;
+        initializeUI();
+        updateTables();
+    }
+
+    private void initializeUI() {
+        setSize(600, 450);
+        setLocationRelativeTo(getParent());
+        setLayout(new BorderLayout(10, 10));
+
+        // Table count
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JLabel tablesLabel = new JLabel("Tables:");
+        tablesLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        topPanel.add(tablesLabel);
+        JSpinner tableSpinner = new JSpinner(new SpinnerNumberModel(scheduler.getTableCount(), 1, 200, 1));
+        tableSpinner.addChangeListener(e -> {
+            scheduler.setTableCount((Integer) tableSpinner.getValue());
+            updateTables();
+        });
+        topPanel.add(tableSpinner);
+        add(topPanel, BorderLayout.NORTH);
+
+        // Tables
+        tableListModel = new DefaultListModel<>();
+        JList<String> tableList = new JList<>(tableListModel);
+        tableList.setFont(new Font("Arial", Font.PLAIN, 14));
+        add(new JScrollPane(tableList), BorderLayout.CENTER);
+
+        // Buttons
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        statusLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+        bottomPanel.add(statusLabel, BorderLayout.NORTH);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JButton refreshButton = new JButton("Assign Tables");
+        refreshButton.setFont(new Font("Arial", Font.BOLD, 14));
+        refreshButton.addActionListener(e -> updateTables());
+        buttonPanel.add(refreshButton);
+
+        JButton estimateButton = new JButton("Estimate Duration");
+        estimateButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        estimateButton.addActionListener(e -> estimateDuration());
+        buttonPanel.add(estimateButton);
+
+        JButton closeButton = new JButton("Close");
+        closeButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        closeButton.addActionListener(e -> dispose());
+        buttonPanel.add(closeButton);
+        bottomPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        add(bottomPanel, BorderLayout.SOUTH);
+    }
+
+    private void updateTables() {
+        scheduler.update(dataManager, System.currentTimeMillis());
+        tableListModel.clear();
+        for (int table = 1; table <= scheduler.getTableCount(); table++) {
+            TableScheduler.Assignment assignment = scheduler.getAssignment(table);
+            tableListModel.addElement(assignment == null ? "Table " + table + ": free" : assignment.toString());
+        }
+        statusLabel.setText(String.format("%d matches waiting, %d played back to back so far",
+            scheduler.getWaitingCount(), scheduler.getBackToBackCount()));
+    }
+
+    // Plays the active tournaments through from their draws several times and reports the average
+    private void estimateDuration() {
+        List<Tournament> active = dataManager.getActiveTournaments();
+        if (active.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No tournament is in progress.",
+                "Estimate Duration", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        long total = 0;
+        long longest = 0;
+        for (int run = 0; run < SIMULATION_RUNS; run++) {
+            TableScheduler.SimulationResult result = TableScheduler.simulate(active, scheduler.getTableCount(),
+                TableScheduler.DEFAULT_REST_MILLIS, TableScheduler.DEFAULT_GAME_MILLIS, run);
+            total += result.getDurationMillis();
+            longest = Math.max(longest, result.getDurationMillis());
+        }
+        JOptionPane.showMessageDialog(this,
+            String.format("From the start of their draws, the %d active tournaments take about %d min on %d tables"
+                + " (at most %d min in %d runs).",
+                active.size(), total / SIMULATION_RUNS / 60_000, scheduler.getTableCount(),
+                longest / 60_000, SIMULATION_RUNS),
+            "Estimate Duration", JOptionPane.INFORMATION_MESSAGE);
+    }
+}
@@ -0,0 +1,420 @@
+package com.tabletennispro;
+
+import java.util.*;
+
+/**
+ * Decides which match is played on which table when several tournaments
+ * share a venue.
+ *
+ * Matches that are ready to be played, with both players known, wait in a
+ * priority queue across all active tournaments. Matches of tournaments with
+ * more rounds still to go come first, as those rounds bound how long the
+ * event runs; within that, matches are served in the order they were
+ * created. Whenever a table is free it gets the first match whose players
+ * are neither playing elsewhere nor resting from a match that just ended.
+ * A table is only left idle when every waiting match involves someone who
+ * is still playing; if all candidates are resting, the one whose players
+ * have rested longest goes on, and the back-to-back match is counted.
+ *
+ * Planning is incremental: new matches are picked up from the end of each
+ * tournament's match list, and a result only frees its table and its
+ * players before the next assignment. Times are passed in, so the same
+ * scheduler runs against the clock at the desk and against simulated time
+ * in {@link #simulate}, which estimates how long a set of draws takes on a
+ * given number of tables.
+ *
+ * A scheduler is not thread-safe; the desk uses it from the event dispatch
+ * thread.
+ */
+public class TableScheduler {
+    public static final long DEFAULT_REST_MILLIS = 5 * 60_000;
+    public static final long DEFAULT_GAME_MILLIS = 6 * 60_000;
+    // Warm-up and changeover on a table between two matches
+    private static final long WARM_UP_MILLIS = 2 * 60_000;
+
+    /**
+     * A match put on a table.
+     */
+    public static final class Assignment {
+        private final int table;
+        private final Match match;
+        private final Tournament tournament;
+        private final long startMillis;
+        private final boolean backToBack;
+
+        Assignment(int table, Match match, Tournament tournament, long startMillis, boolean backToBack) {
+            this.table = table;
+            this.match = match;
+            this.tournament = tournament;
+            this.startMillis = startMillis;
+            this.backToBack = backToBack;
+        }
+
+        // Tables are numbered from 1
+        public int getTable() { return table + 1; }
+        public Match getMatch() { return match; }
+        public Tournament getTournament() { return tournament; }
+        public long getStartMillis() { return startMillis; }
+        public boolean isBackToBack() { return backToBack; }
+
+        @Override
+        public String toString() {
+            return String.format("Table %d: %s vs %s (%s)%s", getTable(), match.getPlayer1().getName(),
+                match.getPlayer2().getName(), tournament.getName(), backToBack ? " - back to back" : "");
+        }
+    }
+
+    // A waiting match; more rounds to go first, then the order it was found in
+    private static final class Entry implements Comparable<Entry> {
+        final Match match;
+        final Tournament tournament;
+        final int roundsToGo;
+        final long order;
+
+        Entry(Match match, Tournament tournament, int roundsToGo, long order) {
+            this.match = match;
+            this.tournament = tournament;
+            this.roundsToGo = roundsToGo;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (roundsToGo != other.roundsToGo) {
+                return Integer.compare(other.roundsToGo, roundsToGo);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+
+    private final long restMillis;
+    private Assignment[] tables;
+    private final PriorityQueue<Entry> waiting = new PriorityQueue<>();
+    private final Set<Match> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+    // How many of each tournament's matches have been looked at
+    private final Map<Tournament, Integer> seen = new IdentityHashMap<>();
+    private final Set<Player> playing = new HashSet<>();
+    private final Map<Player, Long> restingUntil = new HashMap<>();
+    private long nextOrder;
+
+    // Statistics
+    private int assigned;
+    private int backToBack;
+    private long busyMillis;
+
+    public TableScheduler(int tableCount) {
+        this(tableCount, DEFAULT_REST_MILLIS);
+    }
+
+    public TableScheduler(int tableCount, long restMillis) {
+        if (tableCount < 1) {
+            throw new IllegalArgumentException("Need at least one table: " + tableCount);
+        }
+        this.tables = new Assignment[tableCount];
+        this.restMillis = restMillis;
+    }
+
+    public int getTableCount() {
+        return tables.length;
+    }
+
+    /**
+     * Changes the number of tables. Matches on tables that are taken away
+     * go back to the front of the queue.
+     */
+    public void setTableCount(int tableCount) {
+        if (tableCount < 1) {
+            throw new IllegalArgumentException("Need at least one table: " + tableCount);
+        }
+        for (int table = tableCount; table < tables.length; table++) {
+            Assignment assignment = tables[table];
+            if (assignment != null) {
+                playing.remove(assignment.match.getPlayer1());
+                playing.remove(assignment.match.getPlayer2());
+                queued.add(assignment.match);
+                waiting.add(new Entry(assignment.match, assignment.tournament, Integer.MAX_VALUE, -1));
+            }
+        }
+        tables = Arrays.copyOf(tables, tableCount);
+    }
+
+    // Planning
+
+    /**
+     * Brings the plan up to date at the desk: frees the tables whose match
+     * has been completed, picks up the new matches of the active tournaments
+     * and fills the free tables. Returns the matches put on a table.
+     */
+    public List<Assignment> update(DataManager dataManager, long nowMillis) {
+        for (Assignment assignment : tables) {
+            if (assignment != null && assignment.match.isCompleted()) {
+                finished(assignment.match, nowMillis);
+            }
+        }
+        refresh(dataManager.getActiveTournaments());
+        return assign(nowMillis);
+    }
+
+    /**
+     * Queues the matches created since the last call that are still to be
+     * played.
+     */
+    public void refresh(List<Tournament> tournaments) {
+        for (Tournament tournament : tournaments) {
+            int count = seen.getOrDefault(tournament, 0);
+            List<Match> created = tournament.getMatchesSince(count);
+            if (created.isEmpty()) {
+                continue;
+            }
+            seen.put(tournament, count + created.size());
+            int roundsToGo = tournament.getRoundCount() - tournament.getCurrentRound();
+            for (Match match : created) {
+                if (!match.isCompleted() && queued.add(match)) {
+                    waiting.add(new Entry(match, tournament, roundsToGo, nextOrder++));
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts waiting matches on the free tables, lowest numbered first, and
+     * returns them.
+     */
+    public List<Assignment> assign(long nowMillis) {
+        List<Assignment> started = new ArrayList<>();
+        List<Entry> deferred = new ArrayList<>();
+        for (int table = 0; table < tables.length && !waiting.isEmpty(); table++) {
+            if (tables[table] != null) {
+                continue;
+            }
+            Entry chosen = null;
+            Entry rested = null;
+            long restedUntil = Long.MAX_VALUE;
+            while (chosen == null && !waiting.isEmpty()) {
+                Entry entry = waiting.poll();
+                Match match = entry.match;
+                // Played without the scheduler, or its tournament was removed
+                if (match.isCompleted() || !queued.contains(match) || entry.tournament.isCompleted()) {
+                    queued.remove(match);
+                    continue;
+                }
+                if (playing.contains(match.getPlayer1()) || playing.contains(match.getPlayer2())) {
+                    deferred.add(entry);
+                    continue;
+                }
+                long until = Math.max(restingUntil.getOrDefault(match.getPlayer1(), Long.MIN_VALUE),
+                    restingUntil.getOrDefault(match.getPlayer2(), Long.MIN_VALUE));
+                if (until <= nowMillis) {
+                    chosen = entry;
+                } else if (until < restedUntil) {
+                    if (rested != null) {
+                        deferred.add(rested);
+                    }
+                    rested = entry;
+                    restedUntil = until;
+                } else {
+                    deferred.add(entry);
+                }
+            }
+            boolean tooSoon = chosen == null;
+            if (tooSoon) {
+                chosen = rested;
+            } else if (rested != null) {
+                deferred.add(rested);
+            }
+            waiting.addAll(deferred);
+            deferred.clear();
+            if (chosen == null) {
+                break; // Everyone waiting is playing elsewhere
+            }
+
+            Match match = chosen.match;
+            queued.remove(match);
+            playing.add(match.getPlayer1());
+            playing.add(match.getPlayer2());
+            Assignment assignment = new Assignment(table, match, chosen.tournament, nowMillis, tooSoon);
+            tables[table] = assignment;
+            started.add(assignment);
+            assigned++;
+            if (tooSoon) {
+                backToBack++;
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Frees the table of a match that ended, and lets its players rest.
+     */
+    public void finished(Match match, long nowMillis) {
+        for (int table = 0; table < tables.length; table++) {
+            Assignment assignment = tables[table];
+            if (assignment != null && assignment.match == match) {
+                tables[table] = null;
+                busyMillis += nowMillis - assignment.startMillis;
+                for (Player player : new Player[] {match.getPlayer1(), match.getPlayer2()}) {
+                    playing.remove(player);
+                    restingUntil.put(player, nowMillis + restMillis);
+                }
+                return;
+            }
+        }
+    }
+
+    // Queries
+
+    /**
+     * Returns what is on a table, numbered from 1, or null if it is free.
+     */
+    public Assignment getAssignment(int table) {
+        return table < 1 || table > tables.length ? null : tables[table - 1];
+    }
+
+    public List<Assignment> getAssignments() {
+        List<Assignment> assignments = new ArrayList<>();
+        for (Assignment assignment : tables) {
+            if (assignment != null) {
+                assignments.add(assignment);
+            }
+        }
+        return assignments;
+    }
+
+    /**
+     * Returns the table a match is on, numbered from 1, or 0 if it is not on one.
+     */
+    public int getTable(Match match) {
+        for (int table = 0; table < tables.length; table++) {
+            if (tables[table] != null && tables[table].match == match) {
+                return table + 1;
+            }
+        }
+        return 0;
+    }
+
+    public int getWaitingCount() {
+        return queued.size();
+    }
+
+    public int getAssignedCount() { return assigned; }
+    public int getBackToBackCount() { return backToBack; }
+    public long getBusyMillis() { return busyMillis; }
+
+    // Simulation
+
+    /**
+     * The outcome of a simulated event.
+     */
+    public static final class SimulationResult {
+        private final long durationMillis;
+        private final int matches;
+        private final int backToBack;
+        private final double utilization;
+
+        SimulationResult(long durationMillis, int matches, int backToBack, double utilization) {
+            this.durationMillis = durationMillis;
+            this.matches = matches;
+            this.backToBack = backToBack;
+            this.utilization = utilization;
+        }
+
+        public long getDurationMillis() { return durationMillis; }
+        public int getMatches() { return matches; }
+        public int getBackToBack() { return backToBack; }
+        // The share of table time spent playing
+        public double getUtilization() { return utilization; }
+
+        @Override
+        public String toString() {
+            return String.format("%d matches in %d min, %d back to back, tables %.0f%% busy",
+                matches, durationMillis / 60_000, backToBack, utilization * 100);
+        }
+    }
+
+    /**
+     * Plays the given tournaments through on copies, from the start of their
+     * draws, and returns how long the event takes on the given number of
+     * tables. Tournaments not started yet are drawn as they would be when
+     * started. Games last the given time on average, give or take 40%, and
+     * every match starts with a warm-up; the better rated player wins each
+     * game with the probability their ratings predict. The tournaments
+     * themselves are left untouched.
+     */
+    public static SimulationResult simulate(List<Tournament> draws, int tableCount, long restMillis,
+            long gameMillis, long seed) {
+        Random random = new Random(seed);
+        Map<Player, Player> copies = new HashMap<>();
+        List<Tournament> tournaments = new ArrayList<>();
+        for (Tournament draw : draws) {
+            List<Player> players = new ArrayList<>();
+            for (Player player : draw.getPlayers()) {
+                players.add(copies.computeIfAbsent(player, TableScheduler::copyPlayer));
+            }
+            Tournament copy = new Tournament(draw.getId(), draw.getName(), draw.getType(), draw.getBestOf(),
+                players, new ArrayList<>(), draw.isStarted(), false);
+            if (copy.isStarted()) {
+                copy.advanceTournament();
+            } else {
+                copy.startTournament(random.nextLong());
+            }
+            tournaments.add(copy);
+        }
+
+        TableScheduler scheduler = new TableScheduler(tableCount, restMillis);
+        // Tables in order of when their match ends, and the results to enter then
+        PriorityQueue<long[]> endings = new PriorityQueue<>(Comparator.comparingLong((long[] ending) -> ending[0]));
+        int[][] results = new int[tableCount][];
+        long now = 0;
+        scheduler.refresh(tournaments);
+        while (true) {
+            for (Assignment assignment : scheduler.assign(now)) {
+                int table = assignment.getTable() - 1;
+                Match match = assignment.getMatch();
+                int[] result = playGames(match, random);
+                results[table] = result;
+                long duration = WARM_UP_MILLIS;
+                for (int game = 0; game < result[0] + result[1]; game++) {
+                    duration += (long) (gameMillis * (0.6 + 0.8 * random.nextDouble()));
+                }
+                endings.add(new long[] {now + duration, table});
+            }
+            long[] ending = endings.poll();
+            if (ending == null) {
+                break; // Everything is played, or nothing more can be
+            }
+            now = ending[0];
+            int table = (int) ending[1];
+            Assignment assignment = scheduler.tables[table];
+            Match match = assignment.getMatch();
+            match.setPlayer1Score(results[table][0]);
+            match.setPlayer2Score(results[table][1]);
+            match.completeMatch();
+            scheduler.finished(match, now);
+            Tournament tournament = assignment.getTournament();
+            tournament.recordResult(match);
+            tournament.advanceTournament();
+            scheduler.refresh(tournaments);
+        }
+        double utilization = now == 0 ? 0 : (double) scheduler.busyMillis / ((double) now * tableCount);
+        return new SimulationResult(now, scheduler.assigned, scheduler.backToBack, utilization);
+    }
+
+    private static Player copyPlayer(Player player) {
+        Player copy = new Player(player.getName());
+        copy.setClub(player.getClub());
+        copy.updateRatings(player.getRating(), player.getRatingDeviation(), player.getEloRating());
+        return copy;
+    }
+
+    // Games won by each player, each game going by the players' ratings
+    private static int[] playGames(Match match, Random random) {
+        double expected = 1 / (1 + Math.pow(10,
+            (match.getPlayer2().getRating() - match.getPlayer1().getRating()) / 400));
+        int needed = match.getBestOf() / 2 + 1;
+        int[] games = new int[2];
+        while (games[0] < needed && games[1] < needed) {
+            games[random.nextDouble() < expected ? 0 : 1]++;
+        }
+        return games;
+    }
+}
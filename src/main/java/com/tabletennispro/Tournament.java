@@ -1,10 +1,27 @@
 package com.tabletennispro;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
 /**
- * Represents a tournament bracket with single or double elimination
+ * Represents a tournament with single or double elimination, a Swiss system
+ * or round robin groups
+ *
+ * Once started, a tournament hands the rules of its type to a
+ * {@link TournamentFormat}: a {@link Bracket} for single and double
+ * elimination, a {@link SwissSystem} for Swiss, or a {@link GroupStage} for
+ * round robin groups. The format decides which matches each round opens,
+ * keeps the standings and names the winner; the tournament's round, standings
+ * and winner queries are answered by it. The tournament itself only keeps
+ * the players, in draw order, and the matches, in the order they were
+ * created, which is all the format is rebuilt from when the tournament is
+ * loaded again.
+ *
+ * A tournament shared with other threads is changed through the
+ * {@link DataManager}, under its write lock, and read through
+ * {@link DataManager#readTournament}, which keeps it loaded meanwhile.
  */
 public class Tournament implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -17,10 +34,22 @@ public class Tournament implements Serializable {
     private int bestOf;
     private boolean started;
     private boolean completed;
+    // The knockout a group stage's qualifiers went on to, null for none
+    private String knockoutId;
+
+    // Players and matches are loaded from the tournament's segment on first use
+    private transient TournamentStore store;
+    private transient int playerCount;
+    private transient TournamentFormat format;
+    // Counts changes to the draw and its results since the tournament was created or loaded
+    private transient volatile int revision;
 
     public enum TournamentType {
         SINGLE_ELIMINATION,
-        DOUBLE_ELIMINATION
+        DOUBLE_ELIMINATION,
+        // Stored by ordinal, so new types go last
+        SWISS,
+        ROUND_ROBIN
     }
 
     public Tournament(String name, TournamentType type, int bestOf) {
@@ -34,6 +63,116 @@ public class Tournament implements Serializable {
         this.completed = false;
     }
 
+    // Restores a tournament read back from persistent storage
+    Tournament(String id, String name, TournamentType type, int bestOf,
+            List<Player> players, List<Match> matches, boolean started, boolean completed) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.bestOf = bestOf;
+        this.players = new ArrayList<>(players);
+        this.matches = new ArrayList<>(matches);
+        this.started = started;
+        this.completed = completed;
+        this.format = restoreFormat(this.players, this.matches);
+    }
+
+    // Creates a summary whose players and matches are loaded from the store on demand
+    Tournament(String id, String name, TournamentType type, int bestOf,
+            int playerCount, boolean started, boolean completed, TournamentStore store) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.bestOf = bestOf;
+        this.playerCount = playerCount;
+        this.started = started;
+        this.completed = completed;
+        this.store = store;
+    }
+
+    void attachStore(TournamentStore store) {
+        this.store = store;
+    }
+
+    boolean isLoaded() {
+        return players != null;
+    }
+
+    // Called by the store with the contents of the tournament's segment
+    void setContent(List<Player> players, List<Match> matches) {
+        List<Player> content = new ArrayList<>(players);
+        List<Match> contentMatches = new ArrayList<>(matches);
+        this.format = restoreFormat(content, contentMatches);
+        this.matches = contentMatches;
+        this.players = content;
+    }
+
+    // Tournaments written with Java serialization by earlier versions have their draw rebuilt as they are read
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        format = restoreFormat(players, matches);
+    }
+
+    // Drops players and matches; they are reloaded from the segment when needed
+    void unload() {
+        playerCount = players.size();
+        players = null;
+        matches = null;
+        format = null;
+    }
+
+    // The store loads each tournament once however many readers ask for it at the same time
+    private void ensureLoaded() {
+        if (players == null) {
+            store.load(this);
+        } else if (store != null) {
+            store.touch(this);
+        }
+    }
+
+    // The draw of a started tournament; it is rebuilt whenever players and matches are loaded
+    private TournamentFormat format() {
+        ensureLoaded();
+        return format;
+    }
+
+    // Rebuilds the draw from players and matches that are not yet shared with other threads.
+    // Matches the draw is missing are added to the list; the completed flag is left as stored.
+    private TournamentFormat restoreFormat(List<Player> players, List<Match> matches) {
+        if (!started || players.size() < 2) {
+            return null;
+        }
+        if (type == TournamentType.SWISS) {
+            return SwissSystem.restore(players, matches, bestOf);
+        }
+        if (type == TournamentType.ROUND_ROBIN) {
+            return GroupStage.restore(players, matches, bestOf, GroupStage.DEFAULT_GROUP_SIZE);
+        }
+        return Bracket.restore(players, matches, bestOf, type == TournamentType.DOUBLE_ELIMINATION);
+    }
+
+    // The format of a started tournament, null before it starts
+    TournamentFormat getFormat() {
+        return started ? format() : null;
+    }
+
+    private TournamentFormat newFormat() {
+        if (type == TournamentType.SWISS) {
+            return new SwissSystem(players, bestOf);
+        }
+        if (type == TournamentType.ROUND_ROBIN) {
+            return new GroupStage(players, bestOf, GroupStage.DEFAULT_GROUP_SIZE);
+        }
+        return new Bracket(players, bestOf, type == TournamentType.DOUBLE_ELIMINATION, Bracket.Layout.SPREAD);
+    }
+
+    /**
+     * Returns the number of entries held in memory, used for the store's memory budget.
+     */
+    int getLoadedSize() {
+        return players == null ? 0 : players.size() + matches.size();
+    }
+
     // Getters
     public String getId() {
         return id;
@@ -44,13 +183,52 @@ public class Tournament implements Serializable {
     }
 
     public List<Player> getPlayers() {
+        ensureLoaded();
         return new ArrayList<>(players);
     }
 
+    public int getPlayerCount() {
+        // Read once, as the store may unload the players meanwhile
+        List<Player> current = players;
+        return current == null ? playerCount : current.size();
+    }
+
     public List<Match> getMatches() {
+        ensureLoaded();
         return new ArrayList<>(matches);
     }
 
+    // How many matches have been created so far
+    int getMatchCount() {
+        ensureLoaded();
+        return matches.size();
+    }
+
+    // The matches created after the first count, for callers that follow the tournament as it goes
+    List<Match> getMatchesSince(int count) {
+        ensureLoaded();
+        return count >= matches.size() ? new ArrayList<>() : new ArrayList<>(matches.subList(count, matches.size()));
+    }
+
+    /**
+     * Returns true if the given match object belongs to this tournament.
+     */
+    public boolean containsMatch(Match match) {
+        TournamentFormat draw = format();
+        if (draw != null && draw.contains(match)) {
+            return true;
+        }
+        if (draw != null && draw.getMatchCount() == matches.size()) {
+            return false;
+        }
+        for (Match m : matches) {
+            if (m == match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public TournamentType getType() {
         return type;
     }
@@ -67,128 +245,195 @@ public class Tournament implements Serializable {
         return completed;
     }
 
+    /**
+     * Returns the ID of the knockout created from this group stage, or null
+     * if there is none yet.
+     */
+    public String getKnockoutId() {
+        return knockoutId;
+    }
+
+    void setKnockoutId(String knockoutId) {
+        this.knockoutId = knockoutId;
+    }
+
     public void addPlayer(Player player) {
+        ensureLoaded();
         if (!started && !players.contains(player)) {
             players.add(player);
+            revision++;
         }
     }
 
     public void removePlayer(Player player) {
-        if (!started) {
-            players.remove(player);
+        ensureLoaded();
+        if (!started && players.remove(player)) {
+            revision++;
         }
     }
 
+    /**
+     * Returns a number that changes whenever the tournament's entries, draw
+     * or results change, for callers that cache what they show of it.
+     */
+    int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Makes the draw and opens the first round, with a draw seed taken from
+     * the tournament's id, so the draw can be made again from the id, the
+     * entries and their ratings.
+     */
     public void startTournament() {
+        startTournament(id.hashCode());
+    }
+
+    /**
+     * Makes the draw with the given seed and opens the first round. Swiss
+     * systems and group stages take the players strongest first; elimination
+     * draws are seeded as described in {@link SeededDraw}.
+     */
+    public void startTournament(long seed) {
+        ensureLoaded();
         if (started || players.size() < 2) {
             return;
         }
 
-        // Shuffle players for random seeding
-        Collections.shuffle(players);
-
-        // Generate first round matches
-        generateFirstRound();
-        started = true;
-    }
-
-    private void generateFirstRound() {
-        // For single elimination, pair up players
-        for (int i = 0; i < players.size() - 1; i += 2) {
-            Match match = new Match(players.get(i), players.get(i + 1), bestOf);
-            matches.add(match);
+        // The list keeps the draw order
+        if (type == TournamentType.SWISS || type == TournamentType.ROUND_ROBIN) {
+            players = new ArrayList<>(SeededDraw.rank(players));
+        } else {
+            players = new ArrayList<>(SeededDraw.eliminationOrder(players, seed));
         }
 
-        // If odd number of players, one gets a bye (automatically advances)
-        if (players.size() % 2 != 0) {
-            // The last player gets a bye - we'll handle this in the next round
-        }
+        format = newFormat();
+        matches.addAll(format.advance());
+        started = true;
+        revision++;
     }
 
+    /**
+     * Opens the next round once every match of the current one is completed,
+     * and marks the tournament completed once the final is, or in a Swiss
+     * system the last round.
+     */
     public void advanceTournament() {
-        // Get all completed matches from current round
-        List<Match> currentRound = getCurrentRoundMatches();
-        boolean allCompleted = currentRound.stream().allMatch(Match::isCompleted);
-
-        if (!allCompleted) {
-            return; // Can't advance until all matches are done
-        }
-
-        // Get winners from current round
-        List<Player> winners = new ArrayList<>();
-        for (Match match : currentRound) {
-            winners.add(match.getWinner());
-        }
-
-        // Handle bye if odd number of players
-        if (players.size() % 2 != 0 && matches.size() == currentRound.size()) {
-            winners.add(players.get(players.size() - 1));
-        }
-
-        // Check if tournament is complete
-        if (winners.size() == 1) {
-            completed = true;
+        TournamentFormat draw = format();
+        if (draw == null || completed) {
             return;
         }
-
-        // Generate next round matches
-        for (int i = 0; i < winners.size() - 1; i += 2) {
-            Match match = new Match(winners.get(i), winners.get(i + 1), bestOf);
-            matches.add(match);
-        }
-    }
-
-    private List<Match> getCurrentRoundMatches() {
-        List<Match> currentRound = new ArrayList<>();
-        for (int i = matches.size() - 1; i >= 0; i--) {
-            Match match = matches.get(i);
-            if (!match.isCompleted()) {
-                currentRound.add(0, match);
-            } else if (!currentRound.isEmpty()) {
-                break; // Found the start of current round
-            }
-        }
-
-        // If all matches are completed, return the last set
-        if (currentRound.isEmpty() && !matches.isEmpty()) {
-            int roundSize = 1;
-            for (int i = matches.size() - 1; i >= 0 && roundSize > 0; i--) {
-                currentRound.add(0, matches.get(i));
-                roundSize--;
-            }
-        }
-
-        return currentRound;
+        matches.addAll(draw.advance());
+        completed = draw.isDecided();
+        revision++;
     }
 
+    /**
+     * Returns the winner, or null if there is none yet or the tournament was
+     * a group stage of several groups.
+     */
     public Player getWinner() {
         if (!completed)
             return null;
-        Match finalMatch = matches.get(matches.size() - 1);
-        return finalMatch.getWinner();
+        return format().getWinner();
     }
 
+    /**
+     * Returns how many rounds of play have been opened, 0 before the
+     * tournament has started. Matches that can be played early, such as
+     * between two players who both had a bye, are opened with the round before.
+     */
     public int getCurrentRound() {
         if (!started)
             return 0;
+        return format().getCurrentRound();
+    }
+
+    /**
+     * Returns the number of rounds of the draw, 0 before the tournament has started.
+     */
+    public int getRoundCount() {
+        return started ? format().getRoundCount() : 0;
+    }
+
+    /**
+     * Returns the name of a round, such as "Semi-Finals" or "Losers Round 3".
+     */
+    public String getRoundName(int round) {
+        return started ? format().getRoundName(round) : "Round " + round;
+    }
+
+    /**
+     * Returns the matches of a round in draw order, as far as they are set.
+     * Rounds are numbered from 1; in double elimination the losers rounds
+     * follow the winners rounds, and the grand final comes last.
+     */
+    public List<Match> getRoundMatches(int round) {
+        return started ? format().getRoundMatches(round) : new ArrayList<>();
+    }
 
-        int playersCount = players.size();
+    /**
+     * Returns the players who went through a round without playing.
+     */
+    public List<Player> getByes(int round) {
+        return started ? format().getByes(round) : new ArrayList<>();
+    }
+
+    /**
+     * Returns the match the winner of the given match plays next, or null if
+     * that match is not set yet or the given one is the final.
+     */
+    public Match getNextMatch(Match match) {
+        return started ? format().getNextMatch(match) : null;
+    }
 
-        // Calculate which round we're in based on completed matches
-        int completedMatches = (int) matches.stream().filter(Match::isCompleted).count();
+    /**
+     * Returns who the player meets next, or null if that is not known yet or
+     * the player is out.
+     */
+    public Player getNextOpponent(Player player) {
+        return started ? format().getNextOpponent(player) : null;
+    }
 
-        // Simple calculation for single elimination
-        int round = 1;
-        int matchesInRound = playersCount / 2;
-        int matchesCounted = 0;
+    /**
+     * Returns the player's matches so far, ending with the one they lost or
+     * have yet to finish.
+     */
+    public List<Match> getPath(Player player) {
+        return started ? format().getPath(player) : new ArrayList<>();
+    }
 
-        while (matchesCounted + matchesInRound <= completedMatches) {
-            matchesCounted += matchesInRound;
-            matchesInRound = matchesInRound / 2;
-            round++;
+    /**
+     * Updates the standings for a match of this tournament that was just
+     * completed.
+     */
+    public void recordResult(Match match) {
+        TournamentFormat draw = format();
+        if (draw != null) {
+            draw.recordResult(match);
+            revision++;
         }
+    }
 
-        return round;
+    /**
+     * Returns the standings of a Swiss system, ranked by points, Buchholz and
+     * Sonneborn-Berger, or of a group stage, group by group; empty for
+     * elimination draws.
+     */
+    public List<Standing> getStandings() {
+        return started ? format().getStandings() : new ArrayList<>();
+    }
+
+    /**
+     * Returns the qualifiers of a completed group stage for a knockout, the
+     * given number of top places from each group: all group winners first,
+     * then the runners-up, and so on. Empty for other formats.
+     */
+    public List<Player> getQualifiers(int perGroup) {
+        if (!completed || !(format() instanceof GroupStage)) {
+            return new ArrayList<>();
+        }
+        return ((GroupStage) format()).getQualifiers(perGroup);
     }
 
     @Override
@@ -196,7 +441,7 @@ public class Tournament implements Serializable {
         return String.format("%s (%s, %d players)%s",
                 name,
                 type,
-                players.size(),
+                getPlayerCount(),
                 completed ? " - Completed" : started ? " - In Progress" : "");
     }
 }
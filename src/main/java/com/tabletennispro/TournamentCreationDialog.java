@@ -7,8 +7,11 @@ import java.awt.*;
  * Dialog for creating a new tournament
  */
 public class TournamentCreationDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
     private DataManager dataManager;
     private Tournament createdTournament;
+    private PlayerListModel playerListModel;
     
     public TournamentCreationDialog(Frame parent, DataManager dataManager) {
         super(parent, "Create Tournament", true);
@@ -57,7 +60,7 @@ public class TournamentCreationDialog extends JDialog {
         
         gbc.gridx = 1;
         gbc.weightx = 1.0;
-        String[] types = {"Single Elimination", "Double Elimination"};
+        String[] types = {"Single Elimination", "Double Elimination", "Swiss System", "Round Robin Groups"};
         JComboBox<String> typeCombo = new JComboBox<>(types);
         typeCombo.setFont(new Font("Arial", Font.PLAIN, 14));
         formPanel.add(typeCombo, gbc);
@@ -90,13 +93,11 @@ public class TournamentCreationDialog extends JDialog {
         gbc.weighty = 1.0;
         gbc.fill = GridBagConstraints.BOTH;
         
-        DefaultListModel<Player> availablePlayersModel = new DefaultListModel<>();
-        for (Player player : dataManager.getAllPlayers()) {
-            availablePlayersModel.addElement(player);
-        }
-        
-        JList<Player> playerList = new JList<>(availablePlayersModel);
+        // Read from the data manager as it is scrolled, measured on a sample player
+        playerListModel = new PlayerListModel(dataManager);
+        JList<Player> playerList = new JList<>(playerListModel);
         playerList.setFont(new Font("Arial", Font.PLAIN, 14));
+        playerList.setPrototypeCellValue(new Player("Prototype Player Name"));
         playerList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         JScrollPane scrollPane = new JScrollPane(playerList);
         formPanel.add(scrollPane, gbc);
@@ -125,9 +126,8 @@ public class TournamentCreationDialog extends JDialog {
                 return;
             }
             
-            Tournament.TournamentType type = typeCombo.getSelectedIndex() == 0 
-                ? Tournament.TournamentType.SINGLE_ELIMINATION 
-                : Tournament.TournamentType.DOUBLE_ELIMINATION;
+            // The combo lists the types in declaration order
+            Tournament.TournamentType type = Tournament.TournamentType.values()[typeCombo.getSelectedIndex()];
             
             int bestOf = Integer.parseInt(bestOfCombo.getSelectedItem().toString().split(" ")[2]);
             
@@ -155,6 +155,14 @@ public class TournamentCreationDialog extends JDialog {
         add(buttonPanel, BorderLayout.SOUTH);
     }
     
+    @Override
+    public void dispose() {
+        if (playerListModel != null) {
+            playerListModel.close();
+        }
+        super.dispose();
+    }
+    
     public Tournament getCreatedTournament() {
         return createdTournament;
     }
@@ -0,0 +1,67 @@
+package com.tabletennispro;
+
+import java.util.List;
+
+/**
+ * The rules a started tournament is played by: which matches are played in
+ * which round, and who wins.
+ *
+ * A format is rebuilt from the tournament's players, in the order they were
+ * drawn, and its matches, in the order they were created; it keeps no state
+ * of its own that has to be saved.
+ */
+interface TournamentFormat {
+    /**
+     * Opens the next round once all open matches are completed. Returns the
+     * matches created, none if the open matches are not all completed yet or
+     * the tournament is decided.
+     */
+    List<Match> advance();
+
+    boolean isDecided();
+
+    /**
+     * Takes note of a match of this tournament that was just completed.
+     * Formats that only look at results when advancing ignore it.
+     */
+    default void recordResult(Match match) {
+    }
+
+    /**
+     * Returns the winner, or null while the tournament is not decided or if
+     * it has no single winner, like a stage of several groups.
+     */
+    Player getWinner();
+
+    boolean contains(Match match);
+
+    int getMatchCount();
+
+    /**
+     * Returns how many rounds of play have been opened, 0 before the first.
+     */
+    int getCurrentRound();
+
+    int getRoundCount();
+
+    String getRoundName(int round);
+
+    List<Match> getRoundMatches(int round);
+
+    List<Player> getByes(int round);
+
+    /**
+     * Returns the match the winner of the given match plays next, or null if
+     * that is not known.
+     */
+    Match getNextMatch(Match match);
+
+    Player getNextOpponent(Player player);
+
+    List<Match> getPath(Player player);
+
+    /**
+     * Returns the standings, best placed first; empty for formats without a table.
+     */
+    List<Standing> getStandings();
+}
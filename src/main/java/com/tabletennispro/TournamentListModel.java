@@ -0,0 +1,52 @@
+package com.tabletennispro;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * List model over the tournaments. Tournaments are only created, changed and
+ * deleted from the tournament tab, which tells the model which row changed;
+ * the model keeps its own list of the rows as of that change, so the size and
+ * the rows the list sees always agree.
+ */
+final class TournamentListModel extends AbstractListModel<Tournament> {
+    private static final long serialVersionUID = 1L;
+
+    private final DataManager dataManager;
+    private List<Tournament> rows;
+
+    TournamentListModel(DataManager dataManager) {
+        this.dataManager = dataManager;
+        this.rows = dataManager.getAllTournaments();
+    }
+
+    @Override
+    public int getSize() {
+        return rows.size();
+    }
+
+    @Override
+    public Tournament getElementAt(int index) {
+        return rows.get(index);
+    }
+
+    /**
+     * Shows the tournaments added since the model last looked.
+     */
+    void added() {
+        int previous = rows.size();
+        rows = dataManager.getAllTournaments();
+        if (rows.size() > previous) {
+            fireIntervalAdded(this, previous, rows.size() - 1);
+        }
+    }
+
+    void changed(int index) {
+        fireContentsChanged(this, index, index);
+    }
+
+    void removed(int index) {
+        rows.remove(index);
+        fireIntervalRemoved(this, index, index);
+    }
+}
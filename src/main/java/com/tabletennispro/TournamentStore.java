@@ -0,0 +1,369 @@
+package com.tabletennispro;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores each tournament in its own segment file, plus a small index with the
+ * summary shown in tournament lists.
+ *
+ * Only the index is read at startup. A tournament's players and matches are
+ * read from its segment the first time they are needed, and tournaments that
+ * are not in progress are unloaded again, least recently used first, once the
+ * loaded ones exceed the memory budget. Tournaments pinned by a reader are
+ * never unloaded until the reader lets go of them.
+ *
+ * Segments are written by the {@link PersistenceWriter}. A segment is written
+ * whole when its tournament is saved, for example when a round opens, and a
+ * recorded result is only appended to it, so scoring a match does not encode
+ * the whole tournament again. A tournament stays loaded until its writes are
+ * on disk, so it is never read back from a segment that is behind. The index
+ * is only rewritten when a tournament is added or removed, or the summary
+ * it holds changes; a recorded result changes neither.
+ */
+public class TournamentStore {
+    private static final int INDEX_MAGIC = 0x54545049; // "TTPI"
+    private static final int SEGMENT_MAGIC = 0x54545054; // "TTPT"
+    // Version 2 adds each match's rally log to segments, version 3 the knockout of a group stage to the index.
+    // Results appended to a segment follow its matches to the end of the file; earlier versions wrote nothing there.
+    private static final int VERSION = 3;
+    private static final String INDEX_FILE = "index.dat";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final PersistenceWriter writer;
+    private final MatchArchive.PlayerResolver playerResolver;
+    private final long memoryBudget;
+
+    // All tournaments in list order
+    private final Map<String, Tournament> tournaments = new LinkedHashMap<>();
+    // Loaded tournaments, least recently used first
+    private final Map<String, Tournament> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    // Summary of each tournament as last written to the index
+    private final Map<String, String> indexed = new HashMap<>();
+    // Segment writes queued but not yet done, by tournament ID; the writer counts them down
+    private final Map<String, Integer> pendingWrites = new ConcurrentHashMap<>();
+    // Readers holding each tournament, by tournament ID
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    public TournamentStore(Path directory, PersistenceWriter writer,
+            MatchArchive.PlayerResolver playerResolver, long memoryBudget) throws IOException {
+        this.directory = directory;
+        this.writer = writer;
+        this.playerResolver = playerResolver;
+        this.memoryBudget = memoryBudget;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Reads the index and returns summaries of all stored tournaments.
+     */
+    public synchronized List<Tournament> loadIndex() throws IOException {
+        Path path = directory.resolve(INDEX_FILE);
+        if (Files.exists(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                int version = checkHeader(in, INDEX_MAGIC, "tournament index");
+                Tournament.TournamentType[] types = Tournament.TournamentType.values();
+                int count = BinaryIO.readVarInt(in);
+                for (int i = 0; i < count; i++) {
+                    String id = BinaryIO.readId(in);
+                    String name = in.readUTF();
+                    Tournament.TournamentType type = types[BinaryIO.readVarInt(in)];
+                    int bestOf = BinaryIO.readVarInt(in);
+                    int flags = in.readUnsignedByte();
+                    int playerCount = BinaryIO.readVarInt(in);
+                    Tournament tournament = new Tournament(id, name, type, bestOf, playerCount,
+                        (flags & 1) != 0, (flags & 2) != 0, this);
+                    if (version >= 3) {
+                        String knockoutId = in.readUTF();
+                        tournament.setKnockoutId(knockoutId.isEmpty() ? null : knockoutId);
+                    }
+                    tournaments.put(id, tournament);
+                    indexed.put(id, summaryOf(tournament));
+                }
+            }
+        }
+        return new ArrayList<>(tournaments.values());
+    }
+
+    /**
+     * Writes the tournament's segment, and the index if the tournament is new
+     * or its summary changed.
+     */
+    public synchronized void save(Tournament tournament) {
+        if (tournaments.putIfAbsent(tournament.getId(), tournament) == null) {
+            tournament.attachStore(this);
+        }
+        if (tournament.isLoaded()) {
+            loaded.put(tournament.getId(), tournament);
+            try {
+                byte[] segment = encodeSegment(tournament);
+                writer.submitFile(segmentPath(tournament), segment, queued(tournament.getId()));
+            } catch (IOException e) {
+                System.err.println("Error saving tournament: " + e.getMessage());
+            }
+        }
+        String summary = summaryOf(tournament);
+        if (!summary.equals(indexed.put(tournament.getId(), summary))) {
+            writeIndex();
+        }
+        evictIfOverBudget();
+    }
+
+    /**
+     * Appends a recorded result to the tournament's segment rather than
+     * writing the whole segment again. The result replaces the match of the
+     * same ID when the segment is read.
+     */
+    public synchronized void saveResult(Tournament tournament, Match match) {
+        if (!tournament.isLoaded()) {
+            save(tournament);
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            BinaryIO.writeId(out, match.getId());
+            BinaryIO.writeId(out, match.getPlayer1().getId());
+            out.writeUTF(match.getPlayer1().getName());
+            BinaryIO.writeId(out, match.getPlayer2().getId());
+            out.writeUTF(match.getPlayer2().getName());
+            writeResult(out, match);
+            out.flush();
+            writer.submitAppend(segmentPath(tournament), bytes.toByteArray(), queued(tournament.getId()));
+        } catch (IOException e) {
+            System.err.println("Error saving tournament: " + e.getMessage());
+        }
+    }
+
+    public synchronized void remove(Tournament tournament) {
+        if (tournaments.remove(tournament.getId()) != null) {
+            loaded.remove(tournament.getId());
+            indexed.remove(tournament.getId());
+            pins.remove(tournament.getId());
+            writer.submitDelete(segmentPath(tournament));
+            writeIndex();
+        }
+    }
+
+    /**
+     * Reads the tournament's players and matches from its segment.
+     */
+    synchronized void load(Tournament tournament) {
+        if (tournament.isLoaded()) {
+            loaded.get(tournament.getId()); // Loaded by another reader meanwhile
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(segmentPath(tournament))))) {
+            decodeSegment(in, tournament);
+        } catch (IOException e) {
+            System.err.println("Error loading tournament " + tournament.getName() + ": " + e.getMessage());
+            tournament.setContent(Collections.emptyList(), Collections.emptyList());
+        }
+        loaded.put(tournament.getId(), tournament);
+        evictIfOverBudget();
+    }
+
+    /**
+     * Marks a tournament as recently used.
+     */
+    synchronized void touch(Tournament tournament) {
+        loaded.get(tournament.getId());
+    }
+
+    /**
+     * Keeps a tournament's players and matches in memory until it is unpinned
+     * as often as it was pinned.
+     */
+    synchronized void pin(Tournament tournament) {
+        pins.merge(tournament.getId(), 1, Integer::sum);
+    }
+
+    synchronized void unpin(Tournament tournament) {
+        pins.computeIfPresent(tournament.getId(), (id, count) -> count == 1 ? null : count - 1);
+        evictIfOverBudget();
+    }
+
+    /**
+     * Returns the tournaments whose players and matches are currently in memory.
+     */
+    public synchronized List<Tournament> getLoadedTournaments() {
+        return new ArrayList<>(loaded.values());
+    }
+
+    private void evictIfOverBudget() {
+        long size = 0;
+        for (Tournament tournament : loaded.values()) {
+            size += tournament.getLoadedSize();
+        }
+        Iterator<Tournament> iterator = loaded.values().iterator();
+        while (size > memoryBudget && iterator.hasNext()) {
+            Tournament tournament = iterator.next();
+            if (tournament.isStarted() && !tournament.isCompleted() || pins.containsKey(tournament.getId())
+                    || pendingWrites.containsKey(tournament.getId())) {
+                continue; // Tournaments in progress, being read or still being written stay loaded
+            }
+            size -= tournament.getLoadedSize();
+            tournament.unload();
+            iterator.remove();
+        }
+    }
+
+    // Counts a segment write as queued, and returns the writer's callback that counts it done
+    private Runnable queued(String id) {
+        pendingWrites.merge(id, 1, Integer::sum);
+        return () -> pendingWrites.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    private Path segmentPath(Tournament tournament) {
+        return directory.resolve(tournament.getId() + SEGMENT_SUFFIX);
+    }
+
+    // What the index holds about a tournament
+    private static String summaryOf(Tournament tournament) {
+        return tournament.getName() + '\n' + tournament.getType() + '\n' + tournament.getBestOf() + '\n'
+            + tournament.isStarted() + '\n' + tournament.isCompleted() + '\n' + tournament.getPlayerCount()
+            + '\n' + tournament.getKnockoutId();
+    }
+
+    private void writeIndex() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(INDEX_MAGIC);
+            BinaryIO.writeVarInt(out, VERSION);
+            BinaryIO.writeVarInt(out, tournaments.size());
+            for (Tournament tournament : tournaments.values()) {
+                BinaryIO.writeId(out, tournament.getId());
+                out.writeUTF(tournament.getName());
+                BinaryIO.writeVarInt(out, tournament.getType().ordinal());
+                BinaryIO.writeVarInt(out, tournament.getBestOf());
+                out.writeByte((tournament.isStarted() ? 1 : 0) | (tournament.isCompleted() ? 2 : 0));
+                BinaryIO.writeVarInt(out, tournament.getPlayerCount());
+                out.writeUTF(tournament.getKnockoutId() == null ? "" : tournament.getKnockoutId());
+            }
+            out.flush();
+            writer.submitFile(directory.resolve(INDEX_FILE), bytes.toByteArray());
+        } catch (IOException e) {
+            System.err.println("Error saving tournament index: " + e.getMessage());
+        }
+    }
+
+    private static int checkHeader(DataInput in, int magic, String what) throws IOException {
+        if (in.readInt() != magic) {
+            throw new IOException("Not a " + what + " file");
+        }
+        int version = BinaryIO.readVarInt(in);
+        if (version > VERSION) {
+            throw new IOException("Unsupported " + what + " version " + version);
+        }
+        return version;
+    }
+
+    // Segment layout: header, player table (tournament players first), matches
+    private static byte[] encodeSegment(Tournament tournament) throws IOException {
+        List<Player> tournamentPlayers = tournament.getPlayers();
+        List<Match> tournamentMatches = tournament.getMatches();
+
+        Map<Player, Integer> playerIndex = new LinkedHashMap<>();
+        for (Player player : tournamentPlayers) {
+            playerIndex.putIfAbsent(player, playerIndex.size());
+        }
+        for (Match match : tournamentMatches) {
+            playerIndex.putIfAbsent(match.getPlayer1(), playerIndex.size());
+            playerIndex.putIfAbsent(match.getPlayer2(), playerIndex.size());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SEGMENT_MAGIC);
+        BinaryIO.writeVarInt(out, VERSION);
+
+        BinaryIO.writeVarInt(out, playerIndex.size());
+        BinaryIO.writeVarInt(out, tournamentPlayers.size());
+        for (Player player : playerIndex.keySet()) {
+            BinaryIO.writeId(out, player.getId());
+            out.writeUTF(player.getName());
+        }
+
+        BinaryIO.writeVarInt(out, tournamentMatches.size());
+        for (Match match : tournamentMatches) {
+            BinaryIO.writeId(out, match.getId());
+            BinaryIO.writeVarInt(out, playerIndex.get(match.getPlayer1()));
+            BinaryIO.writeVarInt(out, playerIndex.get(match.getPlayer2()));
+            writeResult(out, match);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Match layout after the ID and players: format and completed flag, games, time, rally log
+    private static void writeResult(DataOutput out, Match match) throws IOException {
+        BinaryIO.writeVarInt(out, match.getBestOf() << 1 | (match.isCompleted() ? 1 : 0));
+        BinaryIO.writeVarInt(out, match.getPlayer1Score());
+        BinaryIO.writeVarInt(out, match.getPlayer2Score());
+        BinaryIO.writeVarLong(out, BinaryIO.toEpochMillis(match.getTimestamp()));
+        BinaryIO.writeRallies(out, match);
+    }
+
+    private static Match readResult(DataInput in, String id, Player player1, Player player2, int version)
+            throws IOException {
+        int format = BinaryIO.readVarInt(in);
+        int player1Score = BinaryIO.readVarInt(in);
+        int player2Score = BinaryIO.readVarInt(in);
+        long millis = BinaryIO.readVarLong(in);
+
+        Match match = new Match(id, player1, player2, format >>> 1, BinaryIO.fromEpochMillis(millis));
+        match.restoreResult(player1Score, player2Score, (format & 1) != 0);
+        if (version >= 2) {
+            BinaryIO.readRallies(in, match);
+        }
+        return match;
+    }
+
+    private void decodeSegment(DataInput in, Tournament tournament) throws IOException {
+        int version = checkHeader(in, SEGMENT_MAGIC, "tournament segment");
+
+        int playerCount = BinaryIO.readVarInt(in);
+        int tournamentPlayerCount = BinaryIO.readVarInt(in);
+        Player[] playerTable = new Player[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            playerTable[i] = playerResolver.resolve(BinaryIO.readId(in), in.readUTF());
+        }
+
+        int matchCount = BinaryIO.readVarInt(in);
+        List<Match> tournamentMatches = new ArrayList<>(matchCount);
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < matchCount; i++) {
+            String id = BinaryIO.readId(in);
+            Player player1 = playerTable[BinaryIO.readVarInt(in)];
+            Player player2 = playerTable[BinaryIO.readVarInt(in)];
+            tournamentMatches.add(readResult(in, id, player1, player2, version));
+            positions.put(id, i);
+        }
+
+        // Results appended since the segment was written, up to the end of the file
+        while (true) {
+            Match match;
+            try {
+                String id = BinaryIO.readId(in);
+                Player player1 = playerResolver.resolve(BinaryIO.readId(in), in.readUTF());
+                Player player2 = playerResolver.resolve(BinaryIO.readId(in), in.readUTF());
+                match = readResult(in, id, player1, player2, version);
+            } catch (EOFException e) {
+                break; // The end, or a result cut short by a crash while it was appended
+            }
+            Integer position = positions.putIfAbsent(match.getId(), tournamentMatches.size());
+            if (position != null) {
+                tournamentMatches.set(position, match);
+            } else {
+                tournamentMatches.add(match);
+            }
+        }
+
+        tournament.setContent(Arrays.asList(playerTable).subList(0, tournamentPlayerCount), tournamentMatches);
+    }
+}
@@ -1,21 +1,29 @@
 package com.tabletennispro;
 
 import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Dialog for viewing and managing tournament brackets
  */
 public class TournamentViewDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
     private Tournament tournament;
     private DataManager dataManager;
     private JPanel bracketPanel;
+    private boolean held;
     
     public TournamentViewDialog(Frame parent, Tournament tournament, DataManager dataManager) {
         super(parent, "Tournament: " + tournament.getName(), true);
         this.tournament = tournament;
         this.dataManager = dataManager;
+        // Changes come from this thread; the hold only keeps the store from unloading the draw
+        dataManager.holdTournament(tournament);
+        held = true;
         initializeUI();
     }
     
@@ -42,8 +50,9 @@ public class TournamentViewDialog extends JDialog {
         titlePanel.add(infoLabel, BorderLayout.CENTER);
         
         if (tournament.isCompleted()) {
+            Player winner = tournament.getWinner();
             JLabel winnerLabel = new JLabel(
-                "🏆 Winner: " + tournament.getWinner().getName() + " 🏆",
+                winner == null ? "Group Stage Complete" : "🏆 Winner: " + winner.getName() + " 🏆",
                 SwingConstants.CENTER);
             winnerLabel.setFont(new Font("Arial", Font.BOLD, 18));
             winnerLabel.setForeground(new Color(0, 150, 0));
@@ -82,8 +91,7 @@ public class TournamentViewDialog extends JDialog {
                         "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                tournament.startTournament();
-                dataManager.updateData();
+                dataManager.startTournament(tournament);
                 updateBracketDisplay();
                 dispose();
                 // Reopen to show updated state
@@ -96,13 +104,13 @@ public class TournamentViewDialog extends JDialog {
             JButton advanceButton = new JButton("Advance to Next Round");
             advanceButton.setFont(new Font("Arial", Font.BOLD, 14));
             advanceButton.addActionListener(e -> {
-                tournament.advanceTournament();
-                dataManager.updateData();
+                dataManager.advanceTournament(tournament);
                 updateBracketDisplay();
                 
                 if (tournament.isCompleted()) {
+                    Player winner = tournament.getWinner();
                     JOptionPane.showMessageDialog(this,
-                        "Tournament Complete!\nWinner: " + tournament.getWinner().getName(),
+                        winner == null ? "Group stage complete!" : "Tournament Complete!\nWinner: " + winner.getName(),
                         "Tournament Finished", JOptionPane.INFORMATION_MESSAGE);
                 }
                 
@@ -112,6 +120,27 @@ public class TournamentViewDialog extends JDialog {
                 newDialog.setVisible(true);
             });
             controlPanel.add(advanceButton);
+
+            if (tournament.getType() == Tournament.TournamentType.SINGLE_ELIMINATION
+                    || tournament.getType() == Tournament.TournamentType.DOUBLE_ELIMINATION) {
+                JButton chancesButton = new JButton("Chances");
+                chancesButton.setFont(new Font("Arial", Font.PLAIN, 14));
+                chancesButton.addActionListener(e -> showChances(chancesButton));
+                controlPanel.add(chancesButton);
+            }
+        } else if (tournament.getWinner() == null && !tournament.getQualifiers(2).isEmpty()) {
+            // Groups go on to a knockout of the top two of each group, made once
+            JButton knockoutButton = new JButton(dataManager.getKnockout(tournament) == null
+                ? "Create Knockout Stage" : "Open Knockout Stage");
+            knockoutButton.setFont(new Font("Arial", Font.BOLD, 14));
+            knockoutButton.addActionListener(e -> {
+                Tournament knockout = dataManager.createKnockout(tournament, 2);
+                dispose();
+                TournamentViewDialog newDialog = new TournamentViewDialog(
+                    (Frame) getParent(), knockout, dataManager);
+                newDialog.setVisible(true);
+            });
+            controlPanel.add(knockoutButton);
         }
         
         JButton closeButton = new JButton("Close");
@@ -122,6 +151,63 @@ public class TournamentViewDialog extends JDialog {
         add(controlPanel, BorderLayout.SOUTH);
     }
     
+    // Each player's chances of reaching every round and of winning, from the draw as it stands
+    private void showChances(JButton chancesButton) {
+        // The draw is copied under the lock; the completions are played off the EDT once it is released
+        chancesButton.setEnabled(false);
+        new SwingWorker<OutcomeSimulator.Outcome, Void>() {
+            @Override
+            protected OutcomeSimulator.Outcome doInBackground() {
+                OutcomeSimulator.Draw draw = dataManager.readTournament(tournament, OutcomeSimulator::capture);
+                return new OutcomeSimulator().simulate(draw, OutcomeSimulator.defaultTrials(draw), System.nanoTime());
+            }
+
+            @Override
+            protected void done() {
+                chancesButton.setEnabled(true);
+                try {
+                    showOutcome(get());
+                } catch (InterruptedException | ExecutionException e) {
+                    System.err.println("Error simulating chances: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void showOutcome(OutcomeSimulator.Outcome outcome) {
+        if (!isDisplayable()) {
+            return;
+        }
+        String[] columns = new String[outcome.getRoundCount() + 2];
+        columns[0] = "Player";
+        for (int round = 1; round <= outcome.getRoundCount(); round++) {
+            columns[round] = outcome.getRoundName(round);
+        }
+        columns[columns.length - 1] = "Winner";
+
+        List<Player> players = outcome.getPlayers();
+        players.sort((a, b) -> Double.compare(outcome.getWinProbability(b), outcome.getWinProbability(a)));
+        DefaultTableModel model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (Player player : players) {
+            Object[] row = new Object[columns.length];
+            row[0] = player.getName();
+            for (int round = 1; round <= outcome.getRoundCount(); round++) {
+                row[round] = String.format("%.1f%%", outcome.getReachProbability(player, round) * 100);
+            }
+            row[columns.length - 1] = String.format("%.1f%%", outcome.getWinProbability(player) * 100);
+            model.addRow(row);
+        }
+        JScrollPane scrollPane = new JScrollPane(new JTable(model));
+        scrollPane.setPreferredSize(new Dimension(800, 400));
+        JOptionPane.showMessageDialog(this, scrollPane,
+            String.format("Chances from %,d simulated completions", outcome.getTrials()), JOptionPane.PLAIN_MESSAGE);
+    }
+
     private void updateBracketDisplay() {
         bracketPanel.removeAll();
         
@@ -140,41 +226,62 @@ public class TournamentViewDialog extends JDialog {
                 bracketPanel.add(playerLabel);
             }
         } else {
-            // Show matches grouped by round
-            List<Match> matches = tournament.getMatches();
-            
-            if (matches.isEmpty()) {
-                JLabel noMatchesLabel = new JLabel("No matches yet");
-                noMatchesLabel.setFont(new Font("Arial", Font.ITALIC, 14));
-                bracketPanel.add(noMatchesLabel);
-            } else {
-                // Group matches by completion status to show rounds
-                int roundNumber = 1;
-                int matchesPerRound = tournament.getPlayers().size() / 2;
-                int matchIndex = 0;
+            // Show the rounds opened so far, straight from the draw
+            for (int round = 1; round <= tournament.getRoundCount(); round++) {
+                List<Match> roundMatches = tournament.getRoundMatches(round);
+                List<Player> byes = tournament.getByes(round);
+                if (roundMatches.isEmpty() && byes.isEmpty()) {
+                    continue;
+                }
+                
+                JLabel roundLabel = new JLabel(tournament.getRoundName(round));
+                roundLabel.setFont(new Font("Arial", Font.BOLD, 18));
+                roundLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+                bracketPanel.add(roundLabel);
+                bracketPanel.add(Box.createVerticalStrut(10));
+                
+                for (Match match : roundMatches) {
+                    JPanel matchPanel = createMatchPanel(match);
+                    matchPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+                    bracketPanel.add(matchPanel);
+                    bracketPanel.add(Box.createVerticalStrut(5));
+                }
+                for (Player player : byes) {
+                    JLabel byeLabel = new JLabel(player.getName() + " - bye");
+                    byeLabel.setFont(new Font("Arial", Font.ITALIC, 14));
+                    byeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+                    bracketPanel.add(byeLabel);
+                    bracketPanel.add(Box.createVerticalStrut(5));
+                }
                 
-                while (matchIndex < matches.size()) {
-                    JLabel roundLabel = new JLabel("Round " + roundNumber);
-                    roundLabel.setFont(new Font("Arial", Font.BOLD, 18));
-                    roundLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                    bracketPanel.add(roundLabel);
+                bracketPanel.add(Box.createVerticalStrut(15));
+            }
+
+            // Swiss or group standings, empty for elimination draws
+            List<Standing> standings = tournament.getStandings();
+            boolean groups = tournament.getType() == Tournament.TournamentType.ROUND_ROBIN;
+            int place = 0;
+            for (int i = 0; i < standings.size(); i++) {
+                Standing standing = standings.get(i);
+                if (i == 0 || standing.getGroup() != standings.get(i - 1).getGroup()) {
+                    JLabel standingsLabel = new JLabel(groups ? "Group " + (standing.getGroup() + 1) : "Standings");
+                    standingsLabel.setFont(new Font("Arial", Font.BOLD, 18));
+                    standingsLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
                     bracketPanel.add(Box.createVerticalStrut(10));
-                    
-                    int matchesInThisRound = Math.min(matchesPerRound, matches.size() - matchIndex);
-                    
-                    for (int i = 0; i < matchesInThisRound && matchIndex < matches.size(); i++, matchIndex++) {
-                        Match match = matches.get(matchIndex);
-                        JPanel matchPanel = createMatchPanel(match);
-                        matchPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                        bracketPanel.add(matchPanel);
-                        bracketPanel.add(Box.createVerticalStrut(5));
-                    }
-                    
-                    bracketPanel.add(Box.createVerticalStrut(15));
-                    roundNumber++;
-                    matchesPerRound = matchesPerRound / 2;
-                    if (matchesPerRound < 1) matchesPerRound = 1;
+                    bracketPanel.add(standingsLabel);
+                    bracketPanel.add(Box.createVerticalStrut(10));
+                    place = 0;
                 }
+                JLabel standingLabel = new JLabel(groups
+                    ? String.format("%d. %s - %d pts (%d-%d, games %d:%d)",
+                        ++place, standing.getPlayer().getName(), standing.getPoints(),
+                        standing.getWins(), standing.getLosses(), standing.getGamesWon(), standing.getGamesLost())
+                    : String.format("%d. %s - %d pts (Buchholz %d, SB %d)",
+                        ++place, standing.getPlayer().getName(), standing.getPoints(),
+                        standing.getBuchholz(), standing.getSonnebornBerger()));
+                standingLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+                standingLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+                bracketPanel.add(standingLabel);
             }
         }
         
@@ -182,6 +289,15 @@ public class TournamentViewDialog extends JDialog {
         bracketPanel.repaint();
     }
     
+    @Override
+    public void dispose() {
+        if (held) {
+            dataManager.releaseTournament(tournament);
+            held = false;
+        }
+        super.dispose();
+    }
+
     private JPanel createMatchPanel(Match match) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBorder(BorderFactory.createCompoundBorder(
@@ -0,0 +1,38 @@
+package com.tabletennispro;
+
+/**
+ * Summary of a bulk import or export run
+ */
+public class TransferReport {
+    private long rows;
+    private long skippedRows;
+    private int playersCreated;
+    private int matches;
+    private int tournaments;
+    private long elapsedNanos;
+
+    void addRow() { rows++; }
+    void addSkippedRow() { skippedRows++; }
+    void addPlayer() { playersCreated++; }
+    void addMatch() { matches++; }
+    void addTournament() { tournaments++; }
+    void setElapsedNanos(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+
+    // Getters
+    public long getRows() { return rows; }
+    public long getSkippedRows() { return skippedRows; }
+    public int getPlayersCreated() { return playersCreated; }
+    public int getMatches() { return matches; }
+    public int getTournaments() { return tournaments; }
+    public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows (%d skipped), %d matches, %d new players, %d tournaments in %d ms (%.0f rows/s)",
+            rows, skippedRows, matches, playersCreated, tournaments, getElapsedMillis(), getRowsPerSecond());
+    }
+}
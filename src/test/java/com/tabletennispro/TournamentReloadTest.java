@@ -0,0 +1,177 @@
+package com.tabletennispro;
+
+import java.util.*;
+
+/**
+ * Plays tournaments to the end, and one knockout only part of its first
+ * round, then reopens the data twice and checks that every one comes back as
+ * it was left: with the same results, winner and standings. Between the two reloads the tournaments are read and
+ * something unrelated is saved, so the index is written again from what the
+ * reload restored.
+ *
+ * There is no test framework in this project; run it with
+ * {@code java com.tabletennispro.TournamentReloadTest} from an empty
+ * directory, as it writes its data files there. It exits with status 1 if a
+ * check fails.
+ */
+public class TournamentReloadTest {
+    private static final int PLAYERS = 16;
+    // Rounds opened before a tournament must have finished
+    private static final int MAX_ROUNDS = 100;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        TournamentReloadTest test = new TournamentReloadTest();
+        boolean passed = test.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() {
+        Map<String, String> expected = new LinkedHashMap<>();
+        DataManager dataManager = new DataManager();
+        try {
+            if (dataManager.getPlayerCount() > 0) {
+                System.err.println("Run the reload test from an empty directory");
+                return false;
+            }
+            List<Player> players = new ArrayList<>();
+            for (int i = 0; i < PLAYERS; i++) {
+                Player player = new Player("Player " + i);
+                dataManager.addPlayer(player);
+                players.add(player);
+            }
+            Random random = new Random(1);
+            play(dataManager, "Swiss 8", Tournament.TournamentType.SWISS, players.subList(0, 8), random);
+            play(dataManager, "Swiss 7", Tournament.TournamentType.SWISS, players.subList(8, 15), random);
+            play(dataManager, "Groups 8", Tournament.TournamentType.ROUND_ROBIN, players.subList(0, 8), random);
+            play(dataManager, "Group 5", Tournament.TournamentType.ROUND_ROBIN, players.subList(8, 13), random);
+            for (Tournament tournament : dataManager.getAllTournaments()) {
+                check(tournament.isCompleted(), tournament.getName() + " did not finish");
+            }
+            // Its results are only appended to the segment written when the round opened
+            playPart(dataManager, "Knockout 8", players.subList(0, 8), 3, random);
+            for (Tournament tournament : dataManager.getAllTournaments()) {
+                expected.put(tournament.getName(), describe(dataManager, tournament));
+            }
+        } finally {
+            dataManager.close();
+        }
+
+        // The first reload reads every tournament, then saves something unrelated
+        dataManager = new DataManager();
+        try {
+            compare(dataManager, expected, "first reload");
+            Tournament unrelated = new Tournament("Unrelated", Tournament.TournamentType.SINGLE_ELIMINATION, 3);
+            dataManager.addTournament(unrelated);
+        } finally {
+            dataManager.close();
+        }
+
+        dataManager = new DataManager();
+        try {
+            compare(dataManager, expected, "second reload");
+        } finally {
+            dataManager.close();
+        }
+
+        for (String failure : failures) {
+            System.err.println(failure);
+        }
+        System.out.println(failures.isEmpty() ? "PASSED" : "FAILED: " + failures.size() + " failures");
+        return failures.isEmpty();
+    }
+
+    // Creates a tournament of the players and plays it until it is completed
+    private void play(DataManager dataManager, String name, Tournament.TournamentType type,
+            List<Player> players, Random random) {
+        Tournament tournament = new Tournament(name, type, 3);
+        for (Player player : players) {
+            tournament.addPlayer(player);
+        }
+        dataManager.addTournament(tournament);
+        dataManager.startTournament(tournament);
+        for (int round = 0; round < MAX_ROUNDS && !tournament.isCompleted(); round++) {
+            List<Match> open = dataManager.readTournament(tournament, t -> {
+                List<Match> unplayed = new ArrayList<>();
+                for (Match match : t.getMatches()) {
+                    if (!match.isCompleted()) {
+                        unplayed.add(match);
+                    }
+                }
+                return unplayed;
+            });
+            for (Match match : open) {
+                if (random.nextBoolean()) {
+                    match.setPlayer1Score(2);
+                    match.setPlayer2Score(random.nextInt(2));
+                } else {
+                    match.setPlayer1Score(random.nextInt(2));
+                    match.setPlayer2Score(2);
+                }
+                dataManager.addMatch(match);
+            }
+            dataManager.advanceTournament(tournament);
+        }
+    }
+
+    // Creates a knockout of the players and scores some of its first round point by point
+    private void playPart(DataManager dataManager, String name, List<Player> players, int results, Random random) {
+        Tournament tournament = new Tournament(name, Tournament.TournamentType.SINGLE_ELIMINATION, 3);
+        for (Player player : players) {
+            tournament.addPlayer(player);
+        }
+        dataManager.addTournament(tournament);
+        dataManager.startTournament(tournament);
+        List<Match> open = dataManager.readTournament(tournament, Tournament::getMatches);
+        for (Match match : open.subList(0, results)) {
+            while (!match.isCompleted()) {
+                dataManager.changeMatch(match, random.nextBoolean() ? Match::recordPlayer1Point : Match::recordPlayer2Point);
+            }
+            dataManager.addMatch(match);
+            dataManager.advanceTournament(tournament);
+        }
+    }
+
+    private void compare(DataManager dataManager, Map<String, String> expected, String when) {
+        Map<String, String> found = new HashMap<>();
+        for (Tournament tournament : dataManager.getAllTournaments()) {
+            found.put(tournament.getName(), describe(dataManager, tournament));
+        }
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String actual = found.get(entry.getKey());
+            check(entry.getValue().equals(actual),
+                entry.getKey() + " after the " + when + ":\n  expected " + entry.getValue() + "\n  found    " + actual);
+        }
+    }
+
+    // Whether the tournament is completed, its winner, a group stage's qualifiers, standings and results, as one line
+    private static String describe(DataManager dataManager, Tournament tournament) {
+        return dataManager.readTournament(tournament, t -> {
+            StringBuilder line = new StringBuilder();
+            line.append(t.isCompleted() ? "completed" : "open");
+            line.append(", winner ").append(t.getWinner() == null ? "none" : t.getWinner().getName());
+            for (Player qualifier : t.getQualifiers(2)) {
+                line.append(", qualified ").append(qualifier.getName());
+            }
+            int played = 0;
+            for (Standing standing : t.getStandings()) {
+                played += standing.getPlayed();
+                line.append(", ").append(standing.getPlayer().getName()).append(' ').append(standing.getPoints());
+            }
+            for (Match match : t.getMatches()) {
+                if (match.isCompleted()) {
+                    line.append(", ").append(match.getPlayer1Score()).append('-').append(match.getPlayer2Score())
+                        .append(" in ").append(match.getRallyCount()).append(" points");
+                }
+            }
+            return line.insert(0, played + " played, ").toString();
+        });
+    }
+
+    private void check(boolean condition, String message) {
+        if (!condition) {
+            failures.add(message);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.tabletennispro;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Scores several thousand tournament matches point by point from many
+ * threads at once while other threads read every tournament the way the
+ * live score server does, then checks the results.
+ *
+ * Scorers change matches only through the {@link DataManager}, as the score
+ * tracker does, so every point is recorded under its write lock. Readers
+ * check each match they see: its games agree with its rally log and it is
+ * completed exactly when a player has won enough games. At the end every
+ * knockout must be complete, with each match scored once and in full, every
+ * player but the winner knocked out once, and the players' wins, losses and
+ * games adding up to the matches played.
+ *
+ * Enough completed tournaments are created that readers keep loading them
+ * and the store keeps unloading the least recently used ones, so reads race
+ * with loading and unloading as well as with scoring.
+ *
+ * There is no test framework in this project; run it with
+ * {@code java com.tabletennispro.TournamentStressTest [scorers] [readers]}
+ * from an empty directory, as it writes its data files there. It exits with
+ * status 1 if a check fails.
+ */
+public class TournamentStressTest {
+    private static final int PLAYERS = 2048;
+    // Enough entries in all to go well over the store's memory budget
+    private static final int COMPLETED_TOURNAMENTS = 900;
+    private static final int COMPLETED_SIZE = 128;
+    private static final int ACTIVE_TOURNAMENTS = 32;
+    private static final int ACTIVE_SIZE = 128;
+    private static final int BEST_OF = 5;
+    private static final long TIMEOUT_SECONDS = 600;
+
+    private final DataManager dataManager = new DataManager();
+    private final List<Tournament> active = new ArrayList<>();
+    private final Set<Match> claimed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger scored = new AtomicInteger();
+    private final AtomicInteger points = new AtomicInteger();
+    private final AtomicInteger reads = new AtomicInteger();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private volatile boolean done;
+
+    public static void main(String[] args) throws Exception {
+        int scorers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        TournamentStressTest test = new TournamentStressTest();
+        boolean passed;
+        try {
+            passed = test.run(scorers, readers);
+        } finally {
+            test.dataManager.close();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run(int scorers, int readers) throws InterruptedException {
+        if (dataManager.getPlayerCount() > 0) {
+            System.err.println("Run the stress test from an empty directory");
+            return false;
+        }
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            Player player = new Player("Player " + i);
+            dataManager.addPlayer(player);
+            players.add(player);
+        }
+
+        long start = System.nanoTime();
+        Random random = new Random(1);
+        for (int i = 0; i < COMPLETED_TOURNAMENTS; i++) {
+            Tournament tournament = newTournament("Completed " + i, players, COMPLETED_SIZE, random);
+            while (!tournament.isCompleted()) {
+                for (Match match : openMatches(tournament)) {
+                    finishGames(match, random);
+                    dataManager.addMatch(match);
+                }
+                dataManager.advanceTournament(tournament);
+            }
+        }
+        for (int i = 0; i < ACTIVE_TOURNAMENTS; i++) {
+            active.add(newTournament("Active " + i, players, ACTIVE_SIZE, random));
+        }
+        int matchesBefore = dataManager.getMatchCount();
+        System.out.printf("Set up %d completed tournaments in %d ms%n",
+            COMPLETED_TOURNAMENTS, (System.nanoTime() - start) / 1_000_000);
+
+        ExecutorService pool = Executors.newFixedThreadPool(scorers + readers);
+        start = System.nanoTime();
+        List<Future<?>> scoring = new ArrayList<>();
+        for (int i = 0; i < scorers; i++) {
+            long seed = i;
+            scoring.add(pool.submit(() -> score(new SplittableRandom(seed))));
+        }
+        for (int i = 0; i < readers; i++) {
+            long seed = 1000 + i;
+            pool.submit(() -> read(new SplittableRandom(seed)));
+        }
+        for (Future<?> future : scoring) {
+            try {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                failures.add(e);
+            }
+        }
+        done = true;
+        pool.shutdown();
+        pool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        // Every match of a knockout of n players is scored once, and each counts one win and one loss
+        int expected = ACTIVE_TOURNAMENTS * (ACTIVE_SIZE - 1);
+        check(scored.get() == expected, "scored " + scored.get() + " matches, expected " + expected);
+        check(claimed.size() == expected, "claimed " + claimed.size() + " matches, expected " + expected);
+        check(dataManager.getMatchCount() - matchesBefore == expected,
+            "added " + (dataManager.getMatchCount() - matchesBefore) + " matches, expected " + expected);
+        check(dataManager.getLiveScores().isEmpty(),
+            dataManager.getLiveScores().size() + " live scores left after every match was added");
+        check(reads.get() > 0, "no tournament was read");
+        int wins = 0;
+        int losses = 0;
+        int gamesWon = 0;
+        int gamesLost = 0;
+        for (Player player : players) {
+            wins += player.getWins();
+            losses += player.getLosses();
+            gamesWon += player.getGamesWon();
+            gamesLost += player.getGamesLost();
+        }
+        check(wins == dataManager.getMatchCount() && losses == wins,
+            wins + " wins and " + losses + " losses for " + dataManager.getMatchCount() + " matches");
+        check(gamesWon == gamesLost, gamesWon + " games won but " + gamesLost + " lost");
+        for (Tournament tournament : active) {
+            dataManager.readTournament(tournament, t -> {
+                checkKnockout(t);
+                return null;
+            });
+        }
+
+        System.out.printf("%d scorers and %d readers: %d matches of %d points scored and %d tournaments read in %d ms%n",
+            scorers, readers, scored.get(), points.get(), reads.get(), elapsed);
+        for (Throwable failure : failures) {
+            failure.printStackTrace();
+        }
+        System.out.println(failures.isEmpty() ? "PASSED" : "FAILED: " + failures.size() + " failures");
+        return failures.isEmpty();
+    }
+
+    private Tournament newTournament(String name, List<Player> players, int size, Random random) {
+        Tournament tournament = new Tournament(name, Tournament.TournamentType.SINGLE_ELIMINATION, BEST_OF);
+        List<Player> entries = new ArrayList<>(players);
+        Collections.shuffle(entries, random);
+        for (Player player : entries.subList(0, size)) {
+            tournament.addPlayer(player);
+        }
+        dataManager.addTournament(tournament);
+        dataManager.startTournament(tournament);
+        return tournament;
+    }
+
+    // The matches of the current round still to be played
+    private List<Match> openMatches(Tournament tournament) {
+        return dataManager.readTournament(tournament, t -> {
+            List<Match> open = new ArrayList<>();
+            for (Match match : t.getRoundMatches(t.getCurrentRound())) {
+                if (!match.isCompleted()) {
+                    open.add(match);
+                }
+            }
+            return open;
+        });
+    }
+
+    // Scoring threads play any open match, point by point, as the score tracker does
+    private void score(SplittableRandom random) {
+        try {
+            while (true) {
+                Match match = null;
+                Tournament owner = null;
+                boolean anyOpen = false;
+                for (Tournament tournament : active) {
+                    if (dataManager.readTournament(tournament, Tournament::isCompleted)) {
+                        continue;
+                    }
+                    anyOpen = true;
+                    for (Match open : openMatches(tournament)) {
+                        if (claimed.add(open)) {
+                            match = open;
+                            owner = tournament;
+                            break;
+                        }
+                    }
+                    if (match != null) {
+                        break;
+                    }
+                }
+                if (!anyOpen) {
+                    return;
+                }
+                if (match == null) {
+                    Thread.yield(); // Everything open is being played; wait for a round to advance
+                    continue;
+                }
+                // Only this thread changes the match, so it may look at it between points
+                while (!match.isCompleted()) {
+                    Consumer<Match> point = random.nextBoolean() ? Match::recordPlayer1Point : Match::recordPlayer2Point;
+                    dataManager.changeMatch(match, point);
+                    dataManager.updateLiveScore(match);
+                    points.incrementAndGet();
+                }
+                dataManager.addMatch(match);
+                scored.incrementAndGet();
+                dataManager.advanceTournament(owner);
+            }
+        } catch (RuntimeException e) {
+            failures.add(e);
+        }
+    }
+
+    // Reading threads walk every tournament as the live score server does
+    private void read(SplittableRandom random) {
+        Writer discard = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            while (!done) {
+                // Mostly the tournaments being scored, the others to keep the store loading and unloading
+                List<Tournament> tournaments = random.nextInt(4) == 0 ? dataManager.getAllTournaments() : active;
+                Tournament tournament = tournaments.get(random.nextInt(tournaments.size()));
+                tournament.toString();
+                dataManager.readTournament(tournament, t -> {
+                    int players = t.getPlayers().size();
+                    int matches = 0;
+                    for (int round = 1; round <= t.getRoundCount(); round++) {
+                        for (Match match : t.getRoundMatches(round)) {
+                            checkMatch(match);
+                            matches++;
+                        }
+                    }
+                    if (t.isCompleted() && (t.getWinner() == null || matches != players - 1)) {
+                        throw new IllegalStateException(t.getName() + " is completed with " + matches
+                            + " matches for " + players + " players");
+                    }
+                    DataExporter.writeTournament(new JsonWriter(discard), t);
+                    return null;
+                });
+                reads.incrementAndGet();
+            }
+        } catch (RuntimeException | IOException e) {
+            failures.add(e);
+        }
+    }
+
+    // A match seen by a reader is never half way through a point
+    private static void checkMatch(Match match) {
+        int games = match.getPlayer1Score() + match.getPlayer2Score();
+        if (match.getRallyCount() > 0 && match.getGameScores().length != games) {
+            throw new IllegalStateException(match.getId() + " has " + games + " games but "
+                + match.getGameScores().length + " in its rally log");
+        }
+        int needed = match.getBestOf() / 2 + 1;
+        if (match.isCompleted() != (Math.max(match.getPlayer1Score(), match.getPlayer2Score()) == needed)) {
+            throw new IllegalStateException(match.getId() + " is " + (match.isCompleted() ? "" : "not ")
+                + "completed at " + match.getPlayer1Score() + "-" + match.getPlayer2Score());
+        }
+    }
+
+    // A finished knockout: one winner, every other player out once, every match scored in full
+    private void checkKnockout(Tournament tournament) {
+        String name = tournament.getName();
+        Player winner = tournament.getWinner();
+        check(tournament.isCompleted() && winner != null, name + " has no winner");
+        Map<Player, Integer> defeats = new HashMap<>();
+        int matches = 0;
+        Match last = null;
+        for (int round = 1; round <= tournament.getRoundCount(); round++) {
+            for (Match match : tournament.getRoundMatches(round)) {
+                matches++;
+                last = match;
+                check(match.isCompleted(), name + ": " + match.getId() + " was not completed");
+                if (!match.isCompleted()) {
+                    continue;
+                }
+                check(match.getGameScores().length == match.getPlayer1Score() + match.getPlayer2Score(),
+                    name + ": " + match.getId() + " was not scored point by point");
+                defeats.merge(match.getLoser(), 1, Integer::sum);
+            }
+        }
+        check(matches == ACTIVE_SIZE - 1, name + " has " + matches + " matches, expected " + (ACTIVE_SIZE - 1));
+        check(last != null && last.getWinner() == winner, name + "'s winner did not win the final");
+        check(defeats.size() == ACTIVE_SIZE - 1 && !defeats.containsKey(winner),
+            name + " knocked out " + defeats.size() + " players, expected " + (ACTIVE_SIZE - 1));
+        for (Map.Entry<Player, Integer> entry : defeats.entrySet()) {
+            check(entry.getValue() == 1, name + ": " + entry.getKey().getName() + " lost " + entry.getValue() + " times");
+        }
+    }
+
+    private void finishGames(Match match, Random random) {
+        while (!match.isCompleted()) {
+            dataManager.changeMatch(match, random.nextBoolean() ? Match::incrementPlayer1Score : Match::incrementPlayer2Score);
+        }
+    }
+
+    private void check(boolean condition, String message) {
+        if (!condition) {
+            failures.add(new AssertionError(message));
+        }
+    }
+}